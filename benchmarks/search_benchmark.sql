@@ -0,0 +1,106 @@
+-- Search latency benchmark for GET /api/media
+--
+-- Builds synthetic catalogs of 10k, 100k and 1M titles in a scratch schema (same table definition and
+-- indexes as media_entries) and times the page queries of the three search modes:
+--   legacy     LOWER(title) LIKE LOWER('%term%')             (what search= used to run)
+--   substring  title ILIKE '%term%'                          (search=, trigram index)
+--   ranked     full-text OR word similarity, by relevance    (q=, GIN indexes)
+--
+-- Run against the database started by docker-compose (takes a few minutes, mostly building 1M rows):
+--   docker compose exec -T postgres psql -U postgres -d mrp_db < benchmarks/search_benchmark.sql
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP SCHEMA IF EXISTS search_bench CASCADE;
+CREATE SCHEMA search_bench;
+
+CREATE TABLE search_bench.results (
+    titles INT,
+    mode TEXT,
+    runs INT,
+    median_ms NUMERIC,
+    p95_ms NUMERIC,
+    max_ms NUMERIC
+);
+
+-- Search terms: rare and common words, title fragments and misspellings
+CREATE TABLE search_bench.terms (term TEXT);
+INSERT INTO search_bench.terms VALUES
+    ('knight'), ('kngiht'), ('empire 4711'), ('voyage'), ('shadw'), ('golden garden'),
+    ('sig'), ('crimson horizn'), ('dragons'), ('time travel'), ('matrix 1234'), ('rivr');
+
+CREATE FUNCTION search_bench.build(titles INT) RETURNS VOID LANGUAGE plpgsql AS $$
+BEGIN
+    DROP TABLE IF EXISTS search_bench.media;
+    CREATE TABLE search_bench.media (LIKE public.media_entries INCLUDING DEFAULTS INCLUDING GENERATED INCLUDING INDEXES);
+
+    INSERT INTO search_bench.media (id, title, description, media_type, release_year)
+    SELECT gen_random_uuid(),
+           (ARRAY['The','Dark','Silent','Lost','Last','Hidden','Broken','Golden','Iron','Crimson'])[1 + (random() * 9)::INT] || ' ' ||
+           (ARRAY['Knight','River','Empire','Garden','Signal','Horizon','Matrix','Voyage','Kingdom','Shadow'])[1 + (random() * 9)::INT] || ' ' || g,
+           'A story about ' ||
+           (ARRAY['revenge','love','space','robots','dragons','war','friendship','time travel'])[1 + (random() * 7)::INT],
+           (ARRAY['movie','series','game'])[1 + g % 3],
+           1950 + g % 75
+    FROM generate_series(1, titles) g;
+END
+$$;
+
+-- Runs every term a number of times and records the latency distribution of one search mode
+CREATE FUNCTION search_bench.measure(titles INT, mode TEXT, query TEXT, rounds INT) RETURNS VOID LANGUAGE plpgsql AS $$
+DECLARE
+    t TEXT;
+    started TIMESTAMPTZ;
+    samples NUMERIC[] := '{}';
+BEGIN
+    FOR i IN 1..rounds LOOP
+        FOR t IN SELECT term FROM search_bench.terms LOOP
+            started := clock_timestamp();
+            EXECUTE 'SELECT count(*) FROM (' || query || ') page' USING t;
+            samples := samples || (EXTRACT(EPOCH FROM clock_timestamp() - started) * 1000)::NUMERIC;
+        END LOOP;
+    END LOOP;
+
+    INSERT INTO search_bench.results
+    SELECT titles, mode, count(*),
+           round(percentile_cont(0.5) WITHIN GROUP (ORDER BY s)::NUMERIC, 2),
+           round(percentile_cont(0.95) WITHIN GROUP (ORDER BY s)::NUMERIC, 2),
+           round(max(s), 2)
+    FROM unnest(samples) s;
+END
+$$;
+
+-- Same shape as the page queries of MediaHandler: ordered by the sort key, one row past the page
+CREATE FUNCTION search_bench.run(titles INT) RETURNS VOID LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM search_bench.measure(titles, 'legacy',
+        'SELECT id FROM search_bench.media WHERE LOWER(title) LIKE LOWER(''%'' || $1 || ''%'') ' ||
+        'ORDER BY title, id LIMIT 51', 5);
+    PERFORM search_bench.measure(titles, 'substring',
+        'SELECT id FROM search_bench.media WHERE title ILIKE ''%'' || $1 || ''%'' ' ||
+        'ORDER BY title, id LIMIT 51', 5);
+    PERFORM search_bench.measure(titles, 'ranked',
+        'SELECT m.id FROM search_bench.media m ' ||
+        'CROSS JOIN (SELECT websearch_to_tsquery(''english'', $1) AS query, CAST($1 AS TEXT) AS term) s ' ||
+        'WHERE (m.search_vector @@ s.query OR s.term <% m.title) ' ||
+        'ORDER BY CAST(ts_rank(m.search_vector, s.query) + word_similarity(s.term, m.title) AS DOUBLE PRECISION) DESC, ' ||
+        'm.id DESC LIMIT 51', 5);
+END
+$$;
+
+-- VACUUM cannot run inside a function, so every catalog size is a separate step
+SELECT search_bench.build(10000);
+VACUUM ANALYZE search_bench.media;
+SELECT search_bench.run(10000);
+
+SELECT search_bench.build(100000);
+VACUUM ANALYZE search_bench.media;
+SELECT search_bench.run(100000);
+
+SELECT search_bench.build(1000000);
+VACUUM ANALYZE search_bench.media;
+SELECT search_bench.run(1000000);
+
+SELECT * FROM search_bench.results ORDER BY titles, mode;
+
+DROP SCHEMA search_bench CASCADE;
@@ -0,0 +1,52 @@
+package org.example.benchmarks;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import org.example.services.PasswordHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Password verification as done at login, per BCrypt cost factor (mrp.bcrypt.cost is 12 by default).
+// "verify" is the bare BCrypt check, "verifyPooled" goes through PasswordHasher and its thread pool, the
+// difference is the hand-over between the request thread and the hashing pool.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BcryptBenchmark {
+    private static final char[] PASSWORD = "correct horse battery staple".toCharArray();
+
+    @Param({"4", "8", "10", "12"})
+    private int cost;
+
+    private String hash;
+    private PasswordHasher hasher;
+
+    @Setup
+    public void setup() {
+        hash = BCrypt.withDefaults().hashToString(cost, PASSWORD);
+        hasher = PasswordHasher.getInstance();
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return BCrypt.verifyer().verify(PASSWORD, hash).verified;
+    }
+
+    @Benchmark
+    public boolean verifyPooled() throws InterruptedException {
+        return hasher.verify(PASSWORD, hash);
+    }
+}
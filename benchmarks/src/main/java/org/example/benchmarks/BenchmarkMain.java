@@ -0,0 +1,24 @@
+package org.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar. Runs JMH with the given options and, unless a result format is given,
+// writes the results as JSON to jmh-result.json, the file to keep per release. "compare" hands over to
+// CompareResults:
+//   java -jar benchmarks.jar [JMH options] [benchmark regex]
+//   java -jar benchmarks.jar compare <baseline.json> <current.json> [threshold percent]
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            System.exit(CompareResults.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(0, List.of("-rf", "json", "-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares two JMH JSON result files (-rf json), e.g. the last release against the current build, and
+// lists every benchmark and parameter combination with its change. A result counts as a regression when
+// it got worse by more than the threshold (10% by default) and the two confidence intervals do not
+// overlap, so noisy results of short runs are not flagged. Exits with 1 when there is a regression.
+public class CompareResults {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    private static final class Score {
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        Score(JsonNode result) {
+            JsonNode metric = result.get("primaryMetric");
+            mode = result.get("mode").asText();
+            score = metric.get("score").asDouble();
+            // Single measurements have no error, JMH writes NaN for it
+            error = metric.get("scoreError").isNumber() && !Double.isNaN(metric.get("scoreError").asDouble())
+                    ? metric.get("scoreError").asDouble() : 0;
+            unit = metric.get("scoreUnit").asText();
+        }
+
+        // Throughput is better when higher, all time modes when lower
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: compare <baseline.json> <current.json> [threshold percent]");
+            return 2;
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s -> %12.3f %-8s new%n", entry.getKey(), "", now.score, now.unit);
+                continue;
+            }
+            if (!before.unit.equals(now.unit) || !before.mode.equals(now.mode)) {
+                System.out.printf("%-90s not comparable (%s %s -> %s %s)%n", entry.getKey(),
+                        before.mode, before.unit, now.mode, now.unit);
+                continue;
+            }
+
+            double change = (now.score - before.score) / before.score * 100;
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean significant = Math.abs(now.score - before.score) > before.error + now.error;
+            String verdict = "";
+            if (worse > threshold && significant) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (-worse > threshold && significant) {
+                verdict = "improved";
+            }
+            System.out.printf("%-90s %12.3f -> %12.3f %-8s %+7.1f%% %s%n",
+                    entry.getKey(), before.score, now.score, now.unit, change, verdict);
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-90s missing from %s%n", key, args[1]);
+            }
+        }
+
+        System.out.println();
+        System.out.println(regressions == 0
+                ? "No regressions above " + threshold + "%"
+                : regressions + " regression(s) above " + threshold + "%");
+        return regressions == 0 ? 0 : 1;
+    }
+
+    // Results keyed by benchmark method plus its parameters, e.g. "...JsonBenchmark.toJson size=50"
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                Map<String, String> sorted = new TreeMap<>();
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    sorted.put(field.getKey(), field.getValue().asText());
+                }
+                sorted.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            }
+            scores.put(key.toString(), new Score(result));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// ResultSet over rows held in memory, keyed by column label, for benchmarking the row mappers without a
+// database. Only the getters the mappers use are there (by label, like the handlers call them), anything
+// else throws. The proxy adds a small constant cost per column read; results are meant to be compared
+// across releases of the mappers, not against the PostgreSQL driver.
+public final class FakeResultSet {
+    private FakeResultSet() {}
+
+    public static ResultSet of(List<Map<String, Object>> rows) {
+        int[] position = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++position[0] < rows.size();
+                        case "beforeFirst":
+                            position[0] = -1;
+                            return null;
+                        case "wasNull":
+                            return wasNull[0];
+                        case "close":
+                            return null;
+                        case "isClosed":
+                            return false;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "FakeResultSet" + rows;
+                        default:
+                            break;
+                    }
+                    if (!method.getName().startsWith("get") || args == null || !(args[0] instanceof String)) {
+                        throw new SQLException("Not supported by FakeResultSet: " + method.getName());
+                    }
+                    if (position[0] < 0 || position[0] >= rows.size()) {
+                        throw new SQLException("ResultSet not positioned on a row");
+                    }
+                    Map<String, Object> row = rows.get(position[0]);
+                    String column = (String) args[0];
+                    if (!row.containsKey(column)) {
+                        throw new SQLException("The column name " + column + " was not found in this ResultSet.");
+                    }
+                    Object value = row.get(column);
+                    wasNull[0] = value == null;
+                    return convert(method.getName(), value, args);
+                });
+    }
+
+    private static Object convert(String getter, Object value, Object[] args) throws SQLException {
+        switch (getter) {
+            case "getObject":
+                if (args.length == 2 && value != null && !((Class<?>) args[1]).isInstance(value)) {
+                    if (args[1] == UUID.class) {
+                        return UUID.fromString(value.toString());
+                    }
+                    throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + args[1]);
+                }
+                return value;
+            case "getString":
+                return value == null ? null : value.toString();
+            case "getInt":
+                return value == null ? 0 : ((Number) value).intValue();
+            case "getLong":
+                return value == null ? 0L : ((Number) value).longValue();
+            case "getDouble":
+                return value == null ? 0.0 : ((Number) value).doubleValue();
+            case "getBoolean":
+                return value != null && (Boolean) value;
+            case "getTimestamp":
+                return value;
+            default:
+                throw new SQLException("Not supported by FakeResultSet: " + getter);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.benchmarks;
+
+import org.example.models.MediaEntry;
+import org.example.utils.JsonHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Serializing a media list page of 1, 50 and 1000 entries: "toJson" is the String the handlers build for
+// small bodies, "sendResponse" the full response on a stub exchange, including gzip when the client
+// accepts it and the body is above mrp.http.compression.minSize.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({"1", "50", "1000"})
+    private int size;
+
+    private List<MediaEntry> media;
+
+    @State(Scope.Thread)
+    public static class Client {
+        @Param({"identity", "gzip"})
+        private String acceptEncoding;
+
+        private StubExchange exchange;
+
+        @Setup
+        public void setup() {
+            exchange = new StubExchange("GET", "/api/media").header("Accept-Encoding", acceptEncoding);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        media = new ArrayList<>(size);
+        long createdAt = Timestamp.valueOf("2024-03-01 12:00:00").getTime();
+        UUID creatorId = UUID.fromString("01900000-0000-7000-8000-000000000001");
+        for (int i = 0; i < size; i++) {
+            MediaEntry entry = new MediaEntry(
+                    UUID.fromString(String.format("01900000-0000-7000-8000-%012d", i)),
+                    "Benchmark Media " + i,
+                    "A description of benchmark media " + i + " that is about as long as the ones users write.",
+                    i % 3 == 0 ? "movie" : i % 3 == 1 ? "series" : "game",
+                    1980 + i % 45,
+                    "Action,Drama",
+                    i % 2 == 0 ? "12+" : "16+",
+                    creatorId,
+                    new Timestamp(createdAt + i * 60_000L));
+            entry.setCreatorUsername("user" + i % 100);
+            entry.setAverageRating(1 + (i % 40) / 10.0);
+            entry.setTotalRatings(i % 250);
+            entry.setRatingHistogram(new int[]{i % 7, i % 11, i % 13, i % 17, i % 19});
+            media.add(entry);
+        }
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonHelper.toJson(media);
+    }
+
+    @Benchmark
+    public long sendResponse(Client client) throws IOException {
+        StubExchange exchange = client.exchange.reset();
+        JsonHelper.sendResponse(exchange, 200, media);
+        return exchange.getResponseLength();
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.benchmarks;
+
+import org.example.handlers.MediaHandler;
+import org.example.models.MediaEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// MediaHandler.mapResultSetToMedia on one row of the media list query, read from a FakeResultSet. The
+// mapper is private, it is reached through a method handle looked up once in the setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaMappingBenchmark {
+    private MethodHandle mapResultSetToMedia;
+    private ResultSet rs;
+
+    @Setup
+    public void setup() throws Exception {
+        // Keeps the connection pool from opening connections while the handler is constructed
+        System.setProperty("mrp.db.pool.minSize", "0");
+        MediaHandler handler = new MediaHandler();
+        mapResultSetToMedia = MethodHandles.privateLookupIn(MediaHandler.class, MethodHandles.lookup())
+                .findVirtual(MediaHandler.class, "mapResultSetToMedia", MethodType.methodType(MediaEntry.class, ResultSet.class))
+                .bindTo(handler);
+
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", UUID.fromString("01900000-0000-7000-8000-000000000105"));
+        row.put("title", "Benchmark Media");
+        row.put("description", "A description of benchmark media that is about as long as the ones users write.");
+        row.put("media_type", "movie");
+        row.put("release_year", 1999);
+        row.put("genres", "Action,Drama");
+        row.put("age_restriction", "16+");
+        row.put("creator_id", UUID.fromString("01900000-0000-7000-8000-000000000001"));
+        row.put("created_at", Timestamp.valueOf("2024-03-01 12:00:00"));
+        row.put("creator_username", "testuser1");
+        row.put("avg_rating", 3.75);
+        row.put("rating_count", 128);
+        row.put("stars_1", 10);
+        row.put("stars_2", 14);
+        row.put("stars_3", 20);
+        row.put("stars_4", 40);
+        row.put("stars_5", 44);
+        rs = FakeResultSet.of(List.of(row));
+        rs.next();
+    }
+
+    @Benchmark
+    public MediaEntry mapResultSetToMedia() throws Throwable {
+        return (MediaEntry) mapResultSetToMedia.invokeExact(rs);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.benchmarks;
+
+import org.example.services.ItemSimilarity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Item-to-item model on a synthetic catalog, by default 100k users and 50k media with skewed popularity
+// and about 20 ratings/favorites per user. "build" is a full model build (startup and the periodic
+// rebuild), "refresh" patches the model after 100 media changed, "recommend" is one request against
+// the built model. The setup prints the heap footprint of the interactions and the neighbour lists.
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RecommendationBenchmark {
+    private static final int NEIGHBOURS = 50;
+    private static final float SHRINK = 10;
+    private static final int LIMIT = 10;
+    private static final int PROFILES = 1024;
+
+    @Param("100000")
+    private int users;
+
+    @Param("50000")
+    private int items;
+
+    @Param("20")
+    private int perUser;
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private ItemSimilarity.Interactions interactions;
+    private ItemSimilarity similarity;
+    private int[] changed;
+    private ItemSimilarity.Builder changedRows;
+    private int[][] profileItems;
+    private float[][] profileWeights;
+    private int[][] profileExcludes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        ItemSimilarity.Builder builder = new ItemSimilarity.Builder(items, users);
+        for (int user = 0; user < users; user++) {
+            for (int i = 0; i < perUser; i++) {
+                builder.add(popularItem(random), user, weight(random));
+            }
+        }
+        interactions = builder.build();
+
+        long startedAt = System.nanoTime();
+        similarity = ItemSimilarity.compute(interactions, NEIGHBOURS, SHRINK, pool);
+        System.out.println();
+        System.out.println("Model: " + interactions.getItems() + " media, " + interactions.getUsers() + " users, " +
+                interactions.getSize() + " interactions, built in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+        System.out.println("Footprint: interactions " + (interactions.estimateBytes() >> 20) + " MB, neighbours " +
+                (similarity.estimateBytes() >> 20) + " MB");
+
+        // 100 media, popular and niche alike, get a fresh set of interactions
+        changed = random.ints(0, items).distinct().limit(100).sorted().toArray();
+        changedRows = new ItemSimilarity.Builder(items, users);
+        for (int item : changed) {
+            for (int i = 0; i < 20; i++) {
+                changedRows.add(item, random.nextInt(users), weight(random));
+            }
+        }
+
+        profileItems = new int[PROFILES][];
+        profileWeights = new float[PROFILES][];
+        profileExcludes = new int[PROFILES][];
+        for (int p = 0; p < PROFILES; p++) {
+            profileItems[p] = new int[perUser];
+            profileWeights[p] = new float[perUser];
+            for (int i = 0; i < perUser; i++) {
+                profileItems[p][i] = popularItem(random);
+                profileWeights[p][i] = weight(random);
+            }
+            profileExcludes[p] = Arrays.stream(profileItems[p]).sorted().distinct().toArray();
+        }
+    }
+
+    // Cubing a uniform draw puts most interactions on the first few thousand media
+    private int popularItem(Random random) {
+        double u = random.nextDouble();
+        return (int) (items * u * u * u);
+    }
+
+    // Ratings weigh stars - 3, favorites 2; 3 stars carry no signal and are left out like in the engine
+    private static float weight(Random random) {
+        int draw = random.nextInt(5);
+        return draw == 4 ? 2 : (draw < 2 ? draw - 2 : draw - 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public ItemSimilarity build() {
+        return ItemSimilarity.compute(interactions, NEIGHBOURS, SHRINK, pool);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public ItemSimilarity refresh() {
+        ItemSimilarity.Interactions next = interactions.replaceRows(changed, changedRows);
+        return similarity.update(next, changed, SHRINK, pool);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public int recommend() {
+        int p = next++ & (PROFILES - 1);
+        return similarity.recommend(profileItems[p], profileWeights[p], profileExcludes[p],
+                new int[LIMIT], new float[LIMIT]);
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.benchmarks;
+
+import org.example.utils.JsonHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The string handling every request goes through before a handler does real work: splitting the query
+// string and the path. Each invocation parses the whole set below, from no query to a full media search.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+    private static final String[] QUERIES = {
+        null,
+        "",
+        "limit=20",
+        "window=day&limit=10",
+        "title=matrix&genre=action&mediaType=movie&releaseYear=1999&ageRestriction=16%2B&minRating=3&sortBy=rating&limit=50",
+        "ratingsLimit=20&ratingsCursor=MTcwOTI5NDQwMDAwMDowMTkwMDAwMC0wMDAwLTcwMDAtODAwMC0wMDAwMDAwMDAxMDU",
+    };
+
+    private static final String[] PATHS = {
+        "/",
+        "/api",
+        "/api/media",
+        "/api/media/01900000-0000-7000-8000-000000000105",
+        "/api/media/01900000-0000-7000-8000-000000000105/ratings",
+        "/api/users/testuser1/favorites",
+    };
+
+    @Benchmark
+    public void parseQueryParams(Blackhole blackhole) {
+        for (String query : QUERIES) {
+            blackhole.consume(JsonHelper.parseQueryParams(query));
+        }
+    }
+
+    @Benchmark
+    public void getPathSegments(Blackhole blackhole) {
+        for (String path : PATHS) {
+            blackhole.consume(JsonHelper.getPathSegments(path));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.HttpExchange;
+import org.example.models.MediaEntry;
+import org.example.utils.JsonHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Garbage per response, old against new response path. "legacy" is the path before pooled buffers: a
+// HashMap per error or message body, serialization through the generic writer into a fresh array, and a
+// fresh ByteArrayOutputStream plus copy when gzip applies. "pooled" is JsonHelper as it is now.
+// The allocation rate is the point, so run it with the GC profiler and look at gc.alloc.rate.norm
+// (bytes per operation):
+//   java -jar benchmarks.jar ResponseAllocation -prof gc
+// JMH threads are platform threads, so Jackson's ThreadLocal buffers are reused by "legacy" here; with one
+// virtual thread per request in the server they are not, and the real difference is larger.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseAllocationBenchmark {
+    private static final int MIN_COMPRESSED_SIZE = 1024;
+    private static final ObjectMapper legacyMapper = new ObjectMapper()
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+    // error: a common error body, message: a success message, media: one entry, page: 50 entries
+    @Param({"error", "message", "media", "page"})
+    private String body;
+
+    private MediaEntry media;
+    private List<MediaEntry> page;
+
+    @State(Scope.Thread)
+    public static class Client {
+        @Param({"identity", "gzip"})
+        private String acceptEncoding;
+
+        private StubExchange exchange;
+
+        @Setup
+        public void setup() {
+            exchange = new StubExchange("GET", "/api/media").header("Accept-Encoding", acceptEncoding);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        page = new ArrayList<>(50);
+        long createdAt = Timestamp.valueOf("2024-03-01 12:00:00").getTime();
+        UUID creatorId = UUID.fromString("01900000-0000-7000-8000-000000000001");
+        for (int i = 0; i < 50; i++) {
+            MediaEntry entry = new MediaEntry(
+                    UUID.fromString(String.format("01900000-0000-7000-8000-%012d", i)),
+                    "Benchmark Media " + i,
+                    "A description of benchmark media " + i + " that is about as long as the ones users write.",
+                    i % 3 == 0 ? "movie" : i % 3 == 1 ? "series" : "game",
+                    1980 + i % 45,
+                    "Action,Drama",
+                    i % 2 == 0 ? "12+" : "16+",
+                    creatorId,
+                    new Timestamp(createdAt + i * 60_000L));
+            entry.setCreatorUsername("user" + i % 100);
+            entry.setAverageRating(1 + (i % 40) / 10.0);
+            entry.setTotalRatings(i % 250);
+            entry.setRatingHistogram(new int[]{i % 7, i % 11, i % 13, i % 17, i % 19});
+            page.add(entry);
+        }
+        media = page.get(0);
+    }
+
+    @Benchmark
+    public long legacy(Client client) throws IOException {
+        StubExchange exchange = client.exchange.reset();
+        switch (body) {
+            case "error":
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Media not found");
+                legacySend(exchange, 404, error);
+                break;
+            case "message":
+                Map<String, String> success = new HashMap<>();
+                success.put("message", "Rating liked");
+                legacySend(exchange, 200, success);
+                break;
+            case "media":
+                legacySend(exchange, 200, media);
+                break;
+            default:
+                legacySend(exchange, 200, page);
+        }
+        return exchange.getResponseLength();
+    }
+
+    @Benchmark
+    public long pooled(Client client) throws IOException {
+        StubExchange exchange = client.exchange.reset();
+        switch (body) {
+            case "error":
+                JsonHelper.sendError(exchange, 404, "Media not found");
+                break;
+            case "message":
+                JsonHelper.sendSuccess(exchange, "Rating liked");
+                break;
+            case "media":
+                JsonHelper.sendResponse(exchange, 200, media);
+                break;
+            default:
+                JsonHelper.sendResponse(exchange, 200, page);
+        }
+        return exchange.getResponseLength();
+    }
+
+    // JsonHelper.sendResponse and ResponseCompression.send before the pooled path
+    private static void legacySend(HttpExchange exchange, int statusCode, Object response) throws IOException {
+        byte[] body = legacyMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip") && body.length >= MIN_COMPRESSED_SIZE) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+            try (OutputStream os = new GZIPOutputStream(compressed, 8192)) {
+                os.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.benchmarks;
+
+import org.example.utils.JsonHelper;
+import org.example.utils.RouteTable;
+import org.example.utils.Router;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Cost of finding the route of a request, for one request per registered route plus the error cases
+// (unknown path, unsupported method, malformed UUID). "routeTable" is the compiled trie the server uses,
+// "legacyChain" replays the startsWith/contains chain and per-handler segment ladders it replaced.
+// No database is needed: the pool is created empty and the handlers are never invoked.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterDispatchBenchmark {
+    private static final String ID = "01900000-0000-7000-8000-000000000105";
+
+    private static final String[][] REQUESTS = {
+        {"GET", "/api"},
+        {"POST", "/api/auth/register"},
+        {"POST", "/api/auth/login"},
+        {"POST", "/api/users/login"},
+        {"GET", "/api/media"},
+        {"POST", "/api/media"},
+        {"GET", "/api/media/" + ID},
+        {"PUT", "/api/media/" + ID},
+        {"DELETE", "/api/media/" + ID},
+        {"POST", "/api/media/" + ID + "/favorite"},
+        {"DELETE", "/api/media/" + ID + "/favorite"},
+        {"POST", "/api/media/" + ID + "/ratings"},
+        {"PUT", "/api/ratings/" + ID},
+        {"DELETE", "/api/ratings/" + ID},
+        {"PUT", "/api/ratings/" + ID + "/confirm"},
+        {"POST", "/api/ratings/" + ID + "/like"},
+        {"DELETE", "/api/ratings/" + ID + "/unlike"},
+        {"GET", "/api/users/testuser1/profile"},
+        {"GET", "/api/users/testuser1/favorites"},
+        {"GET", "/api/users/testuser1/ratings"},
+        {"GET", "/api/leaderboard"},
+        {"GET", "/api/recommendations"},
+        {"GET", "/api/unknown/path"},
+        {"PATCH", "/api/media/" + ID},
+        {"GET", "/api/media/invalid-uuid-format"},
+    };
+
+    private RouteTable routes;
+
+    @Setup
+    public void setup() {
+        // Keeps the connection pool from opening connections while the handlers are constructed
+        System.setProperty("mrp.db.pool.minSize", "0");
+        routes = new Router().getRoutes();
+    }
+
+    @Benchmark
+    public void routeTable(Blackhole blackhole) {
+        for (String[] request : REQUESTS) {
+            RouteTable.Match match = routes.resolve(request[0], request[1]);
+            blackhole.consume(match.getStatus());
+            blackhole.consume(match.getParams());
+        }
+    }
+
+    @Benchmark
+    public void legacyChain(Blackhole blackhole) {
+        for (String[] request : REQUESTS) {
+            blackhole.consume(legacyDispatch(request[0], request[1]));
+        }
+    }
+
+    // The decisions of the old Router.handle and the handle methods of the handlers, without the responses
+    private static int legacyDispatch(String method, String path) {
+        if (path.startsWith("/api/auth/") || path.startsWith("/api/users/login")) {
+            if (path.endsWith("/register") && "POST".equals(method)) return 1;
+            if (path.endsWith("/login") && "POST".equals(method)) return 2;
+            return 404;
+        }
+        if (path.startsWith("/api/media")) {
+            String[] segments = JsonHelper.getPathSegments(path);
+            if (path.contains("/ratings")) {
+                if (segments.length == 4 && "ratings".equals(segments[3]) && "POST".equals(method)) {
+                    return parsed(segments[2], 3);
+                }
+                return 404;
+            }
+            if (segments.length == 2) {
+                return "GET".equals(method) ? 4 : "POST".equals(method) ? 5 : 405;
+            }
+            if (segments.length == 3) {
+                if ("GET".equals(method) || "PUT".equals(method) || "DELETE".equals(method)) {
+                    return parsed(segments[2], 6);
+                }
+                return 405;
+            }
+            if (segments.length == 4 && "favorite".equals(segments[3])) {
+                if ("POST".equals(method) || "DELETE".equals(method)) {
+                    return parsed(segments[2], 7);
+                }
+                return 405;
+            }
+            return 404;
+        }
+        if (path.equals("/") || path.equals("/api") || path.equals("/api/")) {
+            return 200;
+        }
+        return 404;
+    }
+
+    private static int parsed(String id, int route) {
+        try {
+            return UUID.fromString(id).hashCode() == 0 ? 0 : route;
+        } catch (IllegalArgumentException e) {
+            return 400;
+        }
+    }
+}
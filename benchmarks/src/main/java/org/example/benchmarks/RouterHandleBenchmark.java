@@ -0,0 +1,86 @@
+package org.example.benchmarks;
+
+import org.example.services.TokenCache;
+import org.example.utils.Router;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// A whole Router.handle call on a stub exchange: lease, route lookup, authentication and the JSON
+// response, for the requests that are answered without touching the database. "authenticated" carries a
+// token that is already in the token cache and fails the handler's parameter check, so it covers the
+// full path up to the first query. The expected status is checked once in the setup.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterHandleBenchmark {
+    private static final String TOKEN = "benchmark-token";
+    private static final UUID USER_ID = UUID.fromString("01900000-0000-7000-8000-000000000001");
+
+    @Param({"health", "notFound", "methodNotAllowed", "unauthorized", "authenticated"})
+    private String request;
+
+    private Router router;
+    private StubExchange exchange;
+
+    @Setup
+    public void setup() throws Exception {
+        // Keeps the connection pool from opening connections; leases only borrow one on the first query
+        System.setProperty("mrp.db.pool.minSize", "0");
+        router = new Router();
+        TokenCache.getInstance().get(TOKEN, token -> USER_ID);
+
+        int expected;
+        switch (request) {
+            case "health":
+                exchange = new StubExchange("GET", "/api");
+                expected = 200;
+                break;
+            case "notFound":
+                exchange = new StubExchange("GET", "/api/unknown/path");
+                expected = 404;
+                break;
+            case "methodNotAllowed":
+                exchange = new StubExchange("PATCH", "/api/media/01900000-0000-7000-8000-000000000105");
+                expected = 405;
+                break;
+            case "unauthorized":
+                exchange = new StubExchange("GET", "/api/leaderboard");
+                expected = 401;
+                break;
+            case "authenticated":
+                exchange = new StubExchange("GET", "/api/leaderboard?limit=all")
+                        .header("Authorization", "Bearer " + TOKEN);
+                expected = 400;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown request: " + request);
+        }
+
+        router.handle(exchange.reset());
+        if (exchange.getResponseCode() != expected) {
+            throw new IllegalStateException(request + " answered " + exchange.getResponseCode() + ", expected " + expected);
+        }
+    }
+
+    @Benchmark
+    public long handle() throws IOException {
+        router.handle(exchange.reset());
+        return exchange.getResponseLength();
+    }
+}
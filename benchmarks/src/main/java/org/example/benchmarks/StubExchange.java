@@ -0,0 +1,133 @@
+package org.example.benchmarks;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+// In-memory HttpExchange for driving handlers without a server or a socket. The response body is only
+// counted, not kept, so writing it costs about what handing it to a socket buffer would. One instance is
+// meant to be reused: reset() clears the response side before the next request.
+public class StubExchange extends HttpExchange {
+    private static final InetSocketAddress LOCAL = new InetSocketAddress("127.0.0.1", 8080);
+    private static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 54321);
+
+    private final String method;
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final byte[] requestBody;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private Headers responseHeaders = new Headers();
+    private InputStream in;
+    private final CountingOutputStream out = new CountingOutputStream();
+    private int responseCode = -1;
+
+    public StubExchange(String method, String uri) {
+        this(method, uri, new byte[0]);
+    }
+
+    public StubExchange(String method, String uri, byte[] requestBody) {
+        this.method = method;
+        this.uri = URI.create(uri);
+        this.requestBody = requestBody;
+        this.in = new ByteArrayInputStream(requestBody);
+    }
+
+    public StubExchange header(String name, String value) {
+        requestHeaders.set(name, value);
+        return this;
+    }
+
+    public StubExchange reset() {
+        responseHeaders = new Headers();
+        in = new ByteArrayInputStream(requestBody);
+        out.count = 0;
+        responseCode = -1;
+        return this;
+    }
+
+    // Bytes written to the response body since the last reset
+    public long getResponseLength() {
+        return out.count;
+    }
+
+    @Override
+    public Headers getRequestHeaders() { return requestHeaders; }
+
+    @Override
+    public Headers getResponseHeaders() { return responseHeaders; }
+
+    @Override
+    public URI getRequestURI() { return uri; }
+
+    @Override
+    public String getRequestMethod() { return method; }
+
+    @Override
+    public HttpContext getHttpContext() { return null; }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public InputStream getRequestBody() { return in; }
+
+    @Override
+    public OutputStream getResponseBody() { return out; }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        if (responseCode != -1) {
+            throw new IllegalStateException("headers already sent");
+        }
+        responseCode = rCode;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() { return REMOTE; }
+
+    @Override
+    public int getResponseCode() { return responseCode; }
+
+    @Override
+    public InetSocketAddress getLocalAddress() { return LOCAL; }
+
+    @Override
+    public String getProtocol() { return "HTTP/1.1"; }
+
+    @Override
+    public Object getAttribute(String name) { return attributes.get(name); }
+
+    @Override
+    public void setAttribute(String name, Object value) { attributes.put(name, value); }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() { return null; }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
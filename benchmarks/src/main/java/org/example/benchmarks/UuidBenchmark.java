@@ -0,0 +1,36 @@
+package org.example.benchmarks;
+
+import org.example.utils.UUIDGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// UUIDv7 generation, alone and with 4 threads creating ids at once like concurrent inserts do. The
+// generator keeps shared state to stay monotonic within a millisecond, so "contended" shows what that
+// costs; on machines with fewer cores than threads it mostly measures time slicing.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UuidBenchmark {
+    @Benchmark
+    @Threads(1)
+    public UUID single() {
+        return UUIDGenerator.generateUUIDv7();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UUID contended() {
+        return UUIDGenerator.generateUUIDv7();
+    }
+}
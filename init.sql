@@ -1,5 +1,7 @@
 -- Drop tables if they exist (for clean restart)
 DROP TABLE IF EXISTS auth_tokens CASCADE;
+DROP TABLE IF EXISTS media_genres CASCADE;
+DROP TABLE IF EXISTS genres CASCADE;
 DROP TABLE IF EXISTS rating_likes CASCADE;
 DROP TABLE IF EXISTS favorites CASCADE;
 DROP TABLE IF EXISTS ratings CASCADE;
@@ -8,6 +10,8 @@ DROP TABLE IF EXISTS users CASCADE;
 
 -- Enable UUID extension for PostgreSQL (for default UUID generation)
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
+-- Trigram matching for substring and typo-tolerant title search
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
 
 -- Users table
 CREATE TABLE users (
@@ -27,8 +31,107 @@ CREATE TABLE media_entries (
     genres VARCHAR(255), -- comma-separated list
     age_restriction VARCHAR(10),
     creator_id UUID REFERENCES users(id),
-    created_at TIMESTAMP DEFAULT NOW()
+    created_at TIMESTAMP DEFAULT NOW(),
+    -- Moved by every change to the entry, its ratings or their likes (see media_version_trigger);
+    -- ETag and Last-Modified of GET /api/media and /api/media/{id} are derived from them
+    version BIGINT NOT NULL DEFAULT 1,
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    -- Rating aggregates, kept exact by the triggers on ratings (see below)
+    rating_sum INT NOT NULL DEFAULT 0,
+    rating_count INT NOT NULL DEFAULT 0,
+    stars_1 INT NOT NULL DEFAULT 0,
+    stars_2 INT NOT NULL DEFAULT 0,
+    stars_3 INT NOT NULL DEFAULT 0,
+    stars_4 INT NOT NULL DEFAULT 0,
+    stars_5 INT NOT NULL DEFAULT 0,
+    avg_rating DOUBLE PRECISION GENERATED ALWAYS AS (
+        CASE WHEN rating_count = 0 THEN 0 ELSE rating_sum::DOUBLE PRECISION / rating_count END
+    ) STORED,
+    -- Full-text document for GET /api/media?q=..., title words weigh more than description words
+    search_vector TSVECTOR GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', COALESCE(title, '')), 'A') ||
+        setweight(to_tsvector('english', COALESCE(description, '')), 'B')
+    ) STORED
+);
+
+-- Keyset pagination indexes for GET /api/media, one per sort mode (sort key + id as tiebreaker)
+CREATE INDEX idx_media_title ON media_entries (title, id);
+CREATE INDEX idx_media_year ON media_entries ((COALESCE(release_year, -1)) DESC, id DESC);
+CREATE INDEX idx_media_avg_rating ON media_entries (avg_rating DESC, id DESC);
+
+-- Search indexes: full-text over title and description, trigrams over the title
+-- (serves ILIKE '%term%' for the search filter and word similarity for typos in q)
+CREATE INDEX idx_media_search_vector ON media_entries USING GIN (search_vector);
+CREATE INDEX idx_media_title_trgm ON media_entries USING GIN (title gin_trgm_ops);
+
+CREATE OR REPLACE FUNCTION media_version_trigger() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    NEW.updated_at := NOW();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER media_version BEFORE UPDATE ON media_entries
+    FOR EACH ROW EXECUTE FUNCTION media_version_trigger();
+
+-- Genre dictionary; names are matched case-insensitively, the first spelling seen is kept
+CREATE TABLE genres (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL
+);
+CREATE UNIQUE INDEX idx_genres_name ON genres (LOWER(name));
+
+-- Genres of each media entry. media_entries.genres stays as the comma-separated display form the
+-- API reads and writes; the triggers below keep this table in sync with it.
+CREATE TABLE media_genres (
+    media_id UUID REFERENCES media_entries(id) ON DELETE CASCADE,
+    genre_id INT REFERENCES genres(id),
+    PRIMARY KEY(media_id, genre_id)
 );
+CREATE INDEX idx_media_genres_genre ON media_genres (genre_id, media_id);
+
+-- Replaces the genres of the given media entries with the ones parsed from their comma-separated lists
+CREATE OR REPLACE FUNCTION sync_media_genres(p_media_ids UUID[], p_genres TEXT[]) RETURNS VOID AS $$
+    DELETE FROM media_genres WHERE media_id = ANY(p_media_ids);
+
+    INSERT INTO genres (name)
+    SELECT DISTINCT ON (LOWER(TRIM(g))) TRIM(g)
+    FROM unnest(p_genres) AS l(genres)
+    CROSS JOIN LATERAL unnest(string_to_array(l.genres, ',')) AS g
+    WHERE TRIM(g) <> ''
+    ON CONFLICT ((LOWER(name))) DO NOTHING;
+
+    INSERT INTO media_genres (media_id, genre_id)
+    SELECT DISTINCT l.media_id, d.id
+    FROM unnest(p_media_ids, p_genres) AS l(media_id, genres)
+    CROSS JOIN LATERAL unnest(string_to_array(l.genres, ',')) AS g
+    JOIN genres d ON LOWER(d.name) = LOWER(TRIM(g));
+$$ LANGUAGE sql;
+
+-- Statement-level like the rating aggregates; updates only resync rows whose genres changed
+CREATE OR REPLACE FUNCTION media_genres_trigger() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM sync_media_genres(array_agg(n.id), array_agg(n.genres))
+        FROM new_rows n
+        HAVING COUNT(*) > 0;
+    ELSE
+        PERFORM sync_media_genres(array_agg(n.id), array_agg(n.genres))
+        FROM new_rows n JOIN old_rows o ON o.id = n.id
+        WHERE n.genres IS DISTINCT FROM o.genres
+        HAVING COUNT(*) > 0;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER media_genres_insert AFTER INSERT ON media_entries
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION media_genres_trigger();
+CREATE TRIGGER media_genres_update AFTER UPDATE ON media_entries
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION media_genres_trigger();
 
 -- Ratings table
 CREATE TABLE ratings (
@@ -39,9 +142,85 @@ CREATE TABLE ratings (
     comment TEXT,
     is_confirmed BOOLEAN DEFAULT FALSE,
     created_at TIMESTAMP DEFAULT NOW(),
+    -- Number of rating_likes rows, kept exact by the triggers on rating_likes (see below)
+    like_count INT NOT NULL DEFAULT 0,
     UNIQUE(media_id, user_id) -- One rating per user per media
 );
 
+-- Ratings of a media entry, newest first, for the paged list in GET /api/media/{id}
+CREATE INDEX idx_ratings_media_created ON ratings (media_id, created_at DESC, id DESC);
+
+-- Ratings of a user, for the exclusions of GET /api/recommendations
+CREATE INDEX idx_ratings_user ON ratings (user_id);
+
+-- Applies rating changes to the aggregates of media_entries.
+-- Each change is (media_id, stars, sign) with sign +1 for an added rating and -1 for a removed one.
+CREATE OR REPLACE FUNCTION apply_rating_deltas(p_media_ids UUID[], p_stars INT[], p_signs INT[]) RETURNS VOID AS $$
+    UPDATE media_entries m
+    SET rating_sum   = m.rating_sum   + d.sum_delta,
+        rating_count = m.rating_count + d.count_delta,
+        stars_1      = m.stars_1      + d.stars_1,
+        stars_2      = m.stars_2      + d.stars_2,
+        stars_3      = m.stars_3      + d.stars_3,
+        stars_4      = m.stars_4      + d.stars_4,
+        stars_5      = m.stars_5      + d.stars_5
+    FROM (
+        SELECT c.media_id,
+               SUM(c.sign * c.stars) AS sum_delta,
+               SUM(c.sign) AS count_delta,
+               SUM(CASE WHEN c.stars = 1 THEN c.sign ELSE 0 END) AS stars_1,
+               SUM(CASE WHEN c.stars = 2 THEN c.sign ELSE 0 END) AS stars_2,
+               SUM(CASE WHEN c.stars = 3 THEN c.sign ELSE 0 END) AS stars_3,
+               SUM(CASE WHEN c.stars = 4 THEN c.sign ELSE 0 END) AS stars_4,
+               SUM(CASE WHEN c.stars = 5 THEN c.sign ELSE 0 END) AS stars_5
+        FROM unnest(p_media_ids, p_stars, p_signs) AS c(media_id, stars, sign)
+        GROUP BY c.media_id
+    ) d
+    WHERE m.id = d.media_id;
+$$ LANGUAGE sql;
+
+-- Statement-level triggers: a statement that writes many ratings updates each affected media row once
+CREATE OR REPLACE FUNCTION ratings_aggregate_trigger() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM apply_rating_deltas(array_agg(n.media_id), array_agg(n.stars), array_agg(1))
+        FROM new_rows n;
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM apply_rating_deltas(array_agg(o.media_id), array_agg(o.stars), array_agg(-1))
+        FROM old_rows o;
+    ELSE
+        PERFORM apply_rating_deltas(array_agg(c.media_id), array_agg(c.stars), array_agg(c.sign))
+        FROM (
+            SELECT n.media_id, n.stars, 1 AS sign FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.stars <> o.stars OR n.media_id <> o.media_id
+            UNION ALL
+            SELECT o.media_id, o.stars, -1 AS sign FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.stars <> o.stars OR n.media_id <> o.media_id
+        ) c;
+
+        -- Changes that leave the aggregates alone (comment, confirmation, like count) still change
+        -- what the media detail shows, so they move the media version as well
+        UPDATE media_entries m SET version = m.version + 1
+        WHERE m.id IN (
+            SELECT n.media_id FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.stars = o.stars AND n.media_id = o.media_id
+            AND (n.comment, n.is_confirmed, n.like_count) IS DISTINCT FROM (o.comment, o.is_confirmed, o.like_count)
+        );
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER ratings_aggregate_insert AFTER INSERT ON ratings
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION ratings_aggregate_trigger();
+CREATE TRIGGER ratings_aggregate_update AFTER UPDATE ON ratings
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION ratings_aggregate_trigger();
+CREATE TRIGGER ratings_aggregate_delete AFTER DELETE ON ratings
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION ratings_aggregate_trigger();
+
 -- Rating likes table
 CREATE TABLE rating_likes (
     rating_id UUID REFERENCES ratings(id) ON DELETE CASCADE,
@@ -50,6 +229,29 @@ CREATE TABLE rating_likes (
     PRIMARY KEY(rating_id, user_id)
 );
 
+-- Statement-level like the rating aggregates: each liked or unliked rating is updated once per statement
+CREATE OR REPLACE FUNCTION rating_likes_count_trigger() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        UPDATE ratings r SET like_count = r.like_count + d.delta
+        FROM (SELECT rating_id, COUNT(*) AS delta FROM new_rows GROUP BY rating_id) d
+        WHERE r.id = d.rating_id;
+    ELSE
+        UPDATE ratings r SET like_count = r.like_count - d.delta
+        FROM (SELECT rating_id, COUNT(*) AS delta FROM old_rows GROUP BY rating_id) d
+        WHERE r.id = d.rating_id;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER rating_likes_count_insert AFTER INSERT ON rating_likes
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION rating_likes_count_trigger();
+CREATE TRIGGER rating_likes_count_delete AFTER DELETE ON rating_likes
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION rating_likes_count_trigger();
+
 -- Favorites table
 CREATE TABLE favorites (
     user_id UUID REFERENCES users(id),
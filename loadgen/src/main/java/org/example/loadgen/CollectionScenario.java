@@ -0,0 +1,173 @@
+package org.example.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Replays the requests of a Postman collection (v2.1) in order, every virtual user on its own and over
+// and over again. {{variables}} come from the collection and from the responses: the test scripts are not
+// run, but their pm.collectionVariables.set("name", jsonData.field) calls are applied to the response, which
+// is how the collection chains the login token and the id of the media it creates. {{baseUrl}} is reduced
+// to its path, the server is the one given by -target. {{$timestamp}} is unique per use, so registrations
+// of concurrent users do not collide; {{$randomInt}} and {{$guid}} are supported as well.
+// A login replaces the previous token of the account, so users replaying a collection that logs in with
+// one shared account invalidate each other's tokens; replay such a collection with -c 1.
+public class CollectionScenario implements Scenario {
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{([$\\w]+)}}");
+    private static final Pattern SET_VARIABLE = Pattern.compile(
+            "pm\\.(?:collectionVariables|environment|globals|variables)\\.set\\(\\s*[\"'](\\w+)[\"']\\s*,\\s*jsonData\\.([\\w.]+)\\s*\\)");
+    private static final Pattern UUID_SEGMENT = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<String, String> defaults = new HashMap<>();
+    private final AtomicLong timestamp = new AtomicLong(System.currentTimeMillis());
+
+    private static final class Step {
+        private final String method;
+        private final String url;
+        private final Map<String, String> headers = new HashMap<>();
+        private final String body;
+        private final String route;
+        private final Map<String, String> extracts = new HashMap<>(); // variable -> response field
+
+        Step(String method, String url, String body, String route) {
+            this.method = method;
+            this.url = url;
+            this.body = body;
+            this.route = route;
+        }
+    }
+
+    static CollectionScenario load(File file) throws IOException {
+        JsonNode collection = new ObjectMapper().readTree(file);
+        CollectionScenario scenario = new CollectionScenario();
+        for (JsonNode variable : collection.path("variable")) {
+            scenario.defaults.put(variable.path("key").asText(), variable.path("value").asText(""));
+        }
+        // The server comes from -target, only the path of the base URL is kept
+        String baseUrl = scenario.defaults.getOrDefault("baseUrl", "");
+        scenario.defaults.put("baseUrl", baseUrl.isEmpty() ? "" : URI.create(baseUrl).getRawPath());
+        scenario.collect(collection.path("item"));
+        if (scenario.steps.isEmpty()) {
+            throw new IOException("No requests in " + file);
+        }
+        return scenario;
+    }
+
+    private void collect(JsonNode items) {
+        for (JsonNode item : items) {
+            if (item.has("item")) {
+                collect(item.get("item")); // folder
+                continue;
+            }
+            JsonNode request = item.path("request");
+            JsonNode url = request.path("url");
+            String raw = url.isTextual() ? url.asText() : url.path("raw").asText();
+            String body = request.path("body").path("mode").asText().equals("raw")
+                    ? request.path("body").path("raw").asText(null) : null;
+            String method = request.path("method").asText("GET");
+            Step step = new Step(method, raw, body, method + " " + route(raw));
+            for (JsonNode header : request.path("header")) {
+                if (!header.path("disabled").asBoolean(false)) {
+                    step.headers.put(header.path("key").asText(), header.path("value").asText());
+                }
+            }
+            for (JsonNode event : item.path("event")) {
+                if (event.path("listen").asText().equals("test")) {
+                    StringBuilder script = new StringBuilder();
+                    event.path("script").path("exec").forEach(line -> script.append(line.asText()).append('\n'));
+                    Matcher matcher = SET_VARIABLE.matcher(script);
+                    while (matcher.find()) {
+                        step.extracts.put(matcher.group(1), matcher.group(2));
+                    }
+                }
+            }
+            steps.add(step);
+        }
+    }
+
+    // Path of the URL template with ids and variables as {id}, the query left out: /api/media/{id}/favorite
+    private String route(String raw) {
+        String path = raw.replace("{{baseUrl}}", defaults.getOrDefault("baseUrl", ""));
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        StringBuilder route = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            route.append('/').append(UUID_SEGMENT.matcher(segment).matches() || segment.startsWith("{{") ? "{id}" : segment);
+        }
+        return route.length() == 0 ? "/" : route.toString();
+    }
+
+    @Override
+    public void setup(VirtualUser user, Http http) {
+        // Every user starts at the top, the requests that log in and create media come first
+        user.variables.putAll(defaults);
+    }
+
+    @Override
+    public Request next(VirtualUser user) {
+        Step step = steps.get(user.position);
+        user.position = (user.position + 1) % steps.size();
+        Request request = new Request(step.route, step.method, resolve(step.url, user),
+                step.body == null || step.body.isEmpty() ? null : resolve(step.body, user));
+        step.headers.forEach((name, value) -> request.headers.put(name, resolve(value, user)));
+        return request;
+    }
+
+    @Override
+    public void completed(VirtualUser user, Request request, Response response) {
+        Step step = steps.get(Math.floorMod(user.position - 1, steps.size()));
+        if (step.extracts.isEmpty()) {
+            return;
+        }
+        JsonNode json = response.json();
+        if (json == null) {
+            return;
+        }
+        step.extracts.forEach((variable, field) -> {
+            JsonNode value = json;
+            for (String name : field.split("\\.")) {
+                value = value.path(name);
+            }
+            if (value.isValueNode() && !value.isNull()) {
+                user.variables.put(variable, value.asText());
+            }
+        });
+    }
+
+    private String resolve(String template, VirtualUser user) {
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuilder resolved = new StringBuilder();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String value;
+            switch (name) {
+                case "$timestamp": value = Long.toString(timestamp.incrementAndGet()); break;
+                case "$randomInt": value = Integer.toString(ThreadLocalRandom.current().nextInt(1001)); break;
+                case "$guid": value = UUID.randomUUID().toString(); break;
+                default: value = user.variables.getOrDefault(name, "");
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+// Holds a run against a baseline run, route by route: throughput, p50, p99 and p99.9 latency and the
+// error count. A route regressed when its p99 or p99.9 got worse by more than the threshold (10% by
+// default) or it has errors the baseline did not have. Exits with 1 when a route regressed.
+public class CompareSummaries {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+    private static final String[] PERCENTILES = {"p50", "p99", "p99.9"};
+
+    static int run(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: compare <baseline.json> <current.json> [threshold percent]");
+            return 2;
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode baseline = mapper.readTree(new File(args[0]));
+        JsonNode current = mapper.readTree(new File(args[1]));
+
+        if (!baseline.path("settings").equals(current.path("settings"))) {
+            System.out.println("Warning: the runs used different settings, the numbers may not be comparable");
+            System.out.println("  baseline: " + baseline.path("settings"));
+            System.out.println("  current:  " + current.path("settings"));
+            System.out.println();
+        }
+
+        System.out.printf("%-36s %-8s %12s %12s %9s%n", "route", "", "baseline", "current", "change");
+        int regressions = 0;
+        Iterator<Map.Entry<String, JsonNode>> routes = current.path("routes").fields();
+        while (routes.hasNext()) {
+            Map.Entry<String, JsonNode> route = routes.next();
+            JsonNode now = route.getValue();
+            JsonNode before = baseline.path("routes").path(route.getKey());
+            if (before.isMissingNode()) {
+                System.out.printf("%-36s new%n", route.getKey());
+                continue;
+            }
+
+            boolean regressed = false;
+            line(route.getKey(), "req/s", before.path("throughput").asDouble(), now.path("throughput").asDouble(), "");
+            for (String percentile : PERCENTILES) {
+                double was = before.path("latencyMs").path(percentile).asDouble();
+                double is = now.path("latencyMs").path(percentile).asDouble();
+                boolean worse = !percentile.equals("p50") && was > 0 && (is - was) / was * 100 > threshold;
+                regressed |= worse;
+                line("", percentile + " ms", was, is, worse ? "REGRESSION" : "");
+            }
+            long errorsBefore = before.path("errors").asLong();
+            long errorsNow = now.path("errors").asLong();
+            boolean newErrors = errorsNow > 0 && errorsBefore == 0;
+            regressed |= newErrors;
+            line("", "errors", errorsBefore, errorsNow, newErrors ? "REGRESSION" : "");
+            if (regressed) {
+                regressions++;
+            }
+        }
+        Iterator<String> names = baseline.path("routes").fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!current.path("routes").has(name)) {
+                System.out.printf("%-36s missing from %s%n", name, args[1]);
+            }
+        }
+
+        System.out.println();
+        System.out.println(regressions == 0
+                ? "No regressions above " + threshold + "%"
+                : regressions + " route(s) regressed above " + threshold + "%");
+        return regressions == 0 ? 0 : 1;
+    }
+
+    private static void line(String route, String metric, double was, double is, String verdict) {
+        String change = was == 0 ? "" : String.format("%+.1f%%", (is - was) / was * 100);
+        System.out.printf("%-36s %-8s %12.2f %12.2f %9s %s%n", route, metric, was, is, change, verdict);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.loadgen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+// Blocking HTTP/1.1 client shared by the workers. The JDK client keeps a keep-alive connection per
+// concurrent request, so every worker ends up with a connection of its own.
+public class Http {
+    private final URI target;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    Http(URI target, long timeoutNanos) {
+        this.target = target;
+        this.timeout = Duration.ofNanos(timeoutNanos);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "http-client");
+                    t.setDaemon(true);
+                    return t;
+                }))
+                .build();
+    }
+
+    Response send(Request request) throws InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(target + request.path))
+                .timeout(timeout)
+                .method(request.method, request.body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(request.body));
+        request.headers.forEach(builder::header);
+        try {
+            HttpResponse<byte[]> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            return new Response(response.statusCode(), response.body());
+        } catch (IOException | IllegalArgumentException e) {
+            return new Response(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    // For the setup: waits out 503 answers (password hashing queue full) for up to a minute
+    Response sendRetrying(Request request) throws InterruptedException {
+        Response response = send(request);
+        for (int attempt = 0; attempt < 60 && response.status == 503; attempt++) {
+            Thread.sleep(1000);
+            response = send(request);
+        }
+        return response;
+    }
+}
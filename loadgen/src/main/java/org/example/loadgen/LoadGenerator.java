@@ -0,0 +1,205 @@
+package org.example.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives a running server with -c workers, each acting as one virtual user of the scenario, and writes
+// the latency percentiles per route to a JSON summary that "compare" can hold against another run.
+//
+// With -rate the run is open loop: request i is due at start + i / rate, whichever worker is free takes
+// it, and its latency counts from when it was due. A server that falls behind therefore shows up with the
+// full waiting time of the requests that queued up behind a slow one, instead of the client politely
+// sending less (coordinated omission). Without -rate every worker sends back to back and the histograms
+// hold service times, which hide exactly those stalls; use it to find the throughput limit, not to judge
+// latency.
+public class LoadGenerator {
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Options options;
+    private final Scenario scenario;
+    private final Http http;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    LoadGenerator(Options options, Scenario scenario) {
+        this.options = options;
+        this.scenario = scenario;
+        this.http = new Http(options.target, options.timeoutNanos);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            System.exit(CompareSummaries.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            System.out.println(Options.USAGE);
+            return;
+        }
+
+        Scenario scenario = options.scenario.equals("mix")
+                ? new MixScenario(options.mix, options.password)
+                : CollectionScenario.load(new File(options.collection));
+        new LoadGenerator(options, scenario).run();
+    }
+
+    void run() throws Exception {
+        System.out.println("Target:   " + options.target);
+        System.out.println("Scenario: " + options.describe());
+
+        VirtualUser[] users = new VirtualUser[options.concurrency];
+        setup(users);
+
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmupNanos;
+        long end = measureFrom + options.durationNanos;
+        List<Map<String, RouteStats>> results = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        for (VirtualUser user : users) {
+            Map<String, RouteStats> stats = new TreeMap<>();
+            results.add(stats);
+            Thread worker = new Thread(() -> work(user, stats, start, measureFrom, end), "loadgen-" + user.index);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long lastCount = 0;
+        for (long at = start + PROGRESS_INTERVAL_NANOS; at < end; at += PROGRESS_INTERVAL_NANOS) {
+            LockSupport.parkNanos(at - System.nanoTime());
+            long count = completed.get();
+            System.out.printf("%5ds %s %8.1f req/s%n", TimeUnit.NANOSECONDS.toSeconds(at - start),
+                    at <= measureFrom ? "warm-up" : "       ",
+                    (count - lastCount) * 1e9 / PROGRESS_INTERVAL_NANOS);
+            lastCount = count;
+        }
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(options.timeoutNanos) + 1000);
+        }
+
+        Map<String, RouteStats> routes = new TreeMap<>();
+        RouteStats total = new RouteStats();
+        for (Map<String, RouteStats> stats : results) {
+            stats.forEach((route, routeStats) -> {
+                routes.computeIfAbsent(route, r -> new RouteStats()).add(routeStats);
+                total.add(routeStats);
+            });
+        }
+        report(startedAt, routes, total);
+    }
+
+    // Registers and logs in the virtual users, a few at a time so the server's password hashing keeps up
+    private void setup(VirtualUser[] users) throws Exception {
+        long startedAt = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(users.length, 4));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < users.length; i++) {
+                VirtualUser user = new VirtualUser(i, options.seed);
+                users[i] = user;
+                futures.add(pool.submit(() -> {
+                    scenario.setup(user, http);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println("Set up " + users.length + " virtual users in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+    }
+
+    private void work(VirtualUser user, Map<String, RouteStats> stats, long start, long measureFrom, long end) {
+        double interval = options.rate > 0 ? 1e9 / options.rate : 0;
+        try {
+            while (true) {
+                long due;
+                if (interval > 0) {
+                    due = start + (long) (sequence.getAndIncrement() * interval);
+                    if (due >= end) {
+                        return;
+                    }
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    due = System.nanoTime();
+                    if (due >= end) {
+                        return;
+                    }
+                }
+
+                Request request = scenario.next(user);
+                Response response = http.send(request);
+                long latency = System.nanoTime() - due;
+                if (due >= measureFrom) {
+                    stats.computeIfAbsent(request.route, route -> new RouteStats()).record(latency, response);
+                }
+                completed.incrementAndGet();
+                scenario.completed(user, request, response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(Instant startedAt, Map<String, RouteStats> routes, RouteStats total) throws Exception {
+        double seconds = options.durationNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-36s %9s %9s %7s %9s %9s %9s %9s %9s%n",
+                "route", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        routes.forEach((route, stats) -> print(route, stats, seconds));
+        print("total", total, seconds);
+        if (options.rate > 0 && total.getCount() < options.rate * seconds * 0.95) {
+            System.out.printf("%nOnly %.1f of %.1f req/s were sent: the workers could not keep up, raise -c%n",
+                    total.getCount() / seconds, options.rate);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("startedAt", startedAt.toString());
+        summary.put("settings", options.describe());
+        summary.put("correctedForCoordinatedOmission", options.rate > 0);
+        summary.put("total", total.toSummary(seconds));
+        Map<String, Object> byRoute = new LinkedHashMap<>();
+        routes.forEach((route, stats) -> byRoute.put(route, stats.toSummary(seconds)));
+        summary.put("routes", byRoute);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(options.out), summary);
+        System.out.println();
+        System.out.println("Summary written to " + options.out);
+    }
+
+    private static void print(String route, RouteStats stats, double seconds) {
+        System.out.printf("%-36s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", route, stats.getCount(),
+                stats.getCount() / seconds, stats.getErrors(), stats.percentile(50), stats.percentile(90),
+                stats.percentile(99), stats.percentile(99.9), stats.getMaxMillis());
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.loadgen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Weighted mix of what users do most: log in, page through the catalog, open a media entry, rate it and
+// like ratings of others. Every virtual user registers its own account (load-<run>-<n>) in the setup.
+// Media and rating ids are taken from earlier list and detail responses of all users, so the mix works on
+// whatever catalog the server has; the accounts and ratings it creates stay in the database.
+public class MixScenario implements Scenario {
+    static final String DEFAULT_MIX = "login=2,list=30,detail=45,rate=10,like=13";
+    private static final String[] OPERATIONS = {"login", "list", "detail", "rate", "like"};
+    private static final String[] SORTS = {"title", "year", "rating"};
+    private static final int POOL_SIZE = 4096;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String[] operations; // one slot per weight unit
+    private final String password;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final IdPool media = new IdPool();
+    private final IdPool ratings = new IdPool();
+
+    // Ids seen in responses, the newest POOL_SIZE of them
+    private static final class IdPool {
+        private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(POOL_SIZE);
+        private final AtomicInteger added = new AtomicInteger();
+
+        void add(String id) {
+            ids.set(Math.floorMod(added.getAndIncrement(), POOL_SIZE), id);
+        }
+
+        String pick(VirtualUser user) {
+            int size = Math.min(added.get(), POOL_SIZE);
+            return size == 0 ? null : ids.get(user.random.nextInt(size));
+        }
+    }
+
+    MixScenario(Map<String, Integer> mix, String password) {
+        this.operations = mix.entrySet().stream()
+                .flatMap(e -> Collections.nCopies(e.getValue(), e.getKey()).stream())
+                .toArray(String[]::new);
+        this.password = password;
+    }
+
+    static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2 || !Arrays.asList(OPERATIONS).contains(pair[0])) {
+                throw new IllegalArgumentException("Invalid mix entry " + part + ", operations are " + String.join(", ", OPERATIONS));
+            }
+            int weight = Integer.parseInt(pair[1]);
+            if (weight < 0) {
+                throw new IllegalArgumentException("Invalid weight in " + part);
+            }
+            if (weight > 0) {
+                mix.put(pair[0], weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix needs at least one operation with a weight");
+        }
+        return mix;
+    }
+
+    @Override
+    public void setup(VirtualUser user, Http http) throws IOException, InterruptedException {
+        user.username = "load-" + runId + "-" + user.index;
+        Response registered = http.sendRetrying(new Request("register", "POST", "/api/auth/register", credentials(user)));
+        if (registered.status != 201) {
+            throw new IOException("Registering " + user.username + " failed: " + describe(registered));
+        }
+        Response login = http.sendRetrying(login(user));
+        completed(user, null, login);
+        if (user.token == null) {
+            throw new IOException("Login of " + user.username + " failed: " + describe(login));
+        }
+        if (media.pick(user) == null) {
+            completed(user, null, http.send(new Request("list", "GET", "/api/media?limit=100", null).auth(user.token)));
+        }
+    }
+
+    @Override
+    public Request next(VirtualUser user) {
+        String operation = operations[user.random.nextInt(operations.length)];
+        String mediaId = media.pick(user);
+        if (mediaId == null && !operation.equals("login")) {
+            operation = "list"; // nothing to open or rate yet
+        }
+        switch (operation) {
+            case "login":
+                return login(user);
+            case "detail":
+                return new Request("detail", "GET", "/api/media/" + mediaId + "?ratingsLimit=20", null).auth(user.token);
+            case "rate":
+                return new Request("rate", "POST", "/api/media/" + mediaId + "/ratings",
+                        "{\"stars\":" + (1 + user.random.nextInt(5)) + "}").auth(user.token);
+            case "like":
+                String ratingId = ratings.pick(user);
+                if (ratingId == null) {
+                    return new Request("detail", "GET", "/api/media/" + mediaId + "?ratingsLimit=20", null).auth(user.token);
+                }
+                return user.liked.contains(ratingId)
+                        ? new Request("unlike", "DELETE", "/api/ratings/" + ratingId + "/unlike", null).auth(user.token)
+                        : new Request("like", "POST", "/api/ratings/" + ratingId + "/like", null).auth(user.token);
+            default:
+                return new Request("list", "GET", "/api/media?limit=20&sort=" + SORTS[user.random.nextInt(SORTS.length)],
+                        null).auth(user.token);
+        }
+    }
+
+    @Override
+    public void completed(VirtualUser user, Request request, Response response) {
+        String route = request == null ? null : request.route;
+        if ("like".equals(route) || "unlike".equals(route)) {
+            // 400 "Already liked" and 404 "Not liked" also tell the current state
+            String ratingId = request.path.split("/")[3];
+            if (route.equals("like") && (response.isSuccess() || response.status == 400)) {
+                user.liked.add(ratingId);
+            } else if (route.equals("unlike") && (response.isSuccess() || response.status == 404)) {
+                user.liked.remove(ratingId);
+            }
+            return;
+        }
+        if (!response.isSuccess()) {
+            return;
+        }
+        JsonNode json = response.json();
+        if (json == null) {
+            return;
+        }
+        if (json.has("token")) {
+            user.token = json.get("token").asText();
+            user.userId = json.path("userId").asText(null);
+        } else if (json.isArray()) {
+            for (JsonNode entry : json) {
+                if (entry.hasNonNull("id")) {
+                    media.add(entry.get("id").asText());
+                }
+            }
+        } else if (json.has("ratings")) {
+            for (JsonNode rating : json.get("ratings")) {
+                if (rating.hasNonNull("id") && !rating.path("userId").asText("").equals(user.userId)) {
+                    ratings.add(rating.get("id").asText());
+                }
+            }
+        }
+    }
+
+    private Request login(VirtualUser user) {
+        return new Request("login", "POST", "/api/auth/login", credentials(user));
+    }
+
+    private String credentials(VirtualUser user) {
+        try {
+            return mapper.writeValueAsString(Map.of("username", user.username, "password", password));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String describe(Response response) {
+        return response.status == 0 ? response.error
+                : response.status + " " + new String(response.body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.loadgen;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Command line of a load run, JMH style: "-name value" pairs
+public class Options {
+    static final String USAGE = String.join("\n",
+            "Usage: java -jar loadgen.jar [options]",
+            "       java -jar loadgen.jar compare <baseline.json> <current.json> [threshold percent]",
+            "",
+            "  -target <url>       server to load (default http://localhost:8080)",
+            "  -scenario <name>    mix: weighted operations of registered load users (default)",
+            "                      collection: replays the requests of a Postman collection in order;",
+            "                      a collection that logs in with one shared account needs -c 1",
+            "  -mix <op=weight,..> operation weights of the mix (default " + MixScenario.DEFAULT_MIX + ")",
+            "  -collection <file>  collection to replay (default mrp.postman_collection.json)",
+            "  -rate <n>           open loop: n requests per second on a fixed schedule, latency is measured",
+            "                      from the scheduled start (corrected for coordinated omission)",
+            "                      0 = closed loop: every worker sends its next request as soon as the last",
+            "                      one is answered, latency is the service time (default 0)",
+            "  -c <n>              workers, each a virtual user with its own connection (default 16)",
+            "  -d <time>           measured duration, e.g. 60s, 5m (default 60s)",
+            "  -w <time>           warm-up before the measurement, not recorded (default 10s)",
+            "  -timeout <time>     request timeout (default 30s)",
+            "  -password <pw>      password of the load users (default loadtest123)",
+            "  -seed <n>           seed of the operation and id choices (default 42)",
+            "  -o <file>           summary file (default loadgen-result.json)",
+            "  -h                  this help");
+
+    URI target = URI.create("http://localhost:8080");
+    String scenario = "mix";
+    Map<String, Integer> mix = MixScenario.parseMix(MixScenario.DEFAULT_MIX);
+    String collection = "mrp.postman_collection.json";
+    double rate = 0;
+    int concurrency = 16;
+    long durationNanos = TimeUnit.SECONDS.toNanos(60);
+    long warmupNanos = TimeUnit.SECONDS.toNanos(10);
+    long timeoutNanos = TimeUnit.SECONDS.toNanos(30);
+    String password = "loadtest123";
+    long seed = 42;
+    String out = "loadgen-result.json";
+    boolean help;
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.equals("-h") || name.equals("-help")) {
+                options.help = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            try {
+                switch (name) {
+                    case "-target": options.target = URI.create(value.endsWith("/") ? value.substring(0, value.length() - 1) : value); break;
+                    case "-scenario": options.scenario = value; break;
+                    case "-mix": options.mix = MixScenario.parseMix(value); break;
+                    case "-collection": options.collection = value; break;
+                    case "-rate": options.rate = Double.parseDouble(value); break;
+                    case "-c": options.concurrency = Integer.parseInt(value); break;
+                    case "-d": options.durationNanos = parseTime(value); break;
+                    case "-w": options.warmupNanos = parseTime(value); break;
+                    case "-timeout": options.timeoutNanos = parseTime(value); break;
+                    case "-password": options.password = value; break;
+                    case "-seed": options.seed = Long.parseLong(value); break;
+                    case "-o": options.out = value; break;
+                    default: throw new IllegalArgumentException("Unknown option " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+            }
+        }
+        if (!options.scenario.equals("mix") && !options.scenario.equals("collection")) {
+            throw new IllegalArgumentException("Unknown scenario " + options.scenario + ", use mix or collection");
+        }
+        if (options.concurrency < 1 || options.rate < 0 || options.durationNanos <= 0) {
+            throw new IllegalArgumentException("-c must be at least 1, -rate at least 0 and -d longer than 0");
+        }
+        return options;
+    }
+
+    // "250ms", "30s", "5m", or plain seconds
+    static long parseTime(String value) {
+        if (value.endsWith("ms")) {
+            return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return TimeUnit.MINUTES.toNanos(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+    }
+
+    // The settings that decide whether two runs can be compared, for the summary
+    Map<String, Object> describe() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("target", target.toString());
+        settings.put("scenario", scenario);
+        if (scenario.equals("mix")) {
+            settings.put("mix", mix);
+        } else {
+            settings.put("collection", collection);
+        }
+        settings.put("mode", rate > 0 ? "open-loop" : "closed-loop");
+        settings.put("rate", rate);
+        settings.put("concurrency", concurrency);
+        settings.put("durationSeconds", TimeUnit.NANOSECONDS.toMillis(durationNanos) / 1000.0);
+        settings.put("warmupSeconds", TimeUnit.NANOSECONDS.toMillis(warmupNanos) / 1000.0);
+        settings.put("seed", seed);
+        return settings;
+    }
+}
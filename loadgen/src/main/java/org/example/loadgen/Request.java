@@ -0,0 +1,31 @@
+package org.example.loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One request of a scenario. The route names the histogram it is recorded in, so requests to the same
+// endpoint with different ids or query strings are counted together.
+public class Request {
+    final String route;
+    final String method;
+    final String path;
+    final String body;
+    final Map<String, String> headers = new LinkedHashMap<>();
+
+    Request(String route, String method, String path, String body) {
+        this.route = route;
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        if (body != null) {
+            headers.put("Content-Type", "application/json");
+        }
+    }
+
+    Request auth(String token) {
+        if (token != null) {
+            headers.put("Authorization", "Bearer " + token);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+// Status and body of an answered request; status 0 means the request failed before a response arrived
+public class Response {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    final int status;
+    final byte[] body;
+    final String error;
+
+    Response(int status, byte[] body) {
+        this.status = status;
+        this.body = body;
+        this.error = null;
+    }
+
+    Response(String error) {
+        this.status = 0;
+        this.body = new byte[0];
+        this.error = error;
+    }
+
+    boolean isSuccess() {
+        return status >= 200 && status < 300;
+    }
+
+    // The body as JSON, or null when it is empty or not JSON
+    JsonNode json() {
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            return mapper.readTree(body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
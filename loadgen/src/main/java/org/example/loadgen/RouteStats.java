@@ -0,0 +1,83 @@
+package org.example.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Latencies and response statuses of one route, kept per worker and merged at the end of the run.
+// Latencies are recorded in microseconds with 3 significant digits.
+public class RouteStats {
+    private final Histogram latency = new Histogram(3);
+    private final Map<Integer, Long> statuses = new TreeMap<>();
+    private long failures; // no response: connection errors, timeouts
+
+    void record(long latencyNanos, Response response) {
+        latency.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        if (response.status == 0) {
+            failures++;
+        } else {
+            statuses.merge(response.status, 1L, Long::sum);
+        }
+    }
+
+    void add(RouteStats other) {
+        latency.add(other.latency);
+        other.statuses.forEach((status, count) -> statuses.merge(status, count, Long::sum));
+        failures += other.failures;
+    }
+
+    long getCount() {
+        return latency.getTotalCount();
+    }
+
+    // Server errors and requests without a response; 4xx answers are counted by status only, the
+    // collection sends invalid requests on purpose
+    long getErrors() {
+        return failures + statuses.entrySet().stream().filter(e -> e.getKey() >= 500).mapToLong(Map.Entry::getValue).sum();
+    }
+
+    Map<String, Object> toSummary(double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", getCount());
+        summary.put("throughput", round(getCount() / seconds));
+        summary.put("errors", getErrors());
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        statuses.forEach((status, count) -> byStatus.put(Integer.toString(status), count));
+        if (failures > 0) {
+            byStatus.put("failed", failures);
+        }
+        summary.put("statuses", byStatus);
+
+        Map<String, Object> millis = new LinkedHashMap<>();
+        millis.put("mean", round(latency.getMean() / 1000));
+        millis.put("p50", percentile(50));
+        millis.put("p90", percentile(90));
+        millis.put("p99", percentile(99));
+        millis.put("p99.9", percentile(99.9));
+        millis.put("max", round(latency.getMaxValue() / 1000.0));
+        summary.put("latencyMs", millis);
+
+        // The whole histogram, so runs can be merged or looked at in more detail later
+        ByteBuffer buffer = ByteBuffer.allocate(latency.getNeededByteBufferCapacity());
+        int length = latency.encodeIntoCompressedByteBuffer(buffer);
+        summary.put("histogram", Base64.getEncoder().encodeToString(java.util.Arrays.copyOf(buffer.array(), length)));
+        return summary;
+    }
+
+    double percentile(double percentile) {
+        return round(latency.getValueAtPercentile(percentile) / 1000.0);
+    }
+
+    double getMaxMillis() {
+        return round(latency.getMaxValue() / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.loadgen;
+
+import java.io.IOException;
+
+// What the workers send. One call of next() is one request, so the schedule of an open-loop run applies
+// to single requests; multi-step flows keep their position in the VirtualUser.
+public interface Scenario {
+    // Prepares a user before the clock starts, e.g. registers and logs in; these requests are not recorded
+    void setup(VirtualUser user, Http http) throws IOException, InterruptedException;
+
+    Request next(VirtualUser user);
+
+    // Picks up tokens and ids from the response for the following requests
+    void completed(VirtualUser user, Request request, Response response);
+}
@@ -0,0 +1,26 @@
+package org.example.loadgen;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// State of one simulated client, owned by the worker thread that drives it
+public class VirtualUser {
+    final int index;
+    final Random random;
+    String username;
+    String token;
+    String userId;
+    // Variables of a collection replay ({{authToken}}, {{testMediaId}}, ...) and the next request in it
+    final Map<String, String> variables = new HashMap<>();
+    int position;
+    // Ratings this user likes, so "like" alternates between like and unlike
+    final Set<String> liked = new HashSet<>();
+
+    VirtualUser(int index, long seed) {
+        this.index = index;
+        this.random = new Random(seed * 31 + index);
+    }
+}
@@ -1,28 +1,87 @@
 package org.example;
 
 import com.sun.net.httpserver.HttpServer;
+import org.example.db.Database;
+import org.example.services.CatalogIndex;
+import org.example.services.LeaderboardService;
+import org.example.services.LikeBuffer;
+import org.example.services.RatingAggregateReconciler;
+import org.example.services.RecommendationEngine;
+import org.example.utils.Config;
 import org.example.utils.Router;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main {
     public static void main(String[] args) {
         try {
             // Create HTTP server on port 8080
-            HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+            // Backlog 0 lets the OS pick the length of the pending-connection queue
+            int backlog = Config.getInt("mrp.server.backlog", 0);
+            HttpServer server = HttpServer.create(new InetSocketAddress(8080), backlog);
+
+            // Build the in-memory catalog filter index before the first request can use it,
+            // then rebuild it every 10 minutes to pick up writes made outside the API (0 disables)
+            CatalogIndex catalogIndex = CatalogIndex.getInstance();
+            catalogIndex.start(Config.getLong("mrp.catalog.rebuildIntervalMs", 600000));
+
+            // Load the activity leaderboard, rebuilt hourly for writes made outside the API (0 disables)
+            LeaderboardService leaderboard = LeaderboardService.getInstance();
+            leaderboard.start(Config.getLong("mrp.leaderboard.rebuildIntervalMs", 3600000));
+
+            // Build the recommendation model; changed media are patched in every 30 seconds and
+            // the whole model is rebuilt daily (0 disables either)
+            RecommendationEngine recommendations = RecommendationEngine.getInstance();
+            recommendations.start(Config.getLong("mrp.recommendations.refreshIntervalMs", 30000),
+                    Config.getLong("mrp.recommendations.rebuildIntervalMs", 86400000));
+
+            // Likes are buffered and written to rating_likes every second (0 leaves it to mrp.likes.flushThreshold)
+            LikeBuffer likes = LikeBuffer.getInstance();
+            likes.start(Config.getLong("mrp.likes.flushIntervalMs", 1000));
 
             // Set up router for all API endpoints
             server.createContext("/", new Router());
 
             // Start the server
-            server.setExecutor(null); // creates a default executor spawns a new thread for each request
+            ExecutorService executor = createExecutor(Config.get("mrp.server.executor", "virtual"));
+            server.setExecutor(executor); // null means every exchange runs on the single dispatcher thread
             server.start();
 
+            // Repair drift in the stored rating aggregates every hour (0 disables)
+            RatingAggregateReconciler reconciler = new RatingAggregateReconciler(Database.getInstance());
+            long reconcileInterval = Config.getLong("mrp.ratings.reconcileIntervalMs", 3600000);
+            if (reconcileInterval > 0) {
+                reconciler.start(reconcileInterval);
+            }
+
+            // Stop accepting requests and close pooled connections on Ctrl+C
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                likes.stop();
+                reconciler.stop();
+                catalogIndex.stop();
+                leaderboard.stop();
+                recommendations.stop();
+                if (executor != null) {
+                    executor.shutdown();
+                }
+                Database.getInstance().close();
+            }));
+
             System.out.println("===========================================");
             System.out.println("Media Ratings Platform (MRP) Server");
             System.out.println("===========================================");
             System.out.println("Server started on http://localhost:8080");
+            System.out.println("Execution model: " + describeExecutor(executor) + ", backlog " +
+                    (backlog > 0 ? backlog : "OS default"));
             System.out.println("API endpoints available at http://localhost:8080/api");
             System.out.println("");
             System.out.println("Available endpoints:");
@@ -32,7 +91,7 @@ public class Main {
             System.out.println("  POST   /api/auth/login               - Login user");
             System.out.println("");
             System.out.println("Media:");
-            System.out.println("  GET    /api/media                    - Get media list (supports filters: search, type, genre, year, age, sort)");
+            System.out.println("  GET    /api/media                    - Get media list (supports filters: search, q, type, genre, genreMode, year, age, sort; paged with limit, cursor)");
             System.out.println("  POST   /api/media                    - Create new media entry");
             System.out.println("  GET    /api/media/{id}               - Get specific media with ratings");
             System.out.println("  PUT    /api/media/{id}               - Update media entry");
@@ -40,22 +99,80 @@ public class Main {
             System.out.println("  POST   /api/media/{id}/favorite      - Add media to favorites");
             System.out.println("  DELETE /api/media/{id}/favorite      - Remove media from favorites");
             System.out.println("");
+            System.out.println("Admin:");
+            System.out.println("  POST   /api/admin/media/import       - Bulk import media (NDJSON or CSV)");
+            System.out.println("");
             System.out.println("Ratings:");
             System.out.println("  POST   /api/media/{id}/ratings       - Create rating for media");
+            System.out.println("  POST   /api/ratings/batch            - Create or update many ratings at once");
             System.out.println("  PUT    /api/ratings/{id}             - Update rating");
             System.out.println("  DELETE /api/ratings/{id}             - Delete rating");
             System.out.println("  PUT    /api/ratings/{id}/confirm     - Confirm rating comment");
             System.out.println("  POST   /api/ratings/{id}/like        - Like a rating");
             System.out.println("  DELETE /api/ratings/{id}/unlike      - Unlike a rating");
             System.out.println("");
+            System.out.println("Users:");
+            System.out.println("  GET    /api/users/{username}/profile - Get user profile");
+            System.out.println("  GET    /api/users/{username}/favorites - Get favorites of a user");
+            System.out.println("  GET    /api/users/{username}/ratings - Get ratings of a user");
+            System.out.println("  GET    /api/leaderboard              - Get leaderboard (supports window: all, 7d, 30d; limit)");
+            System.out.println("  GET    /api/recommendations          - Get recommendations (supports limit)");
+            System.out.println("");
+            System.out.println("Monitoring:");
+            System.out.println("  GET    /api/metrics                  - Metrics in Prometheus text format");
+            System.out.println("");
             System.out.println("Database: PostgreSQL on localhost:5433");
             System.out.println("Press Ctrl+C to stop the server");
             System.out.println("===========================================");
 
-        } catch (IOException e) {
+        } catch (IOException | SQLException e) {
             System.err.println("Failed to start server: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
     }
+
+    // Builds the executor that runs the exchanges, selected by mrp.server.executor:
+    //   virtual    - one virtual thread per request (needs Java 21+, falls back to "pool" otherwise)
+    //   pool       - bounded platform thread pool (mrp.server.threads) with a bounded queue (mrp.server.queueSize);
+    //                when both are full the dispatcher thread runs the request itself, which stops it from
+    //                accepting new connections until it is done and so pushes back on clients
+    //   dispatcher - no executor, everything runs on the HttpServer dispatcher thread (old behaviour)
+    private static ExecutorService createExecutor(String type) {
+        switch (type) {
+            case "dispatcher":
+                return null;
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.out.println("Virtual threads need Java 21+ (running " +
+                            System.getProperty("java.version") + "), using a bounded thread pool instead");
+                    return createExecutor("pool");
+                }
+            case "pool":
+                int threads = Config.getInt("mrp.server.threads", Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+                int queueSize = Config.getInt("mrp.server.queueSize", 1000);
+                AtomicInteger threadNumber = new AtomicInteger();
+                return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueSize),
+                        r -> new Thread(r, "http-worker-" + threadNumber.incrementAndGet()),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+            default:
+                System.err.println("Unknown mrp.server.executor '" + type + "', using 'virtual'");
+                return createExecutor("virtual");
+        }
+    }
+
+    private static String describeExecutor(ExecutorService executor) {
+        if (executor == null) {
+            return "dispatcher thread only";
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return "bounded pool (" + pool.getMaximumPoolSize() + " threads, queue " +
+                    pool.getQueue().remainingCapacity() + ")";
+        }
+        return "virtual thread per request";
+    }
 }
\ No newline at end of file
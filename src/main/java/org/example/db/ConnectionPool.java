@@ -0,0 +1,402 @@
+package org.example.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded JDBC connection pool.
+// - keeps between minSize and maxSize physical connections open
+// - borrowers wait up to acquireTimeout for a free connection, then get an SQLTimeoutException
+// - connections idle for longer than idleTimeout are closed (down to minSize) by a background task
+// - a connection that sat idle for longer than validateAfterIdle is checked with isValid() before reuse
+public class ConnectionPool {
+    // Upper bounds (in milliseconds) of the wait-time histogram buckets; the last bucket is open-ended
+    private static final long[] WAIT_BUCKET_BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final String name;
+    private final String url;
+    private final Properties connectionProperties;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long validateAfterIdleNanos;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // Most recently returned connection first, so the tail holds the ones that have been idle longest
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private int total;   // open connections, including ones currently being opened
+    private int active;  // connections handed out to borrowers
+    private int waiters; // threads blocked in borrow()
+    private boolean closed;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong waitTimeTotalNanos = new AtomicLong();
+    private final AtomicLongArray waitBuckets = new AtomicLongArray(WAIT_BUCKET_BOUNDS_MS.length + 1);
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private final ScheduledExecutorService housekeeper;
+
+    public ConnectionPool(String name, String url, Properties connectionProperties,
+                          int minSize, int maxSize, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, long validateAfterIdleMillis, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.name = name;
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.validateAfterIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis);
+        this.validationTimeoutSeconds = 2;
+        this.statementCacheSize = statementCacheSize;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-" + name + "-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Opens the minimum number of connections up front so a misconfigured database fails at startup
+    public void start() throws SQLException {
+        fillToMinimum();
+    }
+
+    // Borrows a connection, waiting up to the acquisition timeout if the pool is exhausted
+    PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeoutNanos;
+
+        while (true) {
+            PooledConnection candidate;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool '" + name + "' is closed");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null || total < maxSize) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLTimeoutException("Timed out after " +
+                                TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) +
+                                " ms waiting for a connection from pool '" + name + "'");
+                    }
+                    waiters++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+                if (candidate == null) {
+                    total++; // reserve the slot, the physical connection is opened outside the lock
+                }
+                active++;
+            } finally {
+                lock.unlock();
+            }
+
+            if (candidate == null) {
+                try {
+                    candidate = open();
+                } catch (SQLException e) {
+                    forget(true);
+                    throw e;
+                }
+            } else if (!isUsable(candidate)) {
+                candidate.closeQuietly();
+                forget(true);
+                continue;
+            }
+
+            recordWait(System.nanoTime() - start);
+            return candidate;
+        }
+    }
+
+    // Returns a borrowed connection; broken connections are closed instead of going back to the idle list
+    void release(PooledConnection pooled) {
+        boolean healthy;
+        try {
+            healthy = !pooled.connection().isClosed();
+            if (healthy) {
+                pooled.reset();
+            }
+        } catch (SQLException e) {
+            System.err.println("Discarding connection that failed to reset: " + e.getMessage());
+            healthy = false;
+        }
+
+        lock.lock();
+        try {
+            if (healthy && !closed) {
+                pooled.touch();
+                active--;
+                idle.addFirst(pooled);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        pooled.closeQuietly();
+        forget(true);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.nanoTime() - pooled.lastUsedAt() < validateAfterIdleNanos) {
+            return true;
+        }
+        try {
+            return pooled.connection().isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, connectionProperties);
+        created.incrementAndGet();
+        return new PooledConnection(connection, statementCacheSize, statementCacheHits, statementCacheMisses);
+    }
+
+    // Gives back a slot whose connection has been (or is about to be) closed
+    private void forget(boolean wasActive) {
+        lock.lock();
+        try {
+            total--;
+            if (wasActive) {
+                active--;
+            }
+            destroyed.incrementAndGet();
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Closes connections idle for longer than idleTimeout down to minSize, then tops the pool up to minSize
+    void evictIdle() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - evicted.size() > minSize) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsedAt() < idleTimeoutNanos) {
+                    break; // everything closer to the head has been used more recently
+                }
+                it.remove();
+                evicted.add(pooled);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pooled : evicted) {
+            pooled.closeQuietly();
+            forget(false);
+        }
+
+        try {
+            fillToMinimum();
+        } catch (SQLException e) {
+            System.err.println("Pool '" + name + "' could not restore minimum size: " + e.getMessage());
+        }
+    }
+
+    private void fillToMinimum() throws SQLException {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= minSize) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+
+            PooledConnection pooled;
+            try {
+                pooled = open();
+            } catch (SQLException e) {
+                forget(false);
+                throw e;
+            }
+
+            lock.lock();
+            try {
+                idle.addFirst(pooled);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        acquired.incrementAndGet();
+        waitTimeTotalNanos.addAndGet(nanos);
+        // Bounds are inclusive, like Prometheus "le": a wait of exactly 5 ms counts as <= 5 ms.
+        // Compared in nanoseconds, truncating to whole milliseconds would put 5.9 ms there too.
+        int bucket = 0;
+        while (bucket < WAIT_BUCKET_BOUNDS_MS.length && nanos > TimeUnit.MILLISECONDS.toNanos(WAIT_BUCKET_BOUNDS_MS[bucket])) {
+            bucket++;
+        }
+        waitBuckets.incrementAndGet(bucket);
+    }
+
+    // Connections in use plus threads waiting for one, for picking the least busy of several pools
+    int getBusy() {
+        lock.lock();
+        try {
+            return active + waiters;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        long[] buckets = new long[waitBuckets.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = waitBuckets.get(i);
+        }
+        lock.lock();
+        try {
+            return new Stats(name, minSize, maxSize, total, active, idle.size(), waiters,
+                    acquired.get(), timeouts.get(), created.get(), destroyed.get(),
+                    TimeUnit.NANOSECONDS.toMicros(waitTimeTotalNanos.get()), buckets,
+                    statementCacheHits.sum(), statementCacheMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Closes idle connections now; connections still on loan are closed when they are returned
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pooled : toClose) {
+            pooled.closeQuietly();
+            forget(false);
+        }
+    }
+
+    // Point-in-time snapshot of the pool, serialized as-is by Jackson
+    public static class Stats {
+        private final String name;
+        private final int minSize;
+        private final int maxSize;
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final int waiters;
+        private final long acquired;
+        private final long timeouts;
+        private final long created;
+        private final long destroyed;
+        private final long waitTimeTotalMicros;
+        private final long[] waitHistogram;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+
+        Stats(String name, int minSize, int maxSize, int total, int active, int idle, int waiters,
+              long acquired, long timeouts, long created, long destroyed,
+              long waitTimeTotalMicros, long[] waitHistogram,
+              long statementCacheHits, long statementCacheMisses) {
+            this.name = name;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.acquired = acquired;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.waitTimeTotalMicros = waitTimeTotalMicros;
+            this.waitHistogram = waitHistogram;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        public String getName() { return name; }
+        public int getMinSize() { return minSize; }
+        public int getMaxSize() { return maxSize; }
+        public int getTotal() { return total; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getWaiters() { return waiters; }
+        public long getAcquired() { return acquired; }
+        public long getTimeouts() { return timeouts; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getWaitTimeTotalMicros() { return waitTimeTotalMicros; }
+
+        // Bucket upper bounds in ms, matching getWaitHistogram() index by index (last bucket is "+Inf")
+        public long[] getWaitHistogramBoundsMs() { return WAIT_BUCKET_BOUNDS_MS.clone(); }
+        public long[] getWaitHistogram() { return waitHistogram.clone(); }
+        public long getStatementCacheHits() { return statementCacheHits; }
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+
+        @Override
+        public String toString() {
+            return "pool=" + name + " total=" + total + " active=" + active + " idle=" + idle +
+                    " waiters=" + waiters + " acquired=" + acquired + " timeouts=" + timeouts +
+                    " waitHistogram=" + Arrays.toString(waitHistogram);
+        }
+    }
+}
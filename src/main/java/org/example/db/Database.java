@@ -1,10 +1,17 @@
 package org.example.db;
 
+import org.example.utils.Config;
+import org.example.utils.Metrics;
+import org.example.utils.RequestTrace;
 import org.example.utils.UUIDGenerator;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.UUID;
 
 public class Database {
@@ -13,10 +20,72 @@ public class Database {
     protected static final String PASSWORD = "postgres";
 
     protected static Database instance;
-    protected Connection connection;
+    protected final ConnectionPool pool;
+    protected final ReplicaSet replicas; // null without mrp.db.replicas
+    private final Metrics metrics = Metrics.getInstance();
+
+    // The lease (and with it the pooled connection) bound to the current thread, if any
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+
+    // Callback that reads a ResultSet; the ResultSet and its statement are released once it returns
+    @FunctionalInterface
+    public interface ResultSetHandler<T> {
+        T handle(ResultSet rs) throws SQLException;
+    }
+
+    // Callback that consumes a streamed ResultSet, e.g. by writing each row straight to a response
+    @FunctionalInterface
+    public interface ResultSetConsumer {
+        void accept(ResultSet rs) throws SQLException, IOException;
+    }
+
+    // Callback that maps the current row of a ResultSet to an object
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
 
     protected Database() {
-        connect();
+        Properties properties = new Properties();
+        properties.setProperty("user", Config.get("mrp.db.user", USER));
+        properties.setProperty("password", Config.get("mrp.db.password", PASSWORD));
+        // Use a named server-side prepared statement from the first execution on, so statements
+        // kept in the per-connection cache are parsed and planned by Postgres only once
+        properties.setProperty("prepareThreshold", String.valueOf(Config.getInt("mrp.db.prepareThreshold", 1)));
+
+        pool = new ConnectionPool(
+            "primary",
+            Config.get("mrp.db.url", URL),
+            properties,
+            Config.getInt("mrp.db.pool.minSize", 2),
+            Config.getInt("mrp.db.pool.maxSize", 10),
+            Config.getLong("mrp.db.pool.acquireTimeoutMs", 5000),
+            Config.getLong("mrp.db.pool.idleTimeoutMs", 60000),
+            Config.getLong("mrp.db.pool.validateAfterIdleMs", 500),
+            Config.getInt("mrp.db.statementCacheSize", 64)
+        );
+        try {
+            pool.start();
+            System.out.println("Connected to PostgreSQL database! (" + pool.getStats() + ")");
+        } catch (SQLException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+            pool.close();
+            throw new RuntimeException("Failed to connect to database", e);
+        }
+
+        // Read replicas: comma-separated JDBC URLs, same credentials as the primary
+        List<String> replicaUrls = new ArrayList<>();
+        for (String url : Config.get("mrp.db.replicas", "").split(",")) {
+            if (!url.isBlank()) {
+                replicaUrls.add(url.trim());
+            }
+        }
+        if (replicaUrls.isEmpty()) {
+            replicas = null;
+        } else {
+            replicas = new ReplicaSet(pool, replicaUrls, properties);
+            replicas.start();
+        }
     }
 
     public static synchronized Database getInstance() {
@@ -26,37 +95,228 @@ public class Database {
         return instance;
     }
 
-    private void connect() {
+    // Opens a lease for the current thread. Wrap every unit of work (one HTTP request, one background job run)
+    // in try (Database.Lease lease = db.lease()) { ... } - the connection is only borrowed from the pool on the
+    // first statement and goes back when the outermost lease closes. Nested leases share the same connection,
+    // which is what keeps beginTransaction()/commit() on one connection per request.
+    public Lease lease() {
+        Lease lease = currentLease.get();
+        if (lease != null) {
+            lease.depth++;
+            return lease;
+        }
+        lease = new Lease();
+        currentLease.set(lease);
+        return lease;
+    }
+
+    // Returns the connection leased to the current thread, borrowing one from the pool if needed.
+    // Statements created directly on it are the caller's responsibility to close.
+    public Connection getConnection() throws SQLException {
+        Connection connection = leasedConnection().connection();
+        Lease lease = currentLease.get();
+        return lease.leaks != null ? lease.leaks.wrap(connection) : connection;
+    }
+
+    private PooledConnection leasedConnection() throws SQLException {
+        Lease lease = currentLease.get();
+        if (lease == null) {
+            throw new IllegalStateException("No database lease open on this thread, use Database.lease()");
+        }
+        if (lease.readOnly) {
+            if (lease.replicaConnection != null) {
+                return lease.replicaConnection;
+            }
+            ReplicaSet.Replica replica = replicas.choose(lease.userId);
+            if (replica != null) {
+                try {
+                    lease.replicaConnection = replica.getPool().borrow();
+                    lease.replica = replica;
+                    return lease.replicaConnection;
+                } catch (SQLException e) {
+                    replicas.failed(replica, e);
+                }
+            }
+            lease.readOnly = false; // the rest of this unit of work stays on the primary
+        }
+        if (lease.pooled == null) {
+            lease.pooled = pool.borrow();
+        }
+        return lease.pooled;
+    }
+
+    // A replica whose connection broke before the caller saw a row (an idle connection the replica dropped on
+    // shutdown passes validation for up to mrp.db.pool.validateAfterIdleMs) is left for the rest of the lease,
+    // and the read runs again on the primary; once rows have been handed out the error goes to the caller.
+    private boolean abandonReplica(SQLException e) {
+        Lease lease = currentLease.get();
+        if (lease == null || lease.replicaConnection == null || !isConnectionFailure(e)) {
+            return false;
+        }
+        replicas.failed(lease.replica, e);
+        lease.replica.getPool().release(lease.replicaConnection); // closed connections are discarded
+        lease.replicaConnection = null;
+        lease.readOnly = false;
+        return true;
+    }
+
+    // Class 08 (connection exception) and 57P01-57P03 (server shutting down or not accepting connections)
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("08") || state.startsWith("57P"));
+    }
+
+    // Read-your-writes: reads of this user go to the primary for mrp.db.readYourWritesMs from now on
+    public void pinToPrimary(UUID userId) {
+        if (replicas != null) {
+            replicas.pin(userId);
+        }
+    }
+
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    // The read replicas, null when none are configured
+    public ReplicaSet getReplicas() {
+        return replicas;
+    }
+
+    // Execute a query and hand the ResultSet to the handler
+    // The ResultSet is closed and the statement released as soon as the handler returns (or throws)
+    public <T> T query(String sql, ResultSetHandler<T> handler, Object... params) throws SQLException {
+        boolean[] handled = new boolean[1];
         try {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
-            System.out.println("Connected to PostgreSQL database!");
+            return runQuery(sql, rs -> {
+                handled[0] = true;
+                return handler.handle(rs);
+            }, params);
         } catch (SQLException e) {
-            System.err.println("Connection failed: " + e.getMessage());
-            throw new RuntimeException("Failed to connect to database", e);
+            if (handled[0] || !abandonReplica(e)) {
+                throw e;
+            }
+            return runQuery(sql, handler, params);
         }
     }
 
-    public Connection getConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                connect();
+    private <T> T runQuery(String sql, ResultSetHandler<T> handler, Object... params) throws SQLException {
+        PooledConnection pooled = leasedConnection();
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        RequestTrace.Statement traced = RequestTrace.statement(sql); // null unless the request is traced
+        PreparedStatement stmt = prepareStatement(pooled, sql, params);
+        try (ResultSet rs = stmt.executeQuery()) {
+            T result = handler.handle(traced != null ? traced.count(rs) : rs);
+            failed = false;
+            return result;
+        } finally {
+            pooled.release(sql, stmt);
+            long nanos = System.nanoTime() - startedAt;
+            metrics.recordStatement(sql, nanos, failed);
+            if (traced != null) {
+                traced.finish(nanos, failed);
             }
+        }
+    }
+
+    // Execute a query and let the consumer read it through a forward-only server-side cursor,
+    // fetchSize rows per round trip, instead of the driver loading the whole result into memory first
+    public void stream(String sql, int fetchSize, ResultSetConsumer consumer, Object... params) throws SQLException, IOException {
+        boolean[] consumed = new boolean[1];
+        try {
+            runStream(sql, fetchSize, rs -> {
+                consumed[0] = true;
+                consumer.accept(rs);
+            }, params);
         } catch (SQLException e) {
-            connect();
+            if (consumed[0] || !abandonReplica(e)) {
+                throw e;
+            }
+            runStream(sql, fetchSize, consumer, params);
         }
-        return connection;
     }
 
-    // Execute a query and return ResultSet
-    public ResultSet query(String sql, Object... params) throws SQLException {
-        PreparedStatement stmt = prepareStatement(sql, params);
-        return stmt.executeQuery();
+    private void runStream(String sql, int fetchSize, ResultSetConsumer consumer, Object... params) throws SQLException, IOException {
+        PooledConnection pooled = leasedConnection();
+        Connection connection = pooled.connection();
+
+        // The driver only uses a cursor inside a transaction, so open one if the caller has not
+        boolean ownTransaction = connection.getAutoCommit();
+        if (ownTransaction) {
+            connection.setAutoCommit(false);
+        }
+
+        boolean completed = false;
+        long startedAt = System.nanoTime();
+        RequestTrace.Statement traced = RequestTrace.statement(sql);
+        PreparedStatement stmt = prepareStatement(pooled, sql, params);
+        try {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                consumer.accept(traced != null ? traced.count(rs) : rs);
+            }
+            completed = true;
+        } finally {
+            try {
+                stmt.setFetchSize(0); // the statement goes back to the cache
+            } catch (SQLException e) {
+                System.err.println("Error resetting fetch size: " + e.getMessage());
+            }
+            pooled.release(sql, stmt);
+            long nanos = System.nanoTime() - startedAt;
+            metrics.recordStatement(sql, nanos, !completed);
+            if (traced != null) {
+                traced.finish(nanos, !completed);
+            }
+            if (ownTransaction) {
+                if (completed) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Execute a query and map every row to an object
+    public <T> List<T> queryList(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        return query(sql, rs -> {
+            List<T> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(mapper.map(rs));
+            }
+            return rows;
+        }, params);
+    }
+
+    // Execute a query and map the first row, or return null if there is none
+    public <T> T queryOne(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        return query(sql, rs -> rs.next() ? mapper.map(rs) : null, params);
     }
 
     // Execute an update (INSERT, UPDATE, DELETE) and return affected rows
     public int update(String sql, Object... params) throws SQLException {
-        PreparedStatement stmt = prepareStatement(sql, params);
-        return stmt.executeUpdate();
+        PooledConnection pooled = leasedConnection();
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        RequestTrace.Statement traced = RequestTrace.statement(sql);
+        PreparedStatement stmt = prepareStatement(pooled, sql, params);
+        try {
+            int rows = stmt.executeUpdate();
+            failed = false;
+            if (traced != null) {
+                traced.setRows(rows);
+            }
+            return rows;
+        } finally {
+            pooled.release(sql, stmt);
+            long nanos = System.nanoTime() - startedAt;
+            metrics.recordStatement(sql, nanos, failed);
+            if (traced != null) {
+                traced.finish(nanos, failed);
+            }
+        }
     }
 
     // Execute an INSERT with pre-generated UUID
@@ -68,8 +328,7 @@ public class Database {
         newParams[0] = uuid;  // Store as UUID object
         System.arraycopy(params, 0, newParams, 1, params.length);
 
-        PreparedStatement stmt = prepareStatement(sql, newParams);
-        int affectedRows = stmt.executeUpdate();
+        int affectedRows = update(sql, newParams);
 
         if (affectedRows == 0) {
             throw new SQLException("Insert failed, no rows affected.");
@@ -80,47 +339,45 @@ public class Database {
 
     // Execute an INSERT with provided ID (for special cases)
     public void insertWithId(String sql, Object... params) throws SQLException {
-        PreparedStatement stmt = prepareStatement(sql, params);
-        int affectedRows = stmt.executeUpdate();
+        int affectedRows = update(sql, params);
 
         if (affectedRows == 0) {
             throw new SQLException("Insert failed, no rows affected.");
         }
     }
 
+    // Starts a COPY ... FROM STDIN on the leased connection; the caller writes the data and ends
+    // (or cancels) the copy before running anything else on this connection
+    public CopyIn copyIn(String sql) throws SQLException {
+        return leasedConnection().connection().unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+    }
+
     // Check if a record exists
     public boolean exists(String sql, Object... params) throws SQLException {
-        try (ResultSet rs = query(sql, params)) {
-            return rs.next();
-        }
+        return query(sql, ResultSet::next, params);
     }
 
     // Get a single value
     public Object getValue(String sql, Object... params) throws SQLException {
-        try (ResultSet rs = query(sql, params)) {
-            if (rs.next()) {
-                return rs.getObject(1);
-            }
-            return null;
-        }
+        return queryOne(sql, rs -> rs.getObject(1), params);
     }
 
     // Get a list of values
     public List<Object> getValues(String sql, Object... params) throws SQLException {
-        List<Object> values = new ArrayList<>();
-        try (ResultSet rs = query(sql, params)) {
-            while (rs.next()) {
-                values.add(rs.getObject(1));
-            }
-        }
-        return values;
+        return queryList(sql, rs -> rs.getObject(1), params);
     }
 
-    // Helper method to create a PreparedStatement with parameters safely set
+    // Helper method to get a (cached) PreparedStatement with parameters safely set
     // This prevents SQL injection by using parameterized queries instead of string concatenation
-    private PreparedStatement prepareStatement(String sql, Object... params) throws SQLException {
-        PreparedStatement stmt = getConnection().prepareStatement(sql);
-        setParameters(stmt, params);
+    // Callers must hand the statement back with pooled.release(sql, stmt) when done
+    private PreparedStatement prepareStatement(PooledConnection pooled, String sql, Object... params) throws SQLException {
+        PreparedStatement stmt = pooled.prepare(sql);
+        try {
+            setParameters(stmt, params);
+        } catch (SQLException e) {
+            pooled.release(sql, stmt);
+            throw e;
+        }
         return stmt;
     }
 
@@ -164,15 +421,52 @@ public class Database {
         return rs.getObject(columnIndex, UUID.class);
     }
 
-    // Closes the database connection cleanly
+    // Closes the connection pool cleanly
     // Always call this when your application shuts down to free resources
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        if (replicas != null) {
+            replicas.close();
+        }
+        pool.close();
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final LeakDetector leaks = LeakDetector.ENABLED ? new LeakDetector() : null;
+        private PooledConnection pooled;
+        private boolean readOnly;
+        private UUID userId;
+        private ReplicaSet.Replica replica;
+        private PooledConnection replicaConnection;
+        private int depth = 1;
+
+        private Lease() {}
+
+        // Sends the statements from here on to a read replica, unless userId is pinned to the primary or
+        // no replica is healthy. Only for work that does not write: replicas are read-only.
+        public void preferReplica(UUID userId) {
+            if (replicas != null) {
+                this.readOnly = true;
+                this.userId = userId;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (--depth > 0) {
+                return;
+            }
+            currentLease.remove();
+            if (leaks != null) {
+                leaks.check();
+            }
+            if (pooled != null) {
+                pool.release(pooled);
+                pooled = null;
+            }
+            if (replicaConnection != null) {
+                replica.getPool().release(replicaConnection);
+                replicaConnection = null;
             }
-        } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
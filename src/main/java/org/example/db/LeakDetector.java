@@ -0,0 +1,72 @@
+package org.example.db;
+
+import org.example.utils.Config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tracks statements created directly on a leased connection (db.getConnection().prepareStatement(...))
+// and reports every one that is still open when the lease ends, together with where it was created.
+// Off by default because it wraps the connection in a proxy and captures a stack trace per statement;
+// the surefire configuration turns it on for test runs (-Dmrp.db.leakDetection=true).
+class LeakDetector {
+    static final boolean ENABLED = Config.getBoolean("mrp.db.leakDetection", false);
+
+    private final List<TrackedStatement> statements = new ArrayList<>();
+
+    Connection wrap(Connection connection) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement) {
+                statements.add(new TrackedStatement((Statement) result, new Throwable("Statement created here")));
+            }
+            return result;
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    // Reports and closes everything that was not closed by its owner; returns the number of leaks
+    int check() {
+        int leaks = 0;
+        for (TrackedStatement tracked : statements) {
+            try {
+                if (!tracked.statement.isClosed()) {
+                    leaks++;
+                    System.err.println("Leaked JDBC statement (not closed before the lease ended):");
+                    tracked.createdAt.printStackTrace();
+                    tracked.statement.close();
+                }
+            } catch (SQLException e) {
+                System.err.println("Error closing leaked statement: " + e.getMessage());
+            }
+        }
+        statements.clear();
+        return leaks;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class TrackedStatement {
+        private final Statement statement;
+        private final Throwable createdAt;
+
+        TrackedStatement(Statement statement, Throwable createdAt) {
+            this.statement = statement;
+            this.createdAt = createdAt;
+        }
+    }
+}
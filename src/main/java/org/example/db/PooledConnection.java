@@ -0,0 +1,130 @@
+package org.example.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// A physical connection owned by the ConnectionPool plus the bookkeeping the pool needs.
+// Only ever used by one thread at a time (whoever holds the lease), so no synchronization here.
+class PooledConnection {
+    private final Connection connection;
+    private final long createdAt = System.nanoTime();
+    private long lastUsedAt = createdAt;
+
+    // Prepared statements kept open on this connection, keyed by SQL text, least recently used first.
+    // With prepareThreshold=1 the driver turns each of them into a named server-side statement,
+    // so a cache hit skips both the client-side setup and the server-side parse/plan.
+    private final int statementCacheSize;
+    private final Map<String, PreparedStatement> statementCache;
+    private final Set<PreparedStatement> checkedOut = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+
+    PooledConnection(Connection connection, int statementCacheSize, LongAdder cacheHits, LongAdder cacheMisses) {
+        this.connection = connection;
+        this.statementCacheSize = statementCacheSize;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= PooledConnection.this.statementCacheSize) {
+                    return false;
+                }
+                // A statement that is still executing is closed by release() instead
+                if (!checkedOut.contains(eldest.getValue())) {
+                    closeQuietly(eldest.getValue());
+                }
+                return true;
+            }
+        };
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    long lastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void touch() {
+        lastUsedAt = System.nanoTime();
+    }
+
+    // Hands out the cached statement for this SQL, or a fresh one if it is not cached yet or is
+    // already in use further up the call stack (e.g. the same query issued while iterating its results)
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement cached = statementCache.get(sql);
+        if (cached != null && !checkedOut.contains(cached)) {
+            cacheHits.increment();
+            checkedOut.add(cached);
+            return cached;
+        }
+
+        cacheMisses.increment();
+        PreparedStatement stmt = connection.prepareStatement(sql);
+        if (cached == null && statementCacheSize > 0) {
+            statementCache.put(sql, stmt);
+        }
+        checkedOut.add(stmt);
+        return stmt;
+    }
+
+    // Must be called once the statement (and any ResultSet it produced) is no longer needed
+    void release(String sql, PreparedStatement stmt) {
+        checkedOut.remove(stmt);
+        if (statementCache.get(sql) == stmt) {
+            try {
+                stmt.clearParameters();
+                return;
+            } catch (SQLException e) {
+                statementCache.remove(sql);
+            }
+        }
+        closeQuietly(stmt);
+    }
+
+    // Puts the connection back into a clean state before it is handed to the next borrower.
+    // Any transaction left open by the previous owner is rolled back rather than committed.
+    void reset() throws SQLException {
+        if (!checkedOut.isEmpty()) {
+            System.err.println(checkedOut.size() + " statement(s) still in use on a returned connection");
+            for (PreparedStatement stmt : checkedOut) {
+                closeQuietly(stmt);
+            }
+            statementCache.values().removeAll(checkedOut);
+            checkedOut.clear();
+        }
+        if (!connection.getAutoCommit()) {
+            System.err.println("Rolling back transaction left open on a returned connection");
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        if (connection.isReadOnly()) {
+            connection.setReadOnly(false);
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package org.example.db;
+
+import org.example.utils.Config;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Read replicas of the primary, each with its own pool. Reads of routes marked read-only go to a healthy
+// replica, picked round-robin or by the fewest connections in use (mrp.db.replicas.balancing =
+// round-robin | least-busy). A replica is taken out of rotation when borrowing from it fails or when the
+// health check (every mrp.db.replicas.healthCheckMs) cannot reach it or finds it more than
+// mrp.db.replicas.maxLagMs behind; the same check puts it back. Without a healthy replica reads go to the
+// primary.
+// Lag: every check notes the primary's WAL position; a replica is as far behind as the oldest noted position
+// it has not replayed yet. That is exact to one check interval, and unlike the age of the last replayed
+// transaction it does not grow while the primary has nothing to send.
+// Read-your-writes: a user who sends a write request is pinned to the primary for mrp.db.readYourWritesMs
+// (0 = off), so the next page they load shows their change even if the replicas have not replayed it yet.
+public class ReplicaSet {
+    // WAL positions as byte offsets; NULL on a server that is not a standby, which counts as caught up
+    private static final String PRIMARY_POSITION_QUERY = "SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), '0/0')";
+    private static final String REPLAY_POSITION_QUERY =
+            "SELECT CASE WHEN pg_is_in_recovery() THEN pg_wal_lsn_diff(pg_last_wal_replay_lsn(), '0/0') END";
+
+    private final ConnectionPool primary;
+    private final Deque<long[]> primaryPositions = new ArrayDeque<>(); // {nanoTime, position}, health check thread only
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final boolean leastBusy;
+    private final long maxLagMillis;
+    private final long pinNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentHashMap<UUID, Long> pinnedUntil = new ConcurrentHashMap<>();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+    private final ScheduledExecutorService healthCheck;
+
+    static class Replica {
+        private final String url;
+        private final ConnectionPool pool;
+        private volatile boolean healthy;
+        private volatile long lagMillis;
+
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        ConnectionPool getPool() {
+            return pool;
+        }
+    }
+
+    ReplicaSet(ConnectionPool primary, List<String> urls, Properties connectionProperties) {
+        this.primary = primary;
+        this.leastBusy = Config.get("mrp.db.replicas.balancing", "round-robin").equals("least-busy");
+        this.maxLagMillis = Config.getLong("mrp.db.replicas.maxLagMs", 10000);
+        this.pinNanos = TimeUnit.MILLISECONDS.toNanos(Config.getLong("mrp.db.readYourWritesMs", 5000));
+
+        // Replica sessions are read-only, a write that ends up here fails instead of hitting a standby
+        // (or, in a local setup without replication, silently diverging from the primary)
+        Properties properties = new Properties();
+        properties.putAll(connectionProperties);
+        properties.setProperty("readOnly", "true");
+        properties.setProperty("readOnlyMode", "always");
+
+        for (int i = 0; i < urls.size(); i++) {
+            ConnectionPool pool = new ConnectionPool(
+                "replica-" + (i + 1),
+                urls.get(i),
+                properties,
+                Config.getInt("mrp.db.replicas.pool.minSize", 2),
+                Config.getInt("mrp.db.replicas.pool.maxSize", Config.getInt("mrp.db.pool.maxSize", 10)),
+                Config.getLong("mrp.db.replicas.pool.acquireTimeoutMs", 1000),
+                Config.getLong("mrp.db.pool.idleTimeoutMs", 60000),
+                Config.getLong("mrp.db.pool.validateAfterIdleMs", 500),
+                Config.getInt("mrp.db.statementCacheSize", 64)
+            );
+            replicas.add(new Replica(urls.get(i), pool));
+        }
+
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // An unreachable replica does not stop the server, it stays out of rotation until the check succeeds
+    void start() {
+        for (Replica replica : replicas) {
+            try {
+                replica.pool.start();
+            } catch (SQLException e) {
+                System.err.println("Replica " + replica.pool.getName() + " unavailable: " + e.getMessage());
+            }
+        }
+        checkAll();
+        long period = Config.getLong("mrp.db.replicas.healthCheckMs", 2000);
+        healthCheck.scheduleWithFixedDelay(this::checkAll, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // The replica for the next read, null when reads go to the primary
+    Replica choose(UUID userId) {
+        if (userId != null && isPinned(userId)) {
+            pinnedReads.increment();
+            return null;
+        }
+        Replica chosen = null;
+        if (leastBusy) {
+            int fewest = Integer.MAX_VALUE;
+            for (Replica replica : replicas) {
+                int busy;
+                if (replica.healthy && (busy = replica.pool.getBusy()) < fewest) {
+                    chosen = replica;
+                    fewest = busy;
+                }
+            }
+        } else {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < replicas.size() && chosen == null; i++) {
+                Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                if (replica.healthy) {
+                    chosen = replica;
+                }
+            }
+        }
+        if (chosen == null) {
+            fallbackReads.increment();
+        } else {
+            replicaReads.increment();
+        }
+        return chosen;
+    }
+
+    // Borrowing from the replica or its connection failed: out of rotation until the health check succeeds again.
+    // A timeout only means the replica is busy, it stays in.
+    void failed(Replica replica, SQLException e) {
+        replicaReads.decrement();
+        fallbackReads.increment();
+        if (!(e instanceof SQLTimeoutException) && replica.healthy) {
+            replica.healthy = false;
+            System.err.println("Replica " + replica.pool.getName() + " failed, reading from the primary: " + e.getMessage());
+        }
+    }
+
+    void pin(UUID userId) {
+        if (pinNanos > 0) {
+            pinnedUntil.put(userId, System.nanoTime() + pinNanos);
+        }
+    }
+
+    private boolean isPinned(UUID userId) {
+        Long until = pinnedUntil.get(userId);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        pinnedUntil.remove(userId, until);
+        return false;
+    }
+
+    private void checkAll() {
+        long now = System.nanoTime();
+        notePrimaryPosition(now);
+        for (Replica replica : replicas) {
+            check(replica, now);
+        }
+        // Pins of users who did not come back are dropped here rather than on their next read
+        pinnedUntil.values().removeIf(until -> until - now <= 0);
+    }
+
+    private void notePrimaryPosition(long now) {
+        // Positions older than the lag limit only tell that a replica is too far behind, which the oldest one kept does too
+        long keepNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis) * 2;
+        while (primaryPositions.size() > 1 && now - primaryPositions.peekFirst()[0] > keepNanos) {
+            primaryPositions.pollFirst();
+        }
+        PooledConnection pooled = null;
+        try {
+            pooled = primary.borrow();
+            try (Statement stmt = pooled.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery(PRIMARY_POSITION_QUERY)) {
+                rs.next();
+                long position = rs.getLong(1);
+                if (primaryPositions.isEmpty() || primaryPositions.peekLast()[1] != position) {
+                    primaryPositions.addLast(new long[]{now, position});
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Replica health check could not read the primary's WAL position: " + e.getMessage());
+        } finally {
+            if (pooled != null) {
+                primary.release(pooled);
+            }
+        }
+    }
+
+    private long lagMillis(long replayed, long now) {
+        for (long[] noted : primaryPositions) {
+            if (noted[1] > replayed) {
+                return TimeUnit.NANOSECONDS.toMillis(now - noted[0]);
+            }
+        }
+        return 0;
+    }
+
+    private void check(Replica replica, long now) {
+        boolean healthy;
+        PooledConnection pooled = null;
+        try {
+            pooled = replica.pool.borrow();
+            try (Statement stmt = pooled.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery(REPLAY_POSITION_QUERY)) {
+                rs.next();
+                long replayed = rs.getLong(1);
+                replica.lagMillis = rs.wasNull() ? 0 : lagMillis(replayed, now);
+            }
+            healthy = replica.lagMillis <= maxLagMillis;
+            if (!healthy && replica.healthy) {
+                System.err.println("Replica " + replica.pool.getName() + " is " + replica.lagMillis + " ms behind, reading from the primary");
+            }
+        } catch (SQLTimeoutException e) {
+            return; // every connection in use, which says nothing about its health
+        } catch (SQLException e) {
+            healthy = false;
+            if (replica.healthy) {
+                System.err.println("Replica " + replica.pool.getName() + " failed its health check: " + e.getMessage());
+            }
+        } finally {
+            if (pooled != null) {
+                replica.pool.release(pooled);
+            }
+        }
+        if (healthy && !replica.healthy) {
+            System.out.println("Replica " + replica.pool.getName() + " (" + replica.url + ") in rotation");
+        }
+        replica.healthy = healthy;
+    }
+
+    public List<ReplicaStats> getStats() {
+        List<ReplicaStats> stats = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            stats.add(new ReplicaStats(replica.healthy, replica.lagMillis, replica.pool.getStats()));
+        }
+        return stats;
+    }
+
+    public long getReplicaReads() { return replicaReads.sum(); }
+    public long getPinnedReads() { return pinnedReads.sum(); }
+    public long getFallbackReads() { return fallbackReads.sum(); }
+
+    void close() {
+        healthCheck.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    // Serialized as-is by Jackson for the health endpoint
+    public static class ReplicaStats {
+        private final boolean healthy;
+        private final long lagMillis;
+        private final ConnectionPool.Stats pool;
+
+        ReplicaStats(boolean healthy, long lagMillis, ConnectionPool.Stats pool) {
+            this.healthy = healthy;
+            this.lagMillis = lagMillis;
+            this.pool = pool;
+        }
+
+        public boolean isHealthy() { return healthy; }
+        public long getLagMillis() { return lagMillis; }
+        public ConnectionPool.Stats getPool() { return pool; }
+    }
+}
@@ -1,12 +1,13 @@
 package org.example.handlers;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import org.example.db.Database;
 import org.example.models.User;
+import org.example.services.PasswordHasher;
+import org.example.services.TokenCache;
 import org.example.utils.JsonHelper;
+import org.example.utils.RouteTable;
 import org.example.utils.UUIDGenerator;
 
 import java.io.IOException;
@@ -16,29 +17,18 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
-public class AuthHandler implements HttpHandler {
+public class AuthHandler {
     private final Database db = Database.getInstance();
+    private final TokenCache tokenCache = TokenCache.getInstance();
+    private final PasswordHasher passwordHasher = PasswordHasher.getInstance();
 
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-
-        try {
-            if (path.endsWith("/register") && "POST".equals(method)) {
-                handleRegister(exchange);
-            } else if (path.endsWith("/login") && "POST".equals(method)) {
-                handleLogin(exchange);
-            } else {
-                JsonHelper.sendError(exchange, 404, "Endpoint not found");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JsonHelper.sendError(exchange, 500, "Internal server error");
-        }
+    public void registerRoutes(RouteTable routes) {
+        routes.addPublic("POST", "/api/auth/register", (exchange, params, userId) -> handleRegister(exchange));
+        routes.addPublic("POST", "/api/auth/login", (exchange, params, userId) -> handleLogin(exchange));
+        routes.addPublic("POST", "/api/users/login", (exchange, params, userId) -> handleLogin(exchange));
     }
 
-    private void handleRegister(HttpExchange exchange) throws IOException, SQLException {
+    private void handleRegister(HttpExchange exchange) throws IOException, SQLException, InterruptedException {
         // Parse JSON request body
         Map<String, String> request;
         try {
@@ -75,7 +65,7 @@ public class AuthHandler implements HttpHandler {
         }
 
         // Hash password
-        String passwordHash = BCrypt.withDefaults().hashToString(12, password.toCharArray());
+        String passwordHash = passwordHasher.hash(password.toCharArray());
 
         // Insert user with UUID
         UUID userId = db.insert(
@@ -92,7 +82,7 @@ public class AuthHandler implements HttpHandler {
         JsonHelper.sendResponse(exchange, 201, response);
     }
 
-    private void handleLogin(HttpExchange exchange) throws IOException, SQLException {
+    private void handleLogin(HttpExchange exchange) throws IOException, SQLException, InterruptedException {
         // Parse JSON request body
         Map<String, String> request;
         try {
@@ -113,22 +103,22 @@ public class AuthHandler implements HttpHandler {
         }
 
         // Find user
-        ResultSet rs = db.query(
-            "SELECT id, password_hash FROM users WHERE username = ?",
+        User user = db.queryOne(
+            "SELECT * FROM users WHERE username = ?",
+            this::mapResultSetToUser,
             username
         );
 
-        if (!rs.next()) {
+        if (user == null) {
             JsonHelper.sendError(exchange, 401, "Invalid username or password");
             return;
         }
 
-        UUID userId = db.getUUID(rs, "id");
-        String passwordHash = rs.getString("password_hash");
+        UUID userId = user.getId();
+        String passwordHash = user.getPasswordHash();
 
         // Verify password
-        BCrypt.Result result = BCrypt.verifyer().verify(password.toCharArray(), passwordHash);
-        if (!result.verified) {
+        if (!passwordHasher.verify(password.toCharArray(), passwordHash)) {
             JsonHelper.sendError(exchange, 401, "Invalid username or password");
             return;
         }
@@ -142,6 +132,10 @@ public class AuthHandler implements HttpHandler {
             token, userId, token
         );
 
+        // The upsert replaced any previous token of this user, so it must stop validating from the cache
+        tokenCache.invalidateUser(userId);
+        tokenCache.invalidate(token);
+
         // Create response
         Map<String, Object> response = new HashMap<>();
         response.put("token", token);
@@ -153,6 +147,7 @@ public class AuthHandler implements HttpHandler {
     }
 
     // Method to validate token
+    // Lookups go through the shared TokenCache, including misses for unknown tokens
     public UUID validateToken(HttpExchange exchange) throws SQLException {
         String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
 
@@ -162,16 +157,11 @@ public class AuthHandler implements HttpHandler {
 
         String token = authHeader.substring(7); // Remove "Bearer "
 
-        ResultSet rs = db.query(
+        return tokenCache.get(token, t -> db.queryOne(
             "SELECT user_id FROM auth_tokens WHERE token = ?",
-            token
-        );
-
-        if (rs.next()) {
-            return db.getUUID(rs, "user_id");
-        }
-
-        return null;
+            rs -> db.getUUID(rs, "user_id"),
+            t
+        ));
     }
 
     // Helper method to get user from token
@@ -182,22 +172,21 @@ public class AuthHandler implements HttpHandler {
 
         token = token.substring(7); // Remove "Bearer "
 
-        ResultSet rs = db.query(
+        return db.queryOne(
             "SELECT u.* FROM users u " +
             "JOIN auth_tokens t ON t.user_id = u.id " +
             "WHERE t.token = ?",
+            this::mapResultSetToUser,
             token
         );
+    }
 
-        if (rs.next()) {
-            User user = new User();
-            user.setId(db.getUUID(rs, "id"));
-            user.setUsername(rs.getString("username"));
-            user.setPasswordHash(rs.getString("password_hash"));
-            user.setCreatedAt(rs.getTimestamp("created_at"));
-            return user;
-        }
-
-        return null;
+    private User mapResultSetToUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(db.getUUID(rs, "id"));
+        user.setUsername(rs.getString("username"));
+        user.setPasswordHash(rs.getString("password_hash"));
+        user.setCreatedAt(rs.getTimestamp("created_at"));
+        return user;
     }
 }
\ No newline at end of file
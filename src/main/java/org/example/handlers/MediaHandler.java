@@ -1,104 +1,99 @@
 package org.example.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import org.example.db.Database;
 import org.example.models.MediaEntry;
 import org.example.models.Rating;
+import org.example.services.CatalogImport;
+import org.example.services.CatalogIndex;
+import org.example.services.LeaderboardService;
+import org.example.services.LikeBuffer;
+import org.example.services.RecommendationEngine;
+import org.example.utils.Config;
+import org.example.utils.HttpCache;
 import org.example.utils.JsonHelper;
+import org.example.utils.RouteTable;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
-public class MediaHandler implements HttpHandler {
-    private final Database db = Database.getInstance();
-    private final AuthHandler authHandler = new AuthHandler();
-
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-        String query = exchange.getRequestURI().getQuery();
+public class MediaHandler {
+    // Page size of GET /api/media when no limit is given, and the hard cap for any requested limit
+    private static final int DEFAULT_PAGE_SIZE = Config.getInt("mrp.media.pageSize", 50);
+    private static final int MAX_PAGE_SIZE = Config.getInt("mrp.media.maxPageSize", 1000);
+    // Rows fetched from the database per round trip while a list is streamed
+    private static final int STREAM_FETCH_SIZE = Config.getInt("mrp.media.fetchSize", 100);
+    // Ratings per page of GET /api/media/{id} when no ratingsLimit is given, and the cap for it
+    private static final int DEFAULT_RATINGS_PAGE_SIZE = Config.getInt("mrp.media.ratingsPageSize", 50);
+    private static final int MAX_RATINGS_PAGE_SIZE = Config.getInt("mrp.media.maxRatingsPageSize", 200);
+    // Up to this many ids matched by the catalog index are passed to the query, beyond it SQL filters
+    private static final int MAX_CANDIDATE_IDS = Config.getInt("mrp.media.maxCandidateIds", 2000);
+    // Usernames allowed to use the admin endpoints (bulk import)
+    private static final Set<String> ADMINS = Set.copyOf(List.of(Config.get("mrp.admin.users", "admin").split("\\s*,\\s*")));
 
-        try {
-            // Check authentication
-            UUID userId = authHandler.validateToken(exchange);
-            if (userId == null) {
-                JsonHelper.sendError(exchange, 401, "Authentication required");
-                return;
-            }
-
-            String[] segments = JsonHelper.getPathSegments(path);
-
-            // /api/media
-            if (segments.length == 2) {
-                if ("GET".equals(method)) {
-                    handleGetMediaList(exchange, query, userId);
-                } else if ("POST".equals(method)) {
-                    handleCreateMedia(exchange, userId);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/media/{id}
-            else if (segments.length == 3) {
-                String mediaId = segments[2];
-
-                if ("GET".equals(method)) {
-                    handleGetMedia(exchange, mediaId, userId);
-                } else if ("PUT".equals(method)) {
-                    handleUpdateMedia(exchange, mediaId, userId);
-                } else if ("DELETE".equals(method)) {
-                    handleDeleteMedia(exchange, mediaId, userId);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/media/{id}/favorite
-            else if (segments.length == 4 && "favorite".equals(segments[3])) {
-                String mediaId = segments[2];
-
-                if ("POST".equals(method)) {
-                    handleAddFavorite(exchange, mediaId, userId);
-                } else if ("DELETE".equals(method)) {
-                    handleRemoveFavorite(exchange, mediaId, userId);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            } else {
-                JsonHelper.sendError(exchange, 404, "Endpoint not found");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JsonHelper.sendError(exchange, 500, "Internal server error");
-        }
+    private final Database db = Database.getInstance();
+    private final CatalogIndex catalogIndex = CatalogIndex.getInstance();
+    private final LeaderboardService leaderboard = LeaderboardService.getInstance();
+    private final LikeBuffer likes = LikeBuffer.getInstance();
+    private final RecommendationEngine recommendations = RecommendationEngine.getInstance();
+    private final CatalogImport catalogImport = new CatalogImport();
+
+    public void registerRoutes(RouteTable routes) {
+        routes.add("GET", "/api/media",
+                (exchange, params, userId) -> handleGetMediaList(exchange, exchange.getRequestURI().getQuery(), userId)).readOnly();
+        routes.add("POST", "/api/media", (exchange, params, userId) -> handleCreateMedia(exchange, userId));
+        // Not read-only: the like counts shown are like_count plus the like buffer's pending delta, and the buffer
+        // drops the delta as soon as a flush commits, before a replica may have replayed it
+        routes.add("GET", "/api/media/{id:uuid}",
+                (exchange, params, userId) -> handleGetMedia(exchange, params.getUUID("id"), exchange.getRequestURI().getQuery(), userId));
+        routes.add("PUT", "/api/media/{id:uuid}", (exchange, params, userId) -> handleUpdateMedia(exchange, params.getUUID("id"), userId));
+        routes.add("DELETE", "/api/media/{id:uuid}", (exchange, params, userId) -> handleDeleteMedia(exchange, params.getUUID("id"), userId));
+        routes.add("POST", "/api/media/{id:uuid}/favorite", (exchange, params, userId) -> handleAddFavorite(exchange, params.getUUID("id"), userId));
+        routes.add("DELETE", "/api/media/{id:uuid}/favorite", (exchange, params, userId) -> handleRemoveFavorite(exchange, params.getUUID("id"), userId));
+        routes.add("POST", "/api/admin/media/import", (exchange, params, userId) -> handleImportMedia(exchange, userId));
     }
 
     private void handleGetMediaList(HttpExchange exchange, String query, UUID userId) throws IOException, SQLException {
         Map<String, String> params = JsonHelper.parseQueryParams(query);
 
         // Build SQL query with filters
+        // Rating aggregates are stored on media_entries (kept up to date by triggers on ratings)
         StringBuilder sql = new StringBuilder(
-            "SELECT m.*, u.username as creator_username, " +
-            "COALESCE(AVG(r.stars), 0) as avg_rating, " +
-            "COUNT(DISTINCT r.id) as total_ratings " +
             "FROM media_entries m " +
-            "JOIN users u ON m.creator_id = u.id " +
-            "LEFT JOIN ratings r ON m.id = r.media_id " +
-            "WHERE 1=1 "
+            "JOIN users u ON m.creator_id = u.id "
         );
 
         List<Object> queryParams = new ArrayList<>();
 
+        // Ranked search: full-text match on title and description, or a title that is similar to the
+        // term word by word (tolerates typos). The parsed query is joined in once so the filter and the
+        // relevance sort key can refer to it without repeating parameters.
+        String searchQuery = params.get("q");
+        boolean ranked = searchQuery != null && !searchQuery.isBlank();
+        if (ranked) {
+            sql.append("CROSS JOIN (SELECT websearch_to_tsquery('english', ?) AS query, CAST(? AS TEXT) AS term) s ");
+            queryParams.add(searchQuery);
+            queryParams.add(searchQuery);
+        }
+        sql.append("WHERE 1=1 ");
+        if (ranked) {
+            sql.append("AND (m.search_vector @@ s.query OR s.term <% m.title) ");
+        }
+
         // Apply filters
+        // Substring match on the title, served by the trigram index
         if (params.containsKey("search")) {
-            sql.append("AND LOWER(m.title) LIKE LOWER(?) ");
-            queryParams.add("%" + params.get("search") + "%");
+            sql.append("AND m.title ILIKE ? ");
+            queryParams.add("%" + escapeLike(params.get("search")) + "%");
         }
 
         if (params.containsKey("type")) {
@@ -106,9 +101,39 @@ public class MediaHandler implements HttpHandler {
             queryParams.add(params.get("type"));
         }
 
-        if (params.containsKey("genre")) {
-            sql.append("AND LOWER(m.genres) LIKE LOWER(?) ");
-            queryParams.add("%" + params.get("genre") + "%");
+        if (params.containsKey("age")) {
+            sql.append("AND m.age_restriction = ? ");
+            queryParams.add(params.get("age"));
+        }
+
+        // Genre, type and age are resolved against the in-memory bitmap index first. Genres are exact,
+        // case-insensitive names in the comma form (genre=Action,Sci-Fi), combined with genreMode=all
+        // (default) or any. A selective result is handed to the query as an id list; a broad one is
+        // filtered in SQL instead, through media_genres.
+        Set<String> genres = CatalogIndex.parseGenres(params.get("genre"));
+        boolean allGenres = !"any".equals(params.get("genreMode"));
+        if (!genres.isEmpty() || params.containsKey("type") || params.containsKey("age")) {
+            CatalogIndex.Match match = catalogIndex.match(genres, allGenres, params.get("type"), params.get("age"), MAX_CANDIDATE_IDS);
+            if (match.getCount() == 0) {
+                JsonHelper.sendResponse(exchange, 200, new ArrayList<MediaEntry>());
+                return;
+            }
+            if (match.getIds() != null) {
+                sql.append("AND m.id = ANY(?) ");
+                queryParams.add(match.getIds());
+            } else if (!genres.isEmpty()) {
+                String genreMatch = "EXISTS (SELECT 1 FROM media_genres mg JOIN genres g ON g.id = mg.genre_id " +
+                        "WHERE mg.media_id = m.id AND LOWER(g.name) = ?) ";
+                if (allGenres) {
+                    for (String genre : genres) {
+                        sql.append("AND ").append(genreMatch);
+                        queryParams.add(genre);
+                    }
+                } else {
+                    sql.append("AND ").append(genreMatch.replace("= ?", "= ANY(?)"));
+                    queryParams.add(genres.toArray(new String[0]));
+                }
+            }
         }
 
         if (params.containsKey("year")) {
@@ -121,89 +146,203 @@ public class MediaHandler implements HttpHandler {
             }
         }
 
-        if (params.containsKey("age")) {
-            sql.append("AND m.age_restriction = ? ");
-            queryParams.add(params.get("age"));
-        }
+        // Apply sorting
+        // Every sort mode ends with the UUIDv7 id as tiebreaker, so rows have a total order and a page
+        // boundary can be expressed as a row comparison (keyset pagination) that the indexes can serve
+        ListSort sort = ListSort.fromParam(params.get("sort"), ranked);
 
-        sql.append("GROUP BY m.id, u.username ");
+        int limit;
+        try {
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        if (limit < 1) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        limit = Math.min(limit, MAX_PAGE_SIZE);
 
-        // Apply sorting
-        String sortBy = params.getOrDefault("sort", "title");
-        switch (sortBy) {
-            case "year":
-                sql.append("ORDER BY m.release_year DESC");
-                break;
-            case "rating":
-                sql.append("ORDER BY avg_rating DESC");
-                break;
-            default:
-                sql.append("ORDER BY m.title ASC");
+        if (params.containsKey("cursor")) {
+            Object[] position = decodeCursor(sort, params.get("cursor"));
+            if (position == null) {
+                JsonHelper.sendError(exchange, 400, "Invalid cursor");
+                return;
+            }
+            sql.append("AND (").append(sort.keyExpression).append(", m.id) ")
+               .append(sort.descending ? "<= " : ">= ").append("(?, ?) ");
+            queryParams.add(position[0]);
+            queryParams.add(position[1]);
         }
 
-        ResultSet rs = db.query(sql.toString(), queryParams.toArray());
-        List<MediaEntry> mediaList = new ArrayList<>();
+        String direction = sort.descending ? " DESC" : " ASC";
+        String orderBy = "ORDER BY " + sort.keyExpression + direction + ", m.id" + direction + " ";
+
+        // The body is streamed, so the headers have to be known before the first row is written.
+        // A keys-only pass over the page yields the first row of the next page (the cursor) and the
+        // ids and versions of the rows on this page (the ETag), so a repeated poll gets its 304 from it.
+        List<Object> keysParams = new ArrayList<>(queryParams);
+        keysParams.add(limit + 1);
+        HttpCache.Tag tag = new HttpCache.Tag().add(exchange.getRequestURI().getRawQuery());
+        int pageSize = limit;
+        Object[] next = db.query(
+            "SELECT " + sort.keyExpression + ", m.id, m.version " + sql + orderBy + "LIMIT ?",
+            rs -> {
+                for (int row = 0; rs.next(); row++) {
+                    if (row == pageSize) {
+                        return new Object[]{rs.getObject(1), db.getUUID(rs, 2)};
+                    }
+                    tag.add(rs.getString(2)).add(rs.getLong(3));
+                }
+                return null;
+            },
+            keysParams.toArray()
+        );
+
+        if (HttpCache.checkNotModified(exchange, tag.build(), null)) {
+            return;
+        }
 
-        while (rs.next()) {
-            MediaEntry media = mapResultSetToMedia(rs);
-            mediaList.add(media);
+        // The page ends right before that row instead of at a LIMIT: a row inserted in between the two
+        // queries then makes this page one row longer, rather than pushing a row out of both pages
+        if (next != null) {
+            sql.append("AND (").append(sort.keyExpression).append(", m.id) ")
+               .append(sort.descending ? "> " : "< ").append("(?, ?) ");
+            queryParams.add(next[0]);
+            queryParams.add(next[1]);
+
+            String cursor = encodeCursor(sort, next[0], (UUID) next[1]);
+            exchange.getResponseHeaders().set("X-Next-Cursor", cursor);
+            exchange.getResponseHeaders().set("Link", "<" + nextPageUri(exchange, cursor) + ">; rel=\"next\"");
         }
 
-        JsonHelper.sendResponse(exchange, 200, mediaList);
+        // Rows are serialized one by one as they come off the cursor, nothing is collected in between
+        db.stream(
+            "SELECT m.*, u.username as creator_username " + sql + orderBy,
+            STREAM_FETCH_SIZE,
+            rs -> JsonHelper.sendStream(exchange, 200, json -> {
+                json.writeStartArray();
+                while (rs.next()) {
+                    json.writeObject(mapResultSetToMedia(rs));
+                }
+                json.writeEndArray();
+            }),
+            queryParams.toArray()
+        );
     }
 
-    private void handleGetMedia(HttpExchange exchange, String mediaId, UUID userId) throws IOException, SQLException {
-        UUID mediaUUID = parseUUID(exchange, mediaId);
-        if (mediaUUID == null) return; // Error already sent
+    private void handleGetMedia(HttpExchange exchange, UUID mediaUUID, String query, UUID userId) throws IOException, SQLException {
+        Map<String, String> params = JsonHelper.parseQueryParams(query);
+
+        // Ratings are paged newest first: ratingsLimit, plus ratingsCursor from X-Next-Ratings-Cursor
+        int ratingsLimit;
+        try {
+            ratingsLimit = params.containsKey("ratingsLimit")
+                    ? Integer.parseInt(params.get("ratingsLimit")) : DEFAULT_RATINGS_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid ratingsLimit parameter");
+            return;
+        }
+        if (ratingsLimit < 1) {
+            JsonHelper.sendError(exchange, 400, "Invalid ratingsLimit parameter");
+            return;
+        }
+        ratingsLimit = Math.min(ratingsLimit, MAX_RATINGS_PAGE_SIZE);
 
-        ResultSet rs = db.query(
+        List<Object> queryParams = new ArrayList<>();
+        queryParams.add(userId);
+        String ratingsPosition = "";
+        if (params.containsKey("ratingsCursor")) {
+            Object[] position = decodeRatingsCursor(params.get("ratingsCursor"));
+            if (position == null) {
+                JsonHelper.sendError(exchange, 400, "Invalid ratingsCursor");
+                return;
+            }
+            ratingsPosition = "AND (r.created_at, r.id) <= (?, ?) ";
+            queryParams.add(position[0]);
+            queryParams.add(position[1]);
+        }
+        queryParams.add(ratingsLimit + 1);
+        queryParams.add(userId);
+        queryParams.add(mediaUUID);
+
+        // Everything the detail shows moves the version of the media entry, so a repeated request can be
+        // answered with a 304 from this lookup alone, before any of the body is assembled. Flushed likes do
+        // too (like_count changes bump it through the ratings trigger); likes still waiting in the like
+        // buffer are covered by its version and last change for this media entry.
+        Object[] validators = db.query(
+            "SELECT version, updated_at FROM media_entries WHERE id = ?",
+            rs -> rs.next() ? new Object[]{rs.getLong(1), rs.getTimestamp(2)} : null,
+            mediaUUID
+        );
+        if (validators != null) {
+            String etag = new HttpCache.Tag()
+                    .add(mediaUUID).add(validators[0]).add(likes.getMediaVersion(mediaUUID)).add(userId).add(exchange.getRequestURI().getRawQuery())
+                    .build();
+            Timestamp lastModified = (Timestamp) validators[1];
+            long likesChanged = likes.getLastChangeMillis(mediaUUID);
+            if (lastModified == null || lastModified.getTime() < likesChanged) {
+                lastModified = new Timestamp(likesChanged);
+            }
+            if (HttpCache.checkNotModified(exchange, etag, lastModified)) {
+                return;
+            }
+        }
+
+        // Media row and one page of its ratings in a single round trip: the media columns repeat on each
+        // rating row (a media entry without visible ratings comes back as one row with null rating columns).
+        // Like counts are stored on ratings; the current user's likes are one primary key probe per rating.
+        // Both are overlaid with the likes still waiting in the like buffer, under readCounts() so a flush
+        // committing meanwhile cannot show its likes twice.
+        String sql =
             "SELECT m.*, u.username as creator_username, " +
-            "COALESCE(AVG(r.stars), 0) as avg_rating, " +
-            "COUNT(DISTINCT r.id) as total_ratings " +
+            "r.id AS rating_id, r.user_id AS rating_user_id, r.stars AS rating_stars, " +
+            "r.comment AS rating_comment, r.is_confirmed AS rating_confirmed, r.created_at AS rating_created_at, " +
+            "r.like_count AS rating_like_count, r.username AS rating_username, " +
+            "(l.user_id IS NOT NULL) AS rating_liked " +
             "FROM media_entries m " +
             "JOIN users u ON m.creator_id = u.id " +
-            "LEFT JOIN ratings r ON m.id = r.media_id " +
+            "LEFT JOIN LATERAL (" +
+            "  SELECT r.*, ru.username FROM ratings r " +
+            "  JOIN users ru ON r.user_id = ru.id " +
+            "  WHERE r.media_id = m.id AND (r.is_confirmed = true OR r.user_id = ?) " + ratingsPosition +
+            "  ORDER BY r.created_at DESC, r.id DESC " +
+            "  LIMIT ?" +
+            ") r ON true " +
+            "LEFT JOIN rating_likes l ON l.rating_id = r.id AND l.user_id = ? " +
             "WHERE m.id = ? " +
-            "GROUP BY m.id, u.username",
-            mediaUUID
-        );
+            "ORDER BY r.created_at DESC, r.id DESC";
+
+        MediaEntry media = likes.readCounts(() -> db.query(sql, rs -> {
+            MediaEntry entry = null;
+            List<Rating> ratings = new ArrayList<>();
+            while (rs.next()) {
+                if (entry == null) {
+                    entry = mapResultSetToMedia(rs);
+                }
+                if (rs.getObject("rating_id") != null) {
+                    ratings.add(mapResultSetToRating(rs, userId));
+                }
+            }
+            if (entry != null) {
+                entry.setRatings(ratings);
+            }
+            return entry;
+        }, queryParams.toArray()));
 
-        if (!rs.next()) {
+        if (media == null) {
             JsonHelper.sendError(exchange, 404, "Media not found");
             return;
         }
 
-        MediaEntry media = mapResultSetToMedia(rs);
-
-        // Get ratings for this media
-        ResultSet ratingsRs = db.query(
-            "SELECT r.*, u.username, " +
-            "(SELECT COUNT(*) FROM rating_likes WHERE rating_id = r.id) as like_count, " +
-            "EXISTS(SELECT 1 FROM rating_likes WHERE rating_id = r.id AND user_id = ?) as liked_by_user " +
-            "FROM ratings r " +
-            "JOIN users u ON r.user_id = u.id " +
-            "WHERE r.media_id = ? AND (r.is_confirmed = true OR r.user_id = ?) " +
-            "ORDER BY r.created_at DESC",
-            userId, mediaUUID, userId
-        );
+        // One rating more than requested tells us whether there is a next page; it becomes the next cursor
+        List<Rating> ratings = media.getRatings();
+        if (ratings.size() > ratingsLimit) {
+            Rating next = ratings.remove(ratingsLimit);
+            exchange.getResponseHeaders().set("X-Next-Ratings-Cursor", encodeRatingsCursor(next));
+        }
 
-        List<Rating> ratings = new ArrayList<>();
-        while (ratingsRs.next()) {
-            Rating rating = new Rating();
-            rating.setId(db.getUUID(ratingsRs, "id"));
-            rating.setMediaId(db.getUUID(ratingsRs, "media_id"));
-            rating.setUserId(db.getUUID(ratingsRs, "user_id"));
-            rating.setStars(ratingsRs.getInt("stars"));
-            rating.setComment(ratingsRs.getString("comment"));
-            rating.setConfirmed(ratingsRs.getBoolean("is_confirmed"));
-            rating.setCreatedAt(ratingsRs.getTimestamp("created_at"));
-            rating.setUsername(ratingsRs.getString("username"));
-            rating.setLikeCount(ratingsRs.getInt("like_count"));
-            rating.setLikedByCurrentUser(ratingsRs.getBoolean("liked_by_user"));
-            ratings.add(rating);
-        }
-
-        media.setRatings(ratings);
         JsonHelper.sendResponse(exchange, 200, media);
     }
 
@@ -239,14 +378,42 @@ public class MediaHandler implements HttpHandler {
 
         media.setId(mediaId);
         media.setCreatorId(userId);
+        catalogIndex.put(mediaId, media.getMediaType(), media.getAgeRestriction(), media.getGenres());
 
         JsonHelper.sendResponse(exchange, 201, media);
     }
 
-    private void handleUpdateMedia(HttpExchange exchange, String mediaId, UUID userId) throws IOException, SQLException {
-        UUID mediaUUID = parseUUID(exchange, mediaId);
-        if (mediaUUID == null) return; // Error already sent
+    // Bulk import of NDJSON or CSV (see CatalogImport); the imported entries belong to the admin
+    private void handleImportMedia(HttpExchange exchange, UUID userId) throws IOException, SQLException {
+        String username = (String) db.getValue("SELECT username FROM users WHERE id = ?", userId);
+        if (username == null || !ADMINS.contains(username)) {
+            JsonHelper.sendError(exchange, 403, "Only admins can import media");
+            return;
+        }
+
+        CatalogImport.Format format = CatalogImport.Format.of(
+                JsonHelper.parseQueryParams(exchange.getRequestURI().getQuery()).get("format"),
+                exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (format == null) {
+            JsonHelper.sendError(exchange, 400, "Unknown import format, use format=ndjson or format=csv");
+            return;
+        }
+
+        CatalogImport.Result result;
+        try {
+            result = catalogImport.run(exchange.getRequestBody(), format, userId);
+        } catch (IllegalArgumentException e) {
+            JsonHelper.sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        System.out.println("Catalog import by " + username + ": " + result.getImported() + " imported, " +
+                result.getRejected() + " rejected, " + (result.getBytes() >> 10) + " KB in " +
+                result.getDurationMs() + " ms (" + result.getRowsPerSecond() + " rows/s)");
+
+        JsonHelper.sendResponse(exchange, 200, result);
+    }
 
+    private void handleUpdateMedia(HttpExchange exchange, UUID mediaUUID, UUID userId) throws IOException, SQLException {
         // Check if user is the creator
         Object creatorIdObj = db.getValue("SELECT creator_id FROM media_entries WHERE id = ?", mediaUUID);
 
@@ -292,16 +459,14 @@ public class MediaHandler implements HttpHandler {
 
         if (updated > 0) {
             media.setId(mediaUUID);
+            catalogIndex.put(mediaUUID, media.getMediaType(), media.getAgeRestriction(), media.getGenres());
             JsonHelper.sendResponse(exchange, 200, media);
         } else {
             JsonHelper.sendError(exchange, 500, "Failed to update media");
         }
     }
 
-    private void handleDeleteMedia(HttpExchange exchange, String mediaId, UUID userId) throws IOException, SQLException {
-        UUID mediaUUID = parseUUID(exchange, mediaId);
-        if (mediaUUID == null) return; // Error already sent
-
+    private void handleDeleteMedia(HttpExchange exchange, UUID mediaUUID, UUID userId) throws IOException, SQLException {
         // Check if user is the creator
         Object creatorIdObj = db.getValue("SELECT creator_id FROM media_entries WHERE id = ?", mediaUUID);
 
@@ -316,20 +481,32 @@ public class MediaHandler implements HttpHandler {
             return;
         }
 
+        // The cascade takes the ratings and their likes along, which the leaderboard has to forget as well
+        List<Object[]> ratings = db.queryList("SELECT user_id, created_at FROM ratings WHERE media_id = ?",
+                rs -> new Object[]{db.getUUID(rs, 1), rs.getTimestamp(2)}, mediaUUID);
+        List<Object[]> likes = db.queryList("SELECT r.user_id, l.created_at FROM rating_likes l " +
+                "JOIN ratings r ON r.id = l.rating_id WHERE r.media_id = ?",
+                rs -> new Object[]{db.getUUID(rs, 1), rs.getTimestamp(2)}, mediaUUID);
+
         // Delete media (cascades to ratings, favorites, etc.)
         int deleted = db.update("DELETE FROM media_entries WHERE id = ?", mediaUUID);
 
         if (deleted > 0) {
+            catalogIndex.remove(mediaUUID);
+            for (Object[] rating : ratings) {
+                leaderboard.ratingRemoved((UUID) rating[0], (Timestamp) rating[1]);
+            }
+            for (Object[] like : likes) {
+                leaderboard.likeRemoved((UUID) like[0], (Timestamp) like[1]);
+            }
+            recommendations.mediaChanged(mediaUUID);
             JsonHelper.sendSuccess(exchange, "Media deleted successfully");
         } else {
             JsonHelper.sendError(exchange, 500, "Failed to delete media");
         }
     }
 
-    private void handleAddFavorite(HttpExchange exchange, String mediaId, UUID userId) throws IOException, SQLException {
-        UUID mediaUUID = parseUUID(exchange, mediaId);
-        if (mediaUUID == null) return; // Error already sent
-
+    private void handleAddFavorite(HttpExchange exchange, UUID mediaUUID, UUID userId) throws IOException, SQLException {
         // Check if media exists
         if (!db.exists("SELECT 1 FROM media_entries WHERE id = ?", mediaUUID)) {
             JsonHelper.sendError(exchange, 404, "Media not found");
@@ -344,16 +521,15 @@ public class MediaHandler implements HttpHandler {
 
         // Add to favorites
         db.update("INSERT INTO favorites (user_id, media_id) VALUES (?, ?)", userId, mediaUUID);
+        recommendations.mediaChanged(mediaUUID);
         JsonHelper.sendSuccess(exchange, "Added to favorites");
     }
 
-    private void handleRemoveFavorite(HttpExchange exchange, String mediaId, UUID userId) throws IOException, SQLException {
-        UUID mediaUUID = parseUUID(exchange, mediaId);
-        if (mediaUUID == null) return; // Error already sent
-
+    private void handleRemoveFavorite(HttpExchange exchange, UUID mediaUUID, UUID userId) throws IOException, SQLException {
         int deleted = db.update("DELETE FROM favorites WHERE user_id = ? AND media_id = ?", userId, mediaUUID);
 
         if (deleted > 0) {
+            recommendations.mediaChanged(mediaUUID);
             JsonHelper.sendSuccess(exchange, "Removed from favorites");
         } else {
             JsonHelper.sendError(exchange, 404, "Not in favorites");
@@ -373,17 +549,127 @@ public class MediaHandler implements HttpHandler {
         media.setCreatedAt(rs.getTimestamp("created_at"));
         media.setCreatorUsername(rs.getString("creator_username"));
         media.setAverageRating(rs.getDouble("avg_rating"));
-        media.setTotalRatings(rs.getInt("total_ratings"));
+        media.setTotalRatings(rs.getInt("rating_count"));
+        media.setRatingHistogram(new int[]{
+            rs.getInt("stars_1"), rs.getInt("stars_2"), rs.getInt("stars_3"), rs.getInt("stars_4"), rs.getInt("stars_5")
+        });
         return media;
     }
 
-    // Helper method to validate and parse UUID from string
-    private UUID parseUUID(HttpExchange exchange, String uuidString) throws IOException {
+    // Maps the rating_* columns of the detail query, as seen by userId
+    private Rating mapResultSetToRating(ResultSet rs, UUID userId) throws SQLException {
+        Rating rating = new Rating();
+        rating.setId(db.getUUID(rs, "rating_id"));
+        rating.setMediaId(db.getUUID(rs, "id"));
+        rating.setUserId(db.getUUID(rs, "rating_user_id"));
+        rating.setStars(rs.getInt("rating_stars"));
+        rating.setComment(rs.getString("rating_comment"));
+        rating.setConfirmed(rs.getBoolean("rating_confirmed"));
+        rating.setCreatedAt(rs.getTimestamp("rating_created_at"));
+        rating.setUsername(rs.getString("rating_username"));
+        rating.setLikeCount(rs.getInt("rating_like_count") + likes.pendingDelta(rating.getId()));
+        rating.setLikedByCurrentUser(likes.isLiked(rating.getId(), userId, rs.getBoolean("rating_liked")));
+        return rating;
+    }
+
+    // Sort modes of GET /api/media; keyExpression must match the leading column of the backing index.
+    // RELEVANCE only exists for ranked searches (q) and has no index, it orders the matching rows only.
+    enum ListSort {
+        TITLE("title", "m.title", false),
+        YEAR("year", "COALESCE(m.release_year, -1)", true),
+        RATING("rating", "m.avg_rating", true),
+        RELEVANCE("relevance",
+                "CAST(ts_rank(m.search_vector, s.query) + word_similarity(s.term, m.title) AS DOUBLE PRECISION)", true);
+
+        private final String param;
+        private final String keyExpression;
+        private final boolean descending;
+
+        ListSort(String param, String keyExpression, boolean descending) {
+            this.param = param;
+            this.keyExpression = keyExpression;
+            this.descending = descending;
+        }
+
+        // Ranked searches default to relevance, everything else to title
+        static ListSort fromParam(String param, boolean ranked) {
+            for (ListSort sort : values()) {
+                if (sort.param.equals(param) && (sort != RELEVANCE || ranked)) {
+                    return sort;
+                }
+            }
+            return ranked ? RELEVANCE : TITLE;
+        }
+
+        Object parseSortKey(String value) {
+            switch (this) {
+                case YEAR:
+                    return Integer.parseInt(value);
+                case RATING:
+                case RELEVANCE:
+                    return Double.parseDouble(value);
+                default:
+                    return value;
+            }
+        }
+    }
+
+    // A cursor names the first row of the next page: sort mode, id and sort key, base64url encoded.
+    // It is opaque to clients; only the sort mode it was issued for accepts it.
+    static String encodeCursor(ListSort sort, Object sortKey, UUID id) {
+        String raw = sort.param + "\n" + id + "\n" + sortKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns {sortKey, id}, or null if the cursor is malformed or belongs to another sort mode
+    static Object[] decodeCursor(ListSort sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 3);
+            if (parts.length != 3 || !sort.param.equals(parts[0])) {
+                return null;
+            }
+            return new Object[]{sort.parseSortKey(parts[2]), UUID.fromString(parts[1])};
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Ratings cursors name the first rating of the next page by creation time and id
+    static String encodeRatingsCursor(Rating first) {
+        String raw = first.getCreatedAt() + "\n" + first.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns {createdAt, id}, or null if the cursor is malformed
+    static Object[] decodeRatingsCursor(String cursor) {
         try {
-            return UUID.fromString(uuidString);
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 2);
+            if (parts.length != 2) {
+                return null;
+            }
+            return new Object[]{Timestamp.valueOf(parts[0]), UUID.fromString(parts[1])};
         } catch (IllegalArgumentException e) {
-            JsonHelper.sendError(exchange, 400, "Invalid UUID format");
             return null;
         }
     }
-}
\ No newline at end of file
+
+    private String nextPageUri(HttpExchange exchange, String cursor) {
+        StringBuilder uri = new StringBuilder(exchange.getRequestURI().getPath()).append('?');
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (!pair.isEmpty() && !pair.startsWith("cursor=")) {
+                    uri.append(pair).append('&');
+                }
+            }
+        }
+        return uri.append("cursor=").append(cursor).toString();
+    }
+
+    // Escapes LIKE wildcards so user input only ever matches literally
+    private String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
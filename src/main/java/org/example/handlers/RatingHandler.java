@@ -1,103 +1,260 @@
 package org.example.handlers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import org.example.db.Database;
+import org.example.models.Rating;
+import org.example.services.LeaderboardService;
+import org.example.services.LikeBuffer;
+import org.example.services.RecommendationEngine;
+import org.example.utils.Config;
 import org.example.utils.JsonHelper;
+import org.example.utils.RouteTable;
+import org.example.utils.UUIDGenerator;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
-public class RatingHandler implements HttpHandler {
-    private final Database db = Database.getInstance();
-    private final AuthHandler authHandler = new AuthHandler();
+public class RatingHandler {
+    // Most ratings accepted by one POST /api/ratings/batch
+    private static final int MAX_BATCH_SIZE = Config.getInt("mrp.ratings.maxBatchSize", 1000);
 
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
+    private final Database db = Database.getInstance();
+    private final LikeBuffer likes = LikeBuffer.getInstance();
+    private final LeaderboardService leaderboard = LeaderboardService.getInstance();
+    private final RecommendationEngine recommendations = RecommendationEngine.getInstance();
 
-        try {
-            // Check authentication
-            UUID userId = authHandler.validateToken(exchange);
-            if (userId == null) {
-                JsonHelper.sendError(exchange, 401, "Authentication required");
-                return;
-            }
+    // One rating of a submission and what became of it
+    private static class Submission {
+        private final int index;
+        private final Rating rating;
+        private String status; // created, updated, invalid or not_found
+        private String error;
 
-            String[] segments = JsonHelper.getPathSegments(path);
+        Submission(int index, Rating rating) {
+            this.index = index;
+            this.rating = rating;
+        }
 
-            // /api/media/{id}/ratings - Create rating
-            if (segments.length == 4 && "ratings".equals(segments[3]) && "POST".equals(method)) {
-                String mediaId = segments[2];
-                handleCreateRating(exchange, mediaId, userId);
-            }
-            // /api/ratings/{id} - Update or delete rating
-            else if (segments.length == 3 && "ratings".equals(segments[1])) {
-                String ratingId = segments[2];
-
-                if ("PUT".equals(method)) {
-                    handleUpdateRating(exchange, ratingId, userId);
-                } else if ("DELETE".equals(method)) {
-                    handleDeleteRating(exchange, ratingId, userId);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/ratings/{id}/confirm - Confirm comment
-            else if (segments.length == 4 && "ratings".equals(segments[1]) && "confirm".equals(segments[3]) && "PUT".equals(method)) {
-                String ratingId = segments[2];
-                handleConfirmComment(exchange, ratingId, userId);
-            }
-            // /api/ratings/{id}/like - Like rating
-            else if (segments.length == 4 && "ratings".equals(segments[1]) && "like".equals(segments[3]) && "POST".equals(method)) {
-                String ratingId = segments[2];
-                handleLikeRating(exchange, ratingId, userId);
-            }
-            // /api/ratings/{id}/unlike - Unlike rating
-            else if (segments.length == 4 && "ratings".equals(segments[1]) && "unlike".equals(segments[3]) && "DELETE".equals(method)) {
-                String ratingId = segments[2];
-                handleUnlikeRating(exchange, ratingId, userId);
+        Map<String, Object> toResult() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", index);
+            result.put("mediaId", rating.getMediaId());
+            result.put("status", status);
+            if (error != null) {
+                result.put("error", error);
             } else {
-                JsonHelper.sendError(exchange, 404, "Endpoint not found");
+                result.put("ratingId", rating.getId());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JsonHelper.sendError(exchange, 500, "Internal server error");
+            return result;
         }
     }
 
-    private void handleCreateRating(HttpExchange exchange, String mediaId, UUID userId) throws IOException {
-        JsonHelper.sendSuccess(exchange, "Will be implemented");
+    public void registerRoutes(RouteTable routes) {
+        routes.add("POST", "/api/media/{id:uuid}/ratings", (exchange, params, userId) -> handleCreateRating(exchange, params.getUUID("id"), userId));
+        routes.add("POST", "/api/ratings/batch", (exchange, params, userId) -> handleCreateRatings(exchange, userId));
+        routes.add("PUT", "/api/ratings/{id:uuid}", (exchange, params, userId) -> handleUpdateRating(exchange, params.getUUID("id"), userId));
+        routes.add("DELETE", "/api/ratings/{id:uuid}", (exchange, params, userId) -> handleDeleteRating(exchange, params.getUUID("id"), userId));
+        routes.add("PUT", "/api/ratings/{id:uuid}/confirm", (exchange, params, userId) -> handleConfirmComment(exchange, params.getUUID("id"), userId));
+        routes.add("POST", "/api/ratings/{id:uuid}/like", (exchange, params, userId) -> handleLikeRating(exchange, params.getUUID("id"), userId));
+        routes.add("DELETE", "/api/ratings/{id:uuid}/unlike", (exchange, params, userId) -> handleUnlikeRating(exchange, params.getUUID("id"), userId));
     }
 
-    private void handleUpdateRating(HttpExchange exchange, String ratingId, UUID userId) throws IOException {
-        JsonHelper.sendSuccess(exchange, "Will be implemented");
+    // Creates the user's rating of the media, or replaces it if there is one (201 or 200)
+    private void handleCreateRating(HttpExchange exchange, UUID mediaId, UUID userId) throws IOException, SQLException {
+        Rating rating;
+        try {
+            rating = JsonHelper.parseRequest(exchange, Rating.class);
+        } catch (JsonProcessingException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid JSON body");
+            return;
+        }
+        if (rating == null) {
+            JsonHelper.sendError(exchange, 400, "Rating is required");
+            return;
+        }
+        rating.setMediaId(mediaId);
+
+        Submission submission = new Submission(0, rating);
+        submit(List.of(submission), userId);
+        switch (submission.status) {
+            case "invalid":
+                JsonHelper.sendError(exchange, 400, submission.error);
+                break;
+            case "not_found":
+                JsonHelper.sendError(exchange, 404, submission.error);
+                break;
+            default:
+                JsonHelper.sendResponse(exchange, submission.status.equals("created") ? 201 : 200, rating);
+        }
     }
 
-    private void handleDeleteRating(HttpExchange exchange, String ratingId, UUID userId) throws IOException {
-        JsonHelper.sendSuccess(exchange, "Will be implemented");
+    // Creates or replaces many ratings of the user at once: a JSON array of {mediaId, stars, comment}.
+    // Invalid items are reported and left out, the rest is written together; the response lists the
+    // outcome of every item in request order.
+    private void handleCreateRatings(HttpExchange exchange, UUID userId) throws IOException, SQLException {
+        Rating[] ratings;
+        try {
+            ratings = JsonHelper.parseRequest(exchange, Rating[].class);
+        } catch (JsonProcessingException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid JSON body, expected an array of ratings");
+            return;
+        }
+        if (ratings == null || ratings.length == 0) {
+            JsonHelper.sendError(exchange, 400, "At least one rating is required");
+            return;
+        }
+        if (ratings.length > MAX_BATCH_SIZE) {
+            JsonHelper.sendError(exchange, 400, "At most " + MAX_BATCH_SIZE + " ratings per batch");
+            return;
+        }
+
+        List<Submission> submissions = new ArrayList<>(ratings.length);
+        for (int i = 0; i < ratings.length; i++) {
+            submissions.add(new Submission(i, ratings[i] != null ? ratings[i] : new Rating()));
+        }
+        submit(submissions, userId);
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("created", 0);
+        counts.put("updated", 0);
+        counts.put("failed", 0);
+        List<Map<String, Object>> results = new ArrayList<>(submissions.size());
+        for (Submission submission : submissions) {
+            counts.merge(submission.error == null ? submission.status : "failed", 1, Integer::sum);
+            results.add(submission.toResult());
+        }
+        Map<String, Object> response = new LinkedHashMap<>(counts);
+        response.put("results", results);
+        JsonHelper.sendResponse(exchange, 200, response);
     }
 
-    private void handleConfirmComment(HttpExchange exchange, String ratingId, UUID userId) throws IOException {
+    // Validates the submissions and upserts the valid ones in a single statement. The aggregate triggers
+    // on ratings are statement-level, so every media entry touched is updated once, however many ratings
+    // of it the statement writes. A changed comment needs to be confirmed again.
+    private void submit(List<Submission> submissions, UUID userId) throws SQLException {
+        List<Submission> valid = new ArrayList<>(submissions.size());
+        Set<UUID> seen = new HashSet<>();
+        for (Submission submission : submissions) {
+            Rating rating = submission.rating;
+            if (rating.getMediaId() == null) {
+                submission.error = "mediaId is required";
+            } else if (rating.getStars() < 1 || rating.getStars() > 5) {
+                submission.error = "Stars must be between 1 and 5";
+            } else if (rating.getComment() != null && rating.getComment().indexOf('\0') >= 0) {
+                submission.error = "Comment must not contain NUL characters";
+            } else if (!seen.add(rating.getMediaId())) {
+                submission.error = "Media is rated more than once in this batch";
+            } else {
+                rating.setId(UUIDGenerator.generateUUIDv7());
+                valid.add(submission);
+                continue;
+            }
+            submission.status = "invalid";
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        // Rows in media order, so concurrent batches lock shared media rows in the same order
+        valid.sort(Comparator.comparing(submission -> submission.rating.getMediaId()));
+        int size = valid.size();
+        UUID[] ids = new UUID[size];
+        UUID[] mediaIds = new UUID[size];
+        int[] stars = new int[size];
+        String[] comments = new String[size];
+        for (int i = 0; i < size; i++) {
+            Rating rating = valid.get(i).rating;
+            ids[i] = rating.getId();
+            mediaIds[i] = rating.getMediaId();
+            stars[i] = rating.getStars();
+            comments[i] = rating.getComment();
+        }
+
+        // Media that does not exist is joined away and comes back without a row
+        Map<UUID, Object[]> written = new HashMap<>();
+        db.queryList(
+            "INSERT INTO ratings (id, media_id, user_id, stars, comment) " +
+            "SELECT u.id, u.media_id, ?, u.stars, u.comment " +
+            "FROM unnest(CAST(? AS UUID[]), CAST(? AS UUID[]), CAST(? AS INT[]), CAST(? AS TEXT[])) " +
+            "AS u(id, media_id, stars, comment) " +
+            "JOIN media_entries m ON m.id = u.media_id " +
+            "ORDER BY u.media_id " +
+            "ON CONFLICT (media_id, user_id) DO UPDATE SET stars = EXCLUDED.stars, comment = EXCLUDED.comment, " +
+            "is_confirmed = ratings.is_confirmed AND ratings.comment IS NOT DISTINCT FROM EXCLUDED.comment " +
+            "RETURNING media_id, id, (xmax = 0), created_at, is_confirmed",
+            rs -> written.put(db.getUUID(rs, 1),
+                    new Object[]{db.getUUID(rs, 2), rs.getBoolean(3), rs.getTimestamp(4), rs.getBoolean(5)}),
+            userId, ids, mediaIds, stars, comments
+        );
+
+        for (Submission submission : valid) {
+            Rating rating = submission.rating;
+            Object[] row = written.get(rating.getMediaId());
+            if (row == null) {
+                submission.status = "not_found";
+                submission.error = "Media not found";
+                continue;
+            }
+            boolean created = (Boolean) row[1];
+            submission.status = created ? "created" : "updated";
+            rating.setId((UUID) row[0]);
+            rating.setUserId(userId);
+            rating.setCreatedAt((Timestamp) row[2]);
+            rating.setConfirmed((Boolean) row[3]);
+            if (created) {
+                leaderboard.ratingAdded(userId, rating.getCreatedAt());
+            }
+            recommendations.mediaChanged(rating.getMediaId());
+        }
+    }
+
+    private void handleUpdateRating(HttpExchange exchange, UUID ratingId, UUID userId) throws IOException {
         JsonHelper.sendSuccess(exchange, "Will be implemented");
     }
 
-    private void handleLikeRating(HttpExchange exchange, String ratingId, UUID userId) throws IOException {
+    private void handleDeleteRating(HttpExchange exchange, UUID ratingId, UUID userId) throws IOException {
         JsonHelper.sendSuccess(exchange, "Will be implemented");
     }
 
-    private void handleUnlikeRating(HttpExchange exchange, String ratingId, UUID userId) throws IOException {
+    private void handleConfirmComment(HttpExchange exchange, UUID ratingId, UUID userId) throws IOException {
         JsonHelper.sendSuccess(exchange, "Will be implemented");
     }
 
-    // Helper method to validate and parse UUID from string
-    private UUID parseUUID(HttpExchange exchange, String uuidString) throws IOException {
-        try {
-            return UUID.fromString(uuidString);
-        } catch (IllegalArgumentException e) {
-            JsonHelper.sendError(exchange, 400, "Invalid UUID format");
-            return null;
+    // Likes are buffered in memory and written in batches (see LikeBuffer)
+    private void handleLikeRating(HttpExchange exchange, UUID ratingId, UUID userId) throws IOException, SQLException {
+        switch (likes.like(ratingId, userId)) {
+            case NOT_FOUND:
+                JsonHelper.sendError(exchange, 404, "Rating not found");
+                break;
+            case UNCHANGED:
+                JsonHelper.sendError(exchange, 400, "Already liked");
+                break;
+            default:
+                JsonHelper.sendSuccess(exchange, "Rating liked");
+        }
+    }
+
+    private void handleUnlikeRating(HttpExchange exchange, UUID ratingId, UUID userId) throws IOException, SQLException {
+        switch (likes.unlike(ratingId, userId)) {
+            case NOT_FOUND:
+                JsonHelper.sendError(exchange, 404, "Rating not found");
+                break;
+            case UNCHANGED:
+                JsonHelper.sendError(exchange, 404, "Not liked");
+                break;
+            default:
+                JsonHelper.sendSuccess(exchange, "Rating unliked");
         }
     }
 }
@@ -1,76 +1,40 @@
 package org.example.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import org.example.db.Database;
+import org.example.services.LeaderboardService;
+import org.example.services.RecommendationEngine;
+import org.example.utils.Config;
 import org.example.utils.JsonHelper;
+import org.example.utils.RouteTable;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
-public class UserHandler implements HttpHandler {
-    private final Database db = Database.getInstance();
-    private final AuthHandler authHandler = new AuthHandler();
-
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String method = exchange.getRequestMethod();
-        String path = exchange.getRequestURI().getPath();
-
-        try {
-            // Check authentication
-            UUID userId = authHandler.validateToken(exchange);
-            if (userId == null) {
-                JsonHelper.sendError(exchange, 401, "Authentication required");
-                return;
-            }
-
-            String[] segments = JsonHelper.getPathSegments(path);
+public class UserHandler {
+    // Leaderboard entries when no limit is given, and the cap for it
+    private static final int DEFAULT_LEADERBOARD_SIZE = Config.getInt("mrp.leaderboard.pageSize", 10);
+    private static final int MAX_LEADERBOARD_SIZE = Config.getInt("mrp.leaderboard.maxPageSize", 100);
+    // Recommendations when no limit is given, and the cap for it
+    private static final int DEFAULT_RECOMMENDATIONS = Config.getInt("mrp.recommendations.pageSize", 10);
+    private static final int MAX_RECOMMENDATIONS = Config.getInt("mrp.recommendations.maxPageSize", 50);
 
-            // /api/users/{username}/profile
-            if (segments.length >= 3 && "profile".equals(segments[segments.length - 1])) {
-                String username = segments[2];
+    private final Database db = Database.getInstance();
+    private final LeaderboardService leaderboard = LeaderboardService.getInstance();
+    private final RecommendationEngine recommendations = RecommendationEngine.getInstance();
 
-                if ("GET".equals(method)) {
-                    handleGetProfile(exchange, username);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/users/{username}/favorites
-            else if (segments.length >= 3 && "favorites".equals(segments[segments.length - 1])) {
-                String username = segments[2];
-
-                if ("GET".equals(method)) {
-                    handleGetFavorites(exchange, username);
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/users/{username}/ratings
-            else if (segments.length >= 3 && "ratings".equals(segments[segments.length - 1])) {
-                String username = segments[2];
-
-                if ("GET".equals(method)) {
-                    handleGetUserRatings(exchange, username, String.valueOf(userId));
-                } else {
-                    JsonHelper.sendError(exchange, 405, "Method not allowed");
-                }
-            }
-            // /api/leaderboard
-            else if (path.endsWith("/leaderboard") && "GET".equals(method)) {
-                handleGetLeaderboard(exchange);
-            }
-            // /api/recommendations
-            else if (path.endsWith("/recommendations") && "GET".equals(method)) {
-                handleGetRecommendations(exchange, String.valueOf(userId));
-            } else {
-                JsonHelper.sendError(exchange, 404, "Endpoint not found");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JsonHelper.sendError(exchange, 500, "Internal server error");
-        }
+    public void registerRoutes(RouteTable routes) {
+        routes.add("GET", "/api/users/{username}/profile", (exchange, params, userId) -> handleGetProfile(exchange, params.get("username"))).readOnly();
+        routes.add("GET", "/api/users/{username}/favorites", (exchange, params, userId) -> handleGetFavorites(exchange, params.get("username"))).readOnly();
+        routes.add("GET", "/api/users/{username}/ratings", (exchange, params, userId) -> handleGetUserRatings(exchange, params.get("username"), userId)).readOnly();
+        routes.add("GET", "/api/leaderboard", (exchange, params, userId) -> handleGetLeaderboard(exchange, userId)).readOnly();
+        routes.add("GET", "/api/recommendations", (exchange, params, userId) -> handleGetRecommendations(exchange, userId)).readOnly();
     }
 
     private void handleGetProfile(HttpExchange exchange, String username) throws IOException {
@@ -81,15 +45,126 @@ public class UserHandler implements HttpHandler {
         JsonHelper.sendSuccess(exchange, "Will be implemented");
     }
 
-    private void handleGetUserRatings(HttpExchange exchange, String username, String currentUserId) throws IOException {
+    private void handleGetUserRatings(HttpExchange exchange, String username, UUID currentUserId) throws IOException {
         JsonHelper.sendSuccess(exchange, "Will be implemented");
     }
 
-    private void handleGetLeaderboard(HttpExchange exchange) throws IOException {
-        JsonHelper.sendSuccess(exchange, "Will be implemented");
+    // Most active users of a window (window=all|7d|30d), with the caller's own rank
+    private void handleGetLeaderboard(HttpExchange exchange, UUID userId) throws IOException, SQLException {
+        Map<String, String> params = JsonHelper.parseQueryParams(exchange.getRequestURI().getQuery());
+
+        int limit;
+        try {
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_LEADERBOARD_SIZE;
+        } catch (NumberFormatException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        if (limit < 1) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        limit = Math.min(limit, MAX_LEADERBOARD_SIZE);
+
+        String window = params.getOrDefault("window", LeaderboardService.ALL_TIME);
+        LeaderboardService.Board board = leaderboard.top(window, limit, userId);
+        if (board == null) {
+            JsonHelper.sendError(exchange, 400, "Invalid window parameter, use one of " + leaderboard.getWindows());
+            return;
+        }
+
+        // Only the usernames of the listed users are looked up
+        List<UUID> ids = new ArrayList<>();
+        for (LeaderboardService.Standing standing : board.getTop()) {
+            ids.add(standing.getUserId());
+        }
+        if (board.getUser() != null) {
+            ids.add(board.getUser().getUserId());
+        }
+        Map<UUID, String> usernames = new HashMap<>();
+        if (!ids.isEmpty()) {
+            db.query("SELECT id, username FROM users WHERE id = ANY(?)", rs -> {
+                while (rs.next()) {
+                    usernames.put(db.getUUID(rs, 1), rs.getString(2));
+                }
+                return null;
+            }, (Object) ids.toArray(new UUID[0]));
+        }
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (LeaderboardService.Standing standing : board.getTop()) {
+            entries.add(toJson(standing, usernames));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("window", window);
+        response.put("rankedUsers", board.getRankedUsers());
+        response.put("entries", entries);
+        response.put("you", board.getUser() == null ? null : toJson(board.getUser(), usernames));
+        JsonHelper.sendResponse(exchange, 200, response);
     }
 
-    private void handleGetRecommendations(HttpExchange exchange, String userId) throws IOException {
-        JsonHelper.sendSuccess(exchange, "Will be implemented");
+    // Media similar to what the caller rated well or favorited, best first
+    private void handleGetRecommendations(HttpExchange exchange, UUID userId) throws IOException, SQLException {
+        Map<String, String> params = JsonHelper.parseQueryParams(exchange.getRequestURI().getQuery());
+
+        int limit;
+        try {
+            limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_RECOMMENDATIONS;
+        } catch (NumberFormatException e) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        if (limit < 1) {
+            JsonHelper.sendError(exchange, 400, "Invalid limit parameter");
+            return;
+        }
+        limit = Math.min(limit, MAX_RECOMMENDATIONS);
+
+        List<RecommendationEngine.Recommendation> found = recommendations.recommend(userId, limit);
+        UUID[] ids = new UUID[found.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = found.get(i).getMediaId();
+        }
+        Map<UUID, Map<String, Object>> media = new HashMap<>();
+        if (ids.length > 0) {
+            db.query("SELECT id, title, media_type, release_year, genres, avg_rating, rating_count " +
+                    "FROM media_entries WHERE id = ANY(?)", rs -> {
+                while (rs.next()) {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("id", db.getUUID(rs, 1));
+                    entry.put("title", rs.getString(2));
+                    entry.put("mediaType", rs.getString(3));
+                    entry.put("releaseYear", rs.getObject(4));
+                    entry.put("genres", rs.getString(5));
+                    entry.put("averageRating", rs.getDouble(6));
+                    entry.put("totalRatings", rs.getInt(7));
+                    media.put((UUID) entry.get("id"), entry);
+                }
+                return null;
+            }, (Object) ids);
+        }
+
+        // In the order of the engine; media deleted since the model was refreshed are skipped
+        List<Map<String, Object>> response = new ArrayList<>();
+        for (RecommendationEngine.Recommendation recommendation : found) {
+            Map<String, Object> entry = media.get(recommendation.getMediaId());
+            if (entry != null) {
+                entry.put("score", recommendation.getScore());
+                entry.put("reason", recommendation.isPopular() ? "popular" : "similar");
+                response.add(entry);
+            }
+        }
+        JsonHelper.sendResponse(exchange, 200, response);
+    }
+
+    private Map<String, Object> toJson(LeaderboardService.Standing standing, Map<UUID, String> usernames) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("rank", standing.getRank());
+        entry.put("userId", standing.getUserId());
+        entry.put("username", usernames.get(standing.getUserId()));
+        entry.put("score", standing.getScore());
+        entry.put("ratings", standing.getRatings());
+        entry.put("likesReceived", standing.getLikesReceived());
+        return entry;
     }
 }
@@ -19,6 +19,7 @@ public class MediaEntry {
     private String creatorUsername;
     private double averageRating;
     private int totalRatings;
+    private int[] ratingHistogram; // number of 1..5 star ratings, index 0 = 1 star
     private List<Rating> ratings;
 
     public MediaEntry() {}
@@ -74,6 +75,9 @@ public class MediaEntry {
     public int getTotalRatings() { return totalRatings; }
     public void setTotalRatings(int totalRatings) { this.totalRatings = totalRatings; }
 
+    public int[] getRatingHistogram() { return ratingHistogram; }
+    public void setRatingHistogram(int[] ratingHistogram) { this.ratingHistogram = ratingHistogram; }
+
     public List<Rating> getRatings() { return ratings; }
     public void setRatings(List<Rating> ratings) { this.ratings = ratings; }
 }
\ No newline at end of file
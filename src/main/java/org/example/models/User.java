@@ -21,13 +21,17 @@ public class User {
         this.createdAt = createdAt;
     }
 
-    // Getters
+    // Getters and setters
+    public UUID getId() { return id; }
     public void setId(UUID id) { this.id = id; }
 
+    public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
 
+    public String getPasswordHash() { return passwordHash; }
     public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
 
+    public Timestamp getCreatedAt() { return createdAt; }
     public void setCreatedAt(Timestamp createdAt) { this.createdAt = createdAt; }
 
 }
\ No newline at end of file
@@ -0,0 +1,485 @@
+package org.example.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.example.db.Database;
+import org.example.models.MediaEntry;
+import org.example.utils.Config;
+import org.example.utils.JsonHelper;
+import org.example.utils.UUIDGenerator;
+import org.postgresql.copy.CopyIn;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+// Bulk import of media entries from a streamed upload, one entry per NDJSON line or CSV record.
+// Rows are validated while they are read (the rules of POST /api/media plus the column limits, so COPY
+// never trips over a row), get a UUIDv7 and go to the database through COPY in one transaction, a
+// buffer of mrp.import.copyBufferBytes at a time. Memory does not grow with the upload: rows are capped
+// at mrp.import.maxRowChars and only the first mrp.import.maxReportedErrors errors are kept.
+// Invalid rows are skipped and reported by line; a database error rolls the whole import back.
+// After the commit the new entries are streamed back by their id range (UUIDv7 ids grow with time)
+// and added to the catalog index.
+public class CatalogImport {
+    private static final int COPY_BUFFER_BYTES = Config.getInt("mrp.import.copyBufferBytes", 65536);
+    private static final int MAX_ROW_CHARS = Config.getInt("mrp.import.maxRowChars", 65536);
+    private static final int MAX_REPORTED_ERRORS = Config.getInt("mrp.import.maxReportedErrors", 100);
+    private static final int FETCH_SIZE = Config.getInt("mrp.import.fetchSize", 10000);
+    private static final Set<String> MEDIA_TYPES = Set.of("movie", "series", "game");
+
+    private final Database db = Database.getInstance();
+    private final CatalogIndex catalogIndex = CatalogIndex.getInstance();
+
+    public enum Format {
+        NDJSON, CSV;
+
+        // From the format query parameter, else from the Content-Type of the upload; null if neither says
+        public static Format of(String param, String contentType) {
+            String value = param != null ? param : contentType;
+            if (value == null) {
+                return null;
+            }
+            value = value.toLowerCase(Locale.ROOT);
+            if (value.equals("csv") || value.startsWith("text/csv")) {
+                return CSV;
+            }
+            if (value.equals("ndjson") || value.equals("jsonl") || value.contains("ndjson") || value.contains("jsonl")) {
+                return NDJSON;
+            }
+            return null;
+        }
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String error;
+
+        RowError(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() { return line; }
+        public String getError() { return error; }
+    }
+
+    public static class Result {
+        private long imported;
+        private long rejected;
+        private final List<RowError> errors = new ArrayList<>();
+        private long bytes;
+        private long durationMs;
+
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        // The first mrp.import.maxReportedErrors of the rejected rows
+        public List<RowError> getErrors() { return errors; }
+        public long getBytes() { return bytes; }
+        public long getDurationMs() { return durationMs; }
+        public long getRowsPerSecond() { return durationMs == 0 ? imported * 1000 : imported * 1000 / durationMs; }
+    }
+
+    // A row that cannot be imported; reading goes on with the next one
+    private static class RowException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RowException(String message) {
+            super(message);
+        }
+    }
+
+    // Imports the upload for creatorId. Throws IllegalArgumentException for a CSV header it cannot use.
+    @SuppressWarnings("try")
+    public Result run(InputStream body, Format format, UUID creatorId) throws IOException, SQLException {
+        long startedAt = System.nanoTime();
+        Result result = new Result();
+        CountingInputStream counted = new CountingInputStream(body);
+        BufferedReader in = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8), 65536);
+        RowReader rows = format == Format.CSV ? new CsvRowReader(in) : new NdjsonRowReader(in);
+
+        try (Database.Lease lease = db.lease()) {
+            db.beginTransaction();
+            CopyIn copy = null;
+            boolean committed = false;
+            try {
+                copy = db.copyIn("COPY media_entries " +
+                        "(id, title, description, media_type, release_year, genres, age_restriction, creator_id) " +
+                        "FROM STDIN (FORMAT csv)");
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER_BYTES + 1024);
+                String creator = creatorId.toString();
+                UUID firstId = null;
+                UUID lastId = null;
+                while (true) {
+                    MediaEntry media;
+                    try {
+                        media = rows.next();
+                        if (media == null) {
+                            break;
+                        }
+                        validate(media);
+                    } catch (RowException e) {
+                        result.rejected++;
+                        if (result.errors.size() < MAX_REPORTED_ERRORS) {
+                            result.errors.add(new RowError(rows.line(), e.getMessage()));
+                        }
+                        continue;
+                    }
+
+                    lastId = UUIDGenerator.generateUUIDv7();
+                    if (firstId == null) {
+                        firstId = lastId;
+                    }
+                    buffer.append(lastId).append(',');
+                    appendField(buffer, media.getTitle()).append(',');
+                    appendField(buffer, media.getDescription()).append(',');
+                    appendField(buffer, media.getMediaType()).append(',');
+                    if (media.getReleaseYear() != null) {
+                        buffer.append(media.getReleaseYear().intValue());
+                    }
+                    buffer.append(',');
+                    appendField(buffer, media.getGenres()).append(',');
+                    appendField(buffer, media.getAgeRestriction()).append(',');
+                    buffer.append(creator).append('\n');
+                    result.imported++;
+
+                    if (buffer.length() >= COPY_BUFFER_BYTES) {
+                        write(copy, buffer);
+                    }
+                }
+                write(copy, buffer);
+                copy.endCopy();
+                db.commit();
+                committed = true;
+
+                if (firstId != null) {
+                    db.stream("SELECT id, media_type, age_restriction, genres FROM media_entries " +
+                            "WHERE id BETWEEN ? AND ? AND creator_id = ?", FETCH_SIZE, rs -> {
+                        while (rs.next()) {
+                            catalogIndex.put(db.getUUID(rs, 1), rs.getString(2), rs.getString(3), rs.getString(4));
+                        }
+                    }, firstId, lastId, creatorId);
+                }
+            } finally {
+                if (!committed) {
+                    try {
+                        if (copy != null && copy.isActive()) {
+                            copy.cancelCopy();
+                        }
+                        db.rollback();
+                    } catch (SQLException e) {
+                        System.err.println("Error rolling back catalog import: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        result.bytes = counted.count;
+        result.durationMs = (System.nanoTime() - startedAt) / 1_000_000;
+        return result;
+    }
+
+    private static void validate(MediaEntry media) throws RowException {
+        if (media.getTitle() == null || media.getTitle().trim().isEmpty()) {
+            throw new RowException("Title is required");
+        }
+        if (media.getMediaType() == null || !MEDIA_TYPES.contains(media.getMediaType())) {
+            throw new RowException("Media type must be 'movie', 'series', or 'game'");
+        }
+        checkLength(media.getTitle(), 255, "Title");
+        checkLength(media.getGenres(), 255, "Genres");
+        checkLength(media.getAgeRestriction(), 10, "Age restriction");
+        if (containsNul(media.getTitle()) || containsNul(media.getDescription()) ||
+                containsNul(media.getGenres()) || containsNul(media.getAgeRestriction())) {
+            throw new RowException("Text must not contain NUL characters");
+        }
+    }
+
+    private static void checkLength(String value, int max, String name) throws RowException {
+        if (value != null && value.codePointCount(0, value.length()) > max) {
+            throw new RowException(name + " must not be longer than " + max + " characters");
+        }
+    }
+
+    private static boolean containsNul(String value) {
+        return value != null && value.indexOf('\0') >= 0;
+    }
+
+    // Quoted CSV value; null is the empty unquoted field, which COPY reads as NULL
+    private static StringBuilder appendField(StringBuilder buffer, String value) {
+        if (value == null) {
+            return buffer;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                buffer.append('"');
+            }
+            buffer.append(c);
+        }
+        return buffer.append('"');
+    }
+
+    private static void write(CopyIn copy, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+
+    private interface RowReader {
+        // The next row, null at the end of the upload
+        MediaEntry next() throws IOException, RowException;
+
+        // Line the last row started on, counted from 1
+        long line();
+    }
+
+    // One JSON object per line with the fields of POST /api/media; blank lines are skipped
+    private static class NdjsonRowReader implements RowReader {
+        private final BufferedReader in;
+        private final StringBuilder text = new StringBuilder();
+        private long line;
+
+        NdjsonRowReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public MediaEntry next() throws IOException, RowException {
+            while (true) {
+                text.setLength(0);
+                boolean tooLong = false;
+                int c = in.read();
+                if (c == -1) {
+                    return null;
+                }
+                line++;
+                for (; c != -1 && c != '\n'; c = in.read()) {
+                    if (text.length() < MAX_ROW_CHARS) {
+                        text.append((char) c);
+                    } else {
+                        tooLong = true;
+                    }
+                }
+                if (tooLong) {
+                    throw new RowException("Row must not be longer than " + MAX_ROW_CHARS + " characters");
+                }
+                String json = text.toString().trim();
+                if (json.isEmpty()) {
+                    continue;
+                }
+                try {
+                    MediaEntry media = JsonHelper.parseJson(json, MediaEntry.class);
+                    if (media == null) {
+                        throw new RowException("Row must be a JSON object");
+                    }
+                    return media;
+                } catch (JsonProcessingException e) {
+                    throw new RowException("Invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+        }
+
+        @Override
+        public long line() {
+            return line;
+        }
+    }
+
+    // RFC 4180 CSV with a header row naming the columns (title, description, mediaType, releaseYear,
+    // genres, ageRestriction; snake_case works too). Quoted fields may contain commas, quotes ("")
+    // and line breaks; an empty unquoted field is null. Blank lines are skipped.
+    private static class CsvRowReader implements RowReader {
+        private static final String[] COLUMNS = {"title", "description", "mediatype", "releaseyear", "genres", "agerestriction"};
+
+        private final BufferedReader in;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+        private int[] columns; // index into COLUMNS for every field of a record
+        private long line;     // lines consumed so far
+        private long recordLine;
+
+        CsvRowReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public MediaEntry next() throws IOException, RowException {
+            if (columns == null) {
+                readHeader();
+            }
+            while (true) {
+                if (!readRecord()) {
+                    return null;
+                }
+                if (fields.size() == 1 && fields.get(0) == null) {
+                    continue;
+                }
+                if (fields.size() != columns.length) {
+                    throw new RowException("Expected " + columns.length + " fields, found " + fields.size());
+                }
+                MediaEntry media = new MediaEntry();
+                for (int i = 0; i < columns.length; i++) {
+                    String value = fields.get(i);
+                    switch (columns[i]) {
+                        case 0: media.setTitle(value); break;
+                        case 1: media.setDescription(value); break;
+                        case 2: media.setMediaType(value); break;
+                        case 3: media.setReleaseYear(parseYear(value)); break;
+                        case 4: media.setGenres(value); break;
+                        default: media.setAgeRestriction(value); break;
+                    }
+                }
+                return media;
+            }
+        }
+
+        @Override
+        public long line() {
+            return recordLine;
+        }
+
+        private void readHeader() throws IOException {
+            boolean found;
+            try {
+                found = readRecord();
+            } catch (RowException e) {
+                throw new IllegalArgumentException("Invalid CSV header: " + e.getMessage());
+            }
+            if (!found) {
+                throw new IllegalArgumentException("CSV header row is missing");
+            }
+            int[] mapped = new int[fields.size()];
+            boolean[] seen = new boolean[COLUMNS.length];
+            for (int i = 0; i < mapped.length; i++) {
+                String name = fields.get(i) == null ? "" : fields.get(i).trim().replace("_", "").toLowerCase(Locale.ROOT);
+                mapped[i] = List.of(COLUMNS).indexOf(name);
+                if (mapped[i] < 0) {
+                    throw new IllegalArgumentException("Unknown CSV column '" + fields.get(i) + "'");
+                }
+                if (seen[mapped[i]]) {
+                    throw new IllegalArgumentException("Duplicate CSV column '" + fields.get(i) + "'");
+                }
+                seen[mapped[i]] = true;
+            }
+            if (!seen[0] || !seen[2]) {
+                throw new IllegalArgumentException("CSV header needs the columns title and mediaType");
+            }
+            columns = mapped;
+        }
+
+        private Integer parseYear(String value) throws RowException {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new RowException("Invalid releaseYear '" + value + "'");
+            }
+        }
+
+        // Reads the next record into fields, false at the end of the upload
+        private boolean readRecord() throws IOException, RowException {
+            fields.clear();
+            field.setLength(0);
+            int c = in.read();
+            if (c == -1) {
+                return false;
+            }
+            recordLine = ++line;
+            int chars = 0;
+            boolean quoted = false;   // the current field started with a quote
+            boolean inQuotes = false;
+            for (; c != -1; c = in.read()) {
+                if (++chars > MAX_ROW_CHARS) {
+                    skipRecord(c, inQuotes);
+                    throw new RowException("Row must not be longer than " + MAX_ROW_CHARS + " characters");
+                }
+                if (inQuotes) {
+                    if (c == '"') {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            field.append('"');
+                        } else {
+                            in.reset();
+                            inQuotes = false;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !quoted) {
+                    quoted = true;
+                    inQuotes = true;
+                } else if (c == ',') {
+                    fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            if (inQuotes) {
+                throw new RowException("Unterminated quoted field");
+            }
+            fields.add(quoted || field.length() > 0 ? field.toString() : null);
+            return true;
+        }
+
+        // Consumes the rest of an oversized record, so reading resumes at the next one
+        private void skipRecord(int c, boolean inQuotes) throws IOException {
+            for (; c != -1; c = in.read()) {
+                if (c == '"') {
+                    inQuotes = !inQuotes;
+                } else if (c == '\n') {
+                    if (!inQuotes) {
+                        return;
+                    }
+                    line++;
+                }
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.example.services;
+
+import org.example.db.Database;
+import org.example.utils.Config;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory bitmap index over the categorical attributes of the catalog: genres, media_type and
+// age_restriction. Every media entry gets a dense ordinal and every attribute value a BitSet of
+// ordinals, so multi-genre AND/OR filters combined with type and age are a few word-wise operations.
+// The database stays the source of truth: the index is built from it at startup, MediaHandler applies
+// its own writes right away, and a periodic rebuild picks up anything written outside the API.
+public class CatalogIndex {
+    private static final int FETCH_SIZE = Config.getInt("mrp.catalog.fetchSize", 10000);
+    private static final BitSet EMPTY = new BitSet();
+
+    private static CatalogIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "catalog-index-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private State state = new State();
+    // Writes that happen while a rebuild is loading, replayed onto the new state before it is swapped in
+    private List<Entry> pendingWrites;
+
+    // Result of a lookup; ids is null when more entries than the requested maximum matched
+    public static class Match {
+        private final int count;
+        private final UUID[] ids;
+
+        Match(int count, UUID[] ids) {
+            this.count = count;
+            this.ids = ids;
+        }
+
+        public int getCount() { return count; }
+        public UUID[] getIds() { return ids; }
+    }
+
+    protected CatalogIndex() {}
+
+    public static synchronized CatalogIndex getInstance() {
+        if (instance == null) {
+            instance = new CatalogIndex();
+        }
+        return instance;
+    }
+
+    // Builds the index and schedules the periodic rebuild (0 disables it)
+    public void start(long rebuildIntervalMillis) throws SQLException, IOException {
+        rebuild();
+        if (rebuildIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    System.err.println("Catalog index rebuild failed: " + e.getMessage());
+                }
+            }, rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Loads a fresh index from the database and swaps it in; deleted entries free their ordinals
+    public void rebuild() throws SQLException, IOException {
+        long startedAt = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pendingWrites = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        State loaded = new State();
+        try {
+            load(loaded);
+        } catch (SQLException | IOException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingWrites = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : pendingWrites) {
+                loaded.put(entry);
+            }
+            pendingWrites = null;
+            state = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("Catalog index built: " + loaded.ids.size() + " media entries, " +
+                loaded.byGenre.size() + " genres in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+    }
+
+    // Reads every media entry and its genres into the given state
+    @SuppressWarnings("try")
+    void load(State loaded) throws SQLException, IOException {
+        Database db = Database.getInstance();
+        try (Database.Lease lease = db.lease()) {
+            Map<UUID, Set<String>> genresById = new HashMap<>();
+            db.stream("SELECT mg.media_id, LOWER(g.name) FROM media_genres mg JOIN genres g ON g.id = mg.genre_id",
+                    FETCH_SIZE, rs -> {
+                        while (rs.next()) {
+                            genresById.computeIfAbsent(db.getUUID(rs, 1), id -> new LinkedHashSet<>()).add(rs.getString(2));
+                        }
+                    });
+            db.stream("SELECT id, media_type, age_restriction FROM media_entries", FETCH_SIZE, rs -> {
+                while (rs.next()) {
+                    UUID id = db.getUUID(rs, 1);
+                    loaded.put(new Entry(id, rs.getString(2), rs.getString(3), genresById.getOrDefault(id, Set.of())));
+                }
+            });
+        }
+    }
+
+    // Adds or replaces a media entry; genres in the comma-separated form of media_entries.genres
+    public void put(UUID id, String mediaType, String ageRestriction, String genres) {
+        apply(new Entry(id, mediaType, ageRestriction, parseGenres(genres)));
+    }
+
+    public void remove(UUID id) {
+        apply(new Entry(id, null, null, Set.of()));
+    }
+
+    private void apply(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            state.put(entry);
+            if (pendingWrites != null) {
+                pendingWrites.add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Entries matching every given condition; null/empty arguments do not filter.
+    // allGenres selects AND (entry has every genre) or OR (entry has any of them) semantics.
+    public Match match(Collection<String> genres, boolean allGenres, String mediaType, String ageRestriction, int maxIds) {
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) state.live.clone();
+            if (mediaType != null) {
+                result.and(state.byType.getOrDefault(mediaType, EMPTY));
+            }
+            if (ageRestriction != null) {
+                result.and(state.byAge.getOrDefault(ageRestriction, EMPTY));
+            }
+            if (genres != null && !genres.isEmpty()) {
+                if (allGenres) {
+                    for (String genre : genres) {
+                        result.and(state.byGenre.getOrDefault(genre, EMPTY));
+                    }
+                } else {
+                    BitSet any = new BitSet();
+                    for (String genre : genres) {
+                        any.or(state.byGenre.getOrDefault(genre, EMPTY));
+                    }
+                    result.and(any);
+                }
+            }
+
+            int count = result.cardinality();
+            if (count > maxIds) {
+                return new Match(count, null);
+            }
+            UUID[] ids = new UUID[count];
+            int i = 0;
+            for (int ordinal = result.nextSetBit(0); ordinal >= 0; ordinal = result.nextSetBit(ordinal + 1)) {
+                ids[i++] = state.ids.get(ordinal);
+            }
+            return new Match(count, ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Parses the comma-separated genre form into the lowercase names used as index keys
+    public static Set<String> parseGenres(String genres) {
+        Set<String> parsed = new LinkedHashSet<>();
+        if (genres != null) {
+            for (String genre : genres.split(",")) {
+                String name = genre.trim();
+                if (!name.isEmpty()) {
+                    parsed.add(name.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return parsed;
+    }
+
+    static class Entry {
+        private final UUID id;
+        private final String mediaType; // null marks a deleted entry
+        private final String ageRestriction;
+        private final Set<String> genres;
+
+        Entry(UUID id, String mediaType, String ageRestriction, Set<String> genres) {
+            this.id = id;
+            this.mediaType = mediaType;
+            this.ageRestriction = ageRestriction;
+            this.genres = genres;
+        }
+    }
+
+    // The index itself; not thread-safe, guarded by the lock of the enclosing CatalogIndex
+    static class State {
+        private final List<UUID> ids = new ArrayList<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private final Map<UUID, Integer> ordinals = new HashMap<>();
+        private final BitSet live = new BitSet();
+        private final Map<String, BitSet> byGenre = new HashMap<>();
+        private final Map<String, BitSet> byType = new HashMap<>();
+        private final Map<String, BitSet> byAge = new HashMap<>();
+
+        void put(Entry entry) {
+            Integer ordinal = ordinals.get(entry.id);
+            if (ordinal == null) {
+                if (entry.mediaType == null) {
+                    return;
+                }
+                ordinal = ids.size();
+                ids.add(entry.id);
+                entries.add(null);
+                ordinals.put(entry.id, ordinal);
+            } else {
+                clear(ordinal, entries.get(ordinal));
+            }
+
+            entries.set(ordinal, entry);
+            if (entry.mediaType == null) {
+                return;
+            }
+            live.set(ordinal);
+            byType.computeIfAbsent(entry.mediaType, k -> new BitSet()).set(ordinal);
+            if (entry.ageRestriction != null) {
+                byAge.computeIfAbsent(entry.ageRestriction, k -> new BitSet()).set(ordinal);
+            }
+            for (String genre : entry.genres) {
+                byGenre.computeIfAbsent(genre, k -> new BitSet()).set(ordinal);
+            }
+        }
+
+        private void clear(int ordinal, Entry previous) {
+            live.clear(ordinal);
+            if (previous == null || previous.mediaType == null) {
+                return;
+            }
+            byType.get(previous.mediaType).clear(ordinal);
+            if (previous.ageRestriction != null) {
+                byAge.get(previous.ageRestriction).clear(ordinal);
+            }
+            for (String genre : previous.genres) {
+                byGenre.get(genre).clear(ordinal);
+            }
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package org.example.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Item-to-item similarity for recommendations: cosine similarity of the item columns of the user x item
+// interaction matrix, shrunk towards 0 for pairs with few users in common (sim * n / (n + shrink)),
+// keeping the k most similar items per item. Items and users are dense int ordinals and every vector is
+// a pair of primitive arrays, rows are computed in parallel on a fork/join pool.
+public class ItemSimilarity {
+    private static final int ROWS_PER_TASK = 64;
+
+    private final int[][] neighbours;
+    private final float[][] similarities;
+    private final int k;
+
+    private ItemSimilarity(int[][] neighbours, float[][] similarities, int k) {
+        this.neighbours = neighbours;
+        this.similarities = similarities;
+        this.k = k;
+    }
+
+    // Sparse interaction matrix in compressed rows by item, and the transpose by user.
+    // Weights of the same (item, user) pair are summed, pairs that end up at 0 are dropped.
+    public static class Interactions {
+        private final int items;
+        private final int users;
+        private final int[] itemOffsets;
+        private final int[] itemUsers;
+        private final float[] itemWeights;
+        private final int[] userOffsets;
+        private final int[] userItems;
+        private final float[] userWeights;
+        private final float[] norms;
+
+        private Interactions(int items, int users, int[] itemOffsets, int[] itemUsers, float[] itemWeights) {
+            this.items = items;
+            this.users = users;
+            this.itemOffsets = itemOffsets;
+            this.itemUsers = itemUsers;
+            this.itemWeights = itemWeights;
+
+            // Transpose by counting sort
+            int size = itemUsers.length;
+            userOffsets = new int[users + 1];
+            for (int i = 0; i < size; i++) {
+                userOffsets[itemUsers[i] + 1]++;
+            }
+            for (int u = 0; u < users; u++) {
+                userOffsets[u + 1] += userOffsets[u];
+            }
+            userItems = new int[size];
+            userWeights = new float[size];
+            int[] next = Arrays.copyOf(userOffsets, users);
+            norms = new float[items];
+            for (int item = 0; item < items; item++) {
+                double norm = 0;
+                for (int p = itemOffsets[item]; p < itemOffsets[item + 1]; p++) {
+                    int at = next[itemUsers[p]]++;
+                    userItems[at] = item;
+                    userWeights[at] = itemWeights[p];
+                    norm += (double) itemWeights[p] * itemWeights[p];
+                }
+                norms[item] = (float) Math.sqrt(norm);
+            }
+        }
+
+        public int getItems() { return items; }
+        public int getUsers() { return users; }
+        public int getSize() { return itemUsers.length; }
+
+        // Copy of this matrix with the rows of the given items replaced by the ones in rows;
+        // the matrix may grow to more items and users at the same time
+        public Interactions replaceRows(int[] replaced, Builder rows) {
+            boolean[] skip = new boolean[Math.max(items, rows.items)];
+            for (int item : replaced) {
+                skip[item] = true;
+            }
+            Builder builder = new Builder(Math.max(items, rows.items), Math.max(users, rows.users));
+            for (int item = 0; item < items; item++) {
+                if (!skip[item]) {
+                    for (int p = itemOffsets[item]; p < itemOffsets[item + 1]; p++) {
+                        builder.add(item, itemUsers[p], itemWeights[p]);
+                    }
+                }
+            }
+            for (int i = 0; i < rows.size; i++) {
+                builder.add(rows.itemOf[i], rows.userOf[i], rows.weightOf[i]);
+            }
+            return builder.build();
+        }
+
+        // The n items with the largest sum of positive weights, most popular first
+        public int[] mostPopular(int n) {
+            TopK top = new TopK(Math.min(n, items));
+            for (int item = 0; item < items; item++) {
+                float sum = 0;
+                for (int p = itemOffsets[item]; p < itemOffsets[item + 1]; p++) {
+                    sum += Math.max(0, itemWeights[p]);
+                }
+                if (sum > 0) {
+                    top.offer(item, sum);
+                }
+            }
+            int[] popular = new int[top.size()];
+            top.drainSorted(popular, new float[popular.length]);
+            return popular;
+        }
+
+        public long estimateBytes() {
+            return 4L * (itemOffsets.length + itemUsers.length + itemWeights.length
+                    + userOffsets.length + userItems.length + userWeights.length + norms.length);
+        }
+    }
+
+    // Collects (item, user, weight) triples in growable primitive arrays
+    public static class Builder {
+        private int items;
+        private int users;
+        private int size;
+        private int[] itemOf = new int[1024];
+        private int[] userOf = new int[1024];
+        private float[] weightOf = new float[1024];
+
+        public Builder(int items, int users) {
+            this.items = items;
+            this.users = users;
+        }
+
+        public void add(int item, int user, float weight) {
+            if (size == itemOf.length) {
+                int capacity = size * 2;
+                itemOf = Arrays.copyOf(itemOf, capacity);
+                userOf = Arrays.copyOf(userOf, capacity);
+                weightOf = Arrays.copyOf(weightOf, capacity);
+            }
+            itemOf[size] = item;
+            userOf[size] = user;
+            weightOf[size] = weight;
+            size++;
+            items = Math.max(items, item + 1);
+            users = Math.max(users, user + 1);
+        }
+
+        public Interactions build() {
+            // Counting sort by item, then merge duplicate users per row
+            int[] offsets = new int[items + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[itemOf[i] + 1]++;
+            }
+            for (int item = 0; item < items; item++) {
+                offsets[item + 1] += offsets[item];
+            }
+            int[] rowUsers = new int[size];
+            float[] rowWeights = new float[size];
+            int[] next = Arrays.copyOf(offsets, items);
+            for (int i = 0; i < size; i++) {
+                int at = next[itemOf[i]]++;
+                rowUsers[at] = userOf[i];
+                rowWeights[at] = weightOf[i];
+            }
+
+            int[] position = new int[users];
+            Arrays.fill(position, -1);
+            int[] compactOffsets = new int[items + 1];
+            int written = 0;
+            for (int item = 0; item < items; item++) {
+                int rowStart = written;
+                for (int p = offsets[item]; p < offsets[item + 1]; p++) {
+                    int user = rowUsers[p];
+                    if (position[user] >= rowStart) {
+                        rowWeights[position[user]] += rowWeights[p];
+                    } else {
+                        position[user] = written;
+                        rowUsers[written] = user;
+                        rowWeights[written] = rowWeights[p];
+                        written++;
+                    }
+                }
+                // Drop pairs whose weights cancelled out
+                int kept = rowStart;
+                for (int p = rowStart; p < written; p++) {
+                    position[rowUsers[p]] = -1;
+                    if (rowWeights[p] != 0) {
+                        rowUsers[kept] = rowUsers[p];
+                        rowWeights[kept] = rowWeights[p];
+                        kept++;
+                    }
+                }
+                written = kept;
+                compactOffsets[item + 1] = written;
+            }
+            return new Interactions(items, users, compactOffsets,
+                    Arrays.copyOf(rowUsers, written), Arrays.copyOf(rowWeights, written));
+        }
+    }
+
+    // Computes every row
+    public static ItemSimilarity compute(Interactions matrix, int k, float shrink, ForkJoinPool pool) {
+        int[][] neighbours = new int[matrix.items][];
+        float[][] similarities = new float[matrix.items][];
+        int[] rows = new int[matrix.items];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        pool.invoke(new RowTask(matrix, k, shrink, rows, 0, rows.length, neighbours, similarities, null));
+        return new ItemSimilarity(neighbours, similarities, k);
+    }
+
+    // Recomputes the rows of the changed items against the new matrix and patches their similarities into
+    // the rows of all other items. Those keep their other neighbours, so an item that drops out of a row
+    // is not replaced by the next best one until the next full compute.
+    public ItemSimilarity update(Interactions matrix, int[] changed, float shrink, ForkJoinPool pool) {
+        int[][] neighbours = Arrays.copyOf(this.neighbours, matrix.items);
+        float[][] similarities = Arrays.copyOf(this.similarities, matrix.items);
+        boolean[] isChanged = new boolean[matrix.items];
+        for (int item : changed) {
+            isChanged[item] = true;
+        }
+
+        // Similarities of other items to the changed ones, found while computing the changed rows
+        List<Patch> patches = new ArrayList<>();
+        pool.invoke(new RowTask(matrix, k, shrink, changed, 0, changed.length, neighbours, similarities, patches));
+
+        // Drop the old similarities to changed items from all other rows, then add the new ones
+        for (int item = 0; item < neighbours.length; item++) {
+            if (isChanged[item] || neighbours[item] == null) {
+                continue;
+            }
+            int[] row = neighbours[item];
+            int kept = 0;
+            for (int neighbour : row) {
+                if (!isChanged[neighbour]) {
+                    kept++;
+                }
+            }
+            if (kept < row.length) {
+                int[] keptItems = new int[kept];
+                float[] keptSims = new float[kept];
+                int n = 0;
+                for (int p = 0; p < row.length; p++) {
+                    if (!isChanged[row[p]]) {
+                        keptItems[n] = row[p];
+                        keptSims[n] = similarities[item][p];
+                        n++;
+                    }
+                }
+                neighbours[item] = keptItems;
+                similarities[item] = keptSims;
+            }
+        }
+        for (Patch patch : patches) {
+            for (int p = 0; p < patch.size; p++) {
+                if (!isChanged[patch.items[p]]) {
+                    insert(neighbours, similarities, patch.items[p], patch.changed[p], patch.similarities[p]);
+                }
+            }
+        }
+        return new ItemSimilarity(neighbours, similarities, k);
+    }
+
+    // Adds one neighbour to a row kept sorted by similarity, if it makes the top k
+    private void insert(int[][] neighbours, float[][] similarities, int item, int neighbour, float similarity) {
+        int[] row = neighbours[item] == null ? new int[0] : neighbours[item];
+        float[] sims = similarities[item] == null ? new float[0] : similarities[item];
+        if (row.length >= k && similarity <= sims[row.length - 1]) {
+            return;
+        }
+        int at = 0;
+        while (at < row.length && sims[at] >= similarity) {
+            at++;
+        }
+        int length = Math.min(row.length + 1, k);
+        int[] newRow = new int[length];
+        float[] newSims = new float[length];
+        System.arraycopy(row, 0, newRow, 0, at);
+        System.arraycopy(sims, 0, newSims, 0, at);
+        newRow[at] = neighbour;
+        newSims[at] = similarity;
+        System.arraycopy(row, at, newRow, at + 1, length - at - 1);
+        System.arraycopy(sims, at, newSims, at + 1, length - at - 1);
+        neighbours[item] = newRow;
+        similarities[item] = newSims;
+    }
+
+    // Scores the items similar to the ones a user interacted with: sum of weight * similarity over the
+    // user's items. Items in exclude (sorted) are skipped. Writes up to outItems.length best items with a
+    // positive score, best first, and returns how many.
+    public int recommend(int[] items, float[] weights, int[] exclude, int[] outItems, float[] outScores) {
+        int candidates = 0;
+        for (int item : items) {
+            if (item < neighbours.length && neighbours[item] != null) {
+                candidates += neighbours[item].length;
+            }
+        }
+        if (candidates == 0) {
+            return 0;
+        }
+
+        // Open addressing map from item to accumulated score
+        int capacity = Integer.highestOneBit(candidates * 2 - 1) << 1;
+        int[] keys = new int[capacity];
+        float[] scores = new float[capacity];
+        Arrays.fill(keys, -1);
+        int mask = capacity - 1;
+        for (int i = 0; i < items.length; i++) {
+            int item = items[i];
+            if (item >= neighbours.length || neighbours[item] == null) {
+                continue;
+            }
+            int[] row = neighbours[item];
+            float[] sims = similarities[item];
+            for (int p = 0; p < row.length; p++) {
+                int slot = (row[p] * 0x9E3779B9) & mask;
+                while (keys[slot] != -1 && keys[slot] != row[p]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = row[p];
+                scores[slot] += weights[i] * sims[p];
+            }
+        }
+
+        TopK top = new TopK(outItems.length);
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys[slot] != -1 && scores[slot] > 0 && Arrays.binarySearch(exclude, keys[slot]) < 0) {
+                top.offer(keys[slot], scores[slot]);
+            }
+        }
+        return top.drainSorted(outItems, outScores);
+    }
+
+    public int getItems() {
+        return neighbours.length;
+    }
+
+    // Approximate heap use of the neighbour lists, including the array headers
+    public long estimateBytes() {
+        long bytes = 32L * neighbours.length;
+        for (int[] row : neighbours) {
+            if (row != null) {
+                bytes += 2 * (16 + 4L * row.length);
+            }
+        }
+        return bytes;
+    }
+
+    // Computes a range of rows; leaves fork until they are at most ROWS_PER_TASK rows
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Interactions m;
+        private final int k;
+        private final float shrink;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final int[][] neighbours;
+        private final float[][] similarities;
+        private final List<Patch> patches;
+
+        RowTask(Interactions m, int k, float shrink, int[] rows, int from, int to,
+                int[][] neighbours, float[][] similarities, List<Patch> patches) {
+            this.m = m;
+            this.k = k;
+            this.shrink = shrink;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.neighbours = neighbours;
+            this.similarities = similarities;
+            this.patches = patches;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowTask(m, k, shrink, rows, from, middle, neighbours, similarities, patches),
+                        new RowTask(m, k, shrink, rows, middle, to, neighbours, similarities, patches));
+                return;
+            }
+
+            // Dense accumulators over all items, reset through the touched list after every row
+            float[] dots = new float[m.items];
+            int[] counts = new int[m.items];
+            int[] touched = new int[m.items];
+            TopK top = new TopK(k);
+            Patch found = patches == null ? null : new Patch();
+
+            for (int r = from; r < to; r++) {
+                int item = rows[r];
+                int size = 0;
+                for (int p = m.itemOffsets[item]; p < m.itemOffsets[item + 1]; p++) {
+                    int user = m.itemUsers[p];
+                    float weight = m.itemWeights[p];
+                    for (int q = m.userOffsets[user]; q < m.userOffsets[user + 1]; q++) {
+                        int other = m.userItems[q];
+                        if (other == item) {
+                            continue;
+                        }
+                        if (counts[other]++ == 0) {
+                            touched[size++] = other;
+                        }
+                        dots[other] += weight * m.userWeights[q];
+                    }
+                }
+
+                for (int t = 0; t < size; t++) {
+                    int other = touched[t];
+                    float norms = m.norms[item] * m.norms[other];
+                    float similarity = norms == 0 ? 0 : dots[other] / norms * counts[other] / (counts[other] + shrink);
+                    dots[other] = 0;
+                    counts[other] = 0;
+                    if (similarity <= 0) {
+                        continue;
+                    }
+                    top.offer(other, similarity);
+                    if (found != null) {
+                        found.add(other, item, similarity);
+                    }
+                }
+
+                int[] rowItems = new int[top.size()];
+                float[] rowSims = new float[top.size()];
+                top.drainSorted(rowItems, rowSims);
+                neighbours[item] = rowItems;
+                similarities[item] = rowSims;
+            }
+
+            if (found != null && found.size > 0) {
+                synchronized (patches) {
+                    patches.add(found);
+                }
+            }
+        }
+    }
+
+    // Triples (item, changed item, similarity) collected by one RowTask
+    private static class Patch {
+        private int size;
+        private int[] items = new int[256];
+        private int[] changed = new int[256];
+        private float[] similarities = new float[256];
+
+        void add(int item, int changedItem, float similarity) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                changed = Arrays.copyOf(changed, size * 2);
+                similarities = Arrays.copyOf(similarities, size * 2);
+            }
+            items[size] = item;
+            changed[size] = changedItem;
+            similarities[size] = similarity;
+            size++;
+        }
+    }
+
+    // Bounded min-heap of (item, score) keeping the largest scores
+    private static class TopK {
+        private final int[] items;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            items = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void offer(int item, float score) {
+            if (items.length == 0) {
+                return;
+            }
+            if (size < items.length) {
+                items[size] = item;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                items[0] = item;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        // Empties the heap into the arrays, highest score first
+        int drainSorted(int[] outItems, float[] outScores) {
+            int count = size;
+            while (size > 0) {
+                size--;
+                outItems[size] = items[0];
+                outScores[size] = scores[0];
+                items[0] = items[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            return count;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int item = items[a];
+            items[a] = items[b];
+            items[b] = item;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
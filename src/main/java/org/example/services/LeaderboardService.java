@@ -0,0 +1,566 @@
+package org.example.services;
+
+import org.example.db.Database;
+import org.example.utils.Config;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Activity leaderboard: per user the ratings written and the likes received on them, score = both summed.
+// Every window keeps its scores in an order-statistic tree, so the top K take O(log n + K) and the rank
+// of one user O(log n), instead of a GROUP BY over ratings per request.
+// Windows are all-time plus the last N days for every N in mrp.leaderboard.windowDays ("7,30"), counted
+// in calendar days including today. Activity is also kept in day buckets, which are subtracted from a
+// window again when it moves past them.
+// Like CatalogIndex, the database stays the source of truth: the leaderboard is loaded at startup, the
+// handlers report their writes as events, and a periodic rebuild picks up anything written elsewhere.
+public class LeaderboardService {
+    public static final String ALL_TIME = "all";
+    private static final int FETCH_SIZE = Config.getInt("mrp.leaderboard.fetchSize", 10000);
+
+    private static LeaderboardService instance;
+
+    private final int[] windowDays = parseWindowDays(Config.get("mrp.leaderboard.windowDays", "7,30"));
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "leaderboard-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private State state = new State(windowDays, today());
+    // Events that happen while a rebuild is loading, replayed onto the new state before it is swapped in
+    private List<Event> pendingEvents;
+
+    // Place of one user in a window; users with the same score share a rank
+    public static class Standing {
+        private final UUID userId;
+        private final int rank;
+        private final long ratings;
+        private final long likesReceived;
+
+        Standing(UUID userId, int rank, long ratings, long likesReceived) {
+            this.userId = userId;
+            this.rank = rank;
+            this.ratings = ratings;
+            this.likesReceived = likesReceived;
+        }
+
+        public UUID getUserId() { return userId; }
+        public int getRank() { return rank; }
+        public long getRatings() { return ratings; }
+        public long getLikesReceived() { return likesReceived; }
+        public long getScore() { return ratings + likesReceived; }
+    }
+
+    // Top of a window plus the caller's own standing (null without activity in the window)
+    public static class Board {
+        private final List<Standing> top;
+        private final Standing user;
+        private final int rankedUsers;
+
+        Board(List<Standing> top, Standing user, int rankedUsers) {
+            this.top = top;
+            this.user = user;
+            this.rankedUsers = rankedUsers;
+        }
+
+        public List<Standing> getTop() { return top; }
+        public Standing getUser() { return user; }
+        public int getRankedUsers() { return rankedUsers; }
+    }
+
+    protected LeaderboardService() {}
+
+    public static synchronized LeaderboardService getInstance() {
+        if (instance == null) {
+            instance = new LeaderboardService();
+        }
+        return instance;
+    }
+
+    // Loads the leaderboard and schedules the periodic rebuild (0 disables it)
+    public void start(long rebuildIntervalMillis) throws SQLException, IOException {
+        rebuild();
+        if (rebuildIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    System.err.println("Leaderboard rebuild failed: " + e.getMessage());
+                }
+            }, rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Window names accepted by top(): "all" and "<days>d"
+    public List<String> getWindows() {
+        List<String> windows = new ArrayList<>();
+        windows.add(ALL_TIME);
+        for (int days : windowDays) {
+            windows.add(days + "d");
+        }
+        return windows;
+    }
+
+    // Loads fresh counts from the database, grouped by user and day, and swaps them in
+    public void rebuild() throws SQLException, IOException {
+        long startedAt = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pendingEvents = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        State loaded = new State(windowDays, today());
+        try {
+            load(loaded);
+        } catch (SQLException | IOException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pendingEvents = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // An event whose write committed just before the load read it is counted twice here;
+            // that is rare enough to leave to the next rebuild
+            for (Event event : pendingEvents) {
+                loaded.apply(event.userId, event.day, event.ratings, event.likes);
+            }
+            pendingEvents = null;
+            loaded.roll(today());
+            state = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("Leaderboard built: " + loaded.allTime.scores.size() + " active users in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+    }
+
+    // Reads the ratings and received likes per user and day into the given state
+    @SuppressWarnings("try")
+    void load(State loaded) throws SQLException, IOException {
+        Database db = Database.getInstance();
+        try (Database.Lease lease = db.lease()) {
+            db.stream("SELECT user_id, CAST(created_at AS DATE), COUNT(*) FROM ratings " +
+                    "WHERE user_id IS NOT NULL GROUP BY 1, 2", FETCH_SIZE, rs -> {
+                while (rs.next()) {
+                    loaded.apply(db.getUUID(rs, 1), day(rs.getDate(2)), rs.getLong(3), 0);
+                }
+            });
+            db.stream("SELECT r.user_id, CAST(l.created_at AS DATE), COUNT(*) FROM rating_likes l " +
+                    "JOIN ratings r ON r.id = l.rating_id WHERE r.user_id IS NOT NULL GROUP BY 1, 2", FETCH_SIZE, rs -> {
+                while (rs.next()) {
+                    loaded.apply(db.getUUID(rs, 1), day(rs.getDate(2)), 0, rs.getLong(3));
+                }
+            });
+        }
+    }
+
+    // Events, called after the write is committed. The timestamps are the created_at of the rating or
+    // like (null means now), which decides the windows the change counts in.
+
+    public void ratingAdded(UUID userId, Timestamp createdAt) {
+        record(userId, createdAt, 1, 0);
+    }
+
+    public void ratingRemoved(UUID userId, Timestamp createdAt) {
+        record(userId, createdAt, -1, 0);
+    }
+
+    // authorId is the user who wrote the liked rating
+    public void likeAdded(UUID authorId, Timestamp likedAt) {
+        record(authorId, likedAt, 0, 1);
+    }
+
+    public void likeRemoved(UUID authorId, Timestamp likedAt) {
+        record(authorId, likedAt, 0, -1);
+    }
+
+    private void record(UUID userId, Timestamp at, long ratings, long likes) {
+        Event event = new Event(userId, at == null ? today() : at.toLocalDateTime().toLocalDate().toEpochDay(), ratings, likes);
+        lock.writeLock().lock();
+        try {
+            state.roll(today());
+            state.apply(event.userId, event.day, event.ratings, event.likes);
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The first limit users of a window and the standing of userId (may be null), or null for an unknown window
+    public Board top(String window, int limit, UUID userId) {
+        rollForward();
+        lock.readLock().lock();
+        try {
+            Window w = state.window(window);
+            if (w == null) {
+                return null;
+            }
+
+            List<Standing> top = new ArrayList<>(Math.min(limit, w.ranking.size()));
+            int[] position = {0, 0}; // entries seen, rank of the current score
+            long[] previous = {Long.MIN_VALUE};
+            w.ranking.forEach(limit, (score, id) -> {
+                position[0]++;
+                if (score != previous[0]) {
+                    position[1] = position[0];
+                    previous[0] = score;
+                }
+                Score s = w.scores.get(id);
+                top.add(new Standing(id, position[1], s.ratings, s.likes));
+            });
+
+            Standing user = null;
+            Score own = userId == null ? null : w.scores.get(userId);
+            if (own != null) {
+                user = new Standing(userId, w.ranking.countAbove(own.total()) + 1, own.ratings, own.likes);
+            }
+            return new Board(top, user, w.ranking.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Moves the day windows on if the date changed since the last event
+    private void rollForward() {
+        long today = today();
+        boolean stale;
+        lock.readLock().lock();
+        try {
+            stale = state.today < today;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (stale) {
+            lock.writeLock().lock();
+            try {
+                state.roll(today);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    // Rows without a created_at only count all-time
+    private static long day(Date date) {
+        return date == null ? Long.MIN_VALUE : date.toLocalDate().toEpochDay();
+    }
+
+    private static int[] parseWindowDays(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .filter(days -> days > 0)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    private static class Event {
+        private final UUID userId;
+        private final long day;
+        private final long ratings;
+        private final long likes;
+
+        Event(UUID userId, long day, long ratings, long likes) {
+            this.userId = userId;
+            this.day = day;
+            this.ratings = ratings;
+            this.likes = likes;
+        }
+    }
+
+    private static class Score {
+        private final long ratings;
+        private final long likes;
+
+        Score(long ratings, long likes) {
+            this.ratings = ratings;
+            this.likes = likes;
+        }
+
+        long total() {
+            return ratings + likes;
+        }
+    }
+
+    // Scores of all users in one window, 0 days for all-time
+    private static class Window {
+        private final int days;
+        private final Map<UUID, Score> scores = new HashMap<>();
+        private final Ranking ranking = new Ranking();
+
+        Window(int days) {
+            this.days = days;
+        }
+
+        void add(UUID userId, long ratings, long likes) {
+            Score previous = scores.get(userId);
+            if (previous != null) {
+                ranking.remove(previous.total(), userId);
+                ratings += previous.ratings;
+                likes += previous.likes;
+            }
+            if (ratings <= 0 && likes <= 0) {
+                scores.remove(userId);
+                return;
+            }
+            Score score = new Score(ratings, likes);
+            scores.put(userId, score);
+            ranking.insert(score.total(), userId);
+        }
+    }
+
+    // The leaderboard itself; not thread-safe, guarded by the lock of the enclosing LeaderboardService
+    static class State {
+        private final Window allTime = new Window(0);
+        private final Window[] windows;
+        private final int maxDays;
+        // Activity per day and user ({ratings, likes}) for the days still inside the longest window
+        private final TreeMap<Long, Map<UUID, long[]>> days = new TreeMap<>();
+        private long today;
+
+        State(int[] windowDays, long today) {
+            windows = new Window[windowDays.length];
+            for (int i = 0; i < windowDays.length; i++) {
+                windows[i] = new Window(windowDays[i]);
+            }
+            maxDays = windowDays.length == 0 ? 0 : windowDays[windowDays.length - 1];
+            this.today = today;
+        }
+
+        Window window(String name) {
+            if (name.equals(ALL_TIME)) {
+                return allTime;
+            }
+            for (Window window : windows) {
+                if (name.equals(window.days + "d")) {
+                    return window;
+                }
+            }
+            return null;
+        }
+
+        // A window of N days covers the days after today - N
+        void apply(UUID userId, long day, long ratings, long likes) {
+            day = Math.min(day, today); // clock differences between database and server
+            allTime.add(userId, ratings, likes);
+            if (day <= today - maxDays) {
+                return;
+            }
+            long[] counts = days.computeIfAbsent(day, d -> new HashMap<>()).computeIfAbsent(userId, id -> new long[2]);
+            counts[0] += ratings;
+            counts[1] += likes;
+            for (Window window : windows) {
+                if (day > today - window.days) {
+                    window.add(userId, ratings, likes);
+                }
+            }
+        }
+
+        // Takes the day buckets that fall out of each window when the date moves to newToday
+        void roll(long newToday) {
+            if (newToday <= today) {
+                return;
+            }
+            for (Window window : windows) {
+                for (Map<UUID, long[]> bucket : days.subMap(today - window.days, false, newToday - window.days, true).values()) {
+                    for (Map.Entry<UUID, long[]> entry : bucket.entrySet()) {
+                        window.add(entry.getKey(), -entry.getValue()[0], -entry.getValue()[1]);
+                    }
+                }
+            }
+            days.headMap(newToday - maxDays, true).clear();
+            today = newToday;
+        }
+    }
+
+    // Order-statistic treap over (score descending, user id): every node knows the size of its subtree,
+    // which gives the number of users ahead of a score in O(log n)
+    private static class Ranking {
+        private final Random random = new Random();
+        private Node root;
+
+        private static class Node {
+            private final long score;
+            private final UUID userId;
+            private final int priority;
+            private int size = 1;
+            private Node left;
+            private Node right;
+
+            Node(long score, UUID userId, int priority) {
+                this.score = score;
+                this.userId = userId;
+                this.priority = priority;
+            }
+        }
+
+        interface Visitor {
+            void visit(long score, UUID userId);
+        }
+
+        int size() {
+            return size(root);
+        }
+
+        void insert(long score, UUID userId) {
+            root = insert(root, new Node(score, userId, random.nextInt()));
+        }
+
+        void remove(long score, UUID userId) {
+            root = remove(root, score, userId);
+        }
+
+        // Number of users with a higher score
+        int countAbove(long score) {
+            int count = 0;
+            Node node = root;
+            while (node != null) {
+                if (node.score > score) {
+                    count += size(node.left) + 1;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return count;
+        }
+
+        // Visits the first limit users in order
+        void forEach(int limit, Visitor visitor) {
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            int visited = 0;
+            while ((node != null || !stack.isEmpty()) && visited < limit) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                visitor.visit(node.score, node.userId);
+                visited++;
+                node = node.right;
+            }
+        }
+
+        private static int compare(long score, UUID userId, Node node) {
+            if (score != node.score) {
+                return score > node.score ? -1 : 1;
+            }
+            return userId.compareTo(node.userId);
+        }
+
+        private static Node insert(Node node, Node added) {
+            if (node == null) {
+                return added;
+            }
+            if (compare(added.score, added.userId, node) < 0) {
+                node.left = insert(node.left, added);
+                if (node.left.priority > node.priority) {
+                    node = rotateRight(node);
+                }
+            } else {
+                node.right = insert(node.right, added);
+                if (node.right.priority > node.priority) {
+                    node = rotateLeft(node);
+                }
+            }
+            update(node);
+            return node;
+        }
+
+        private static Node remove(Node node, long score, UUID userId) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = compare(score, userId, node);
+            if (cmp < 0) {
+                node.left = remove(node.left, score, userId);
+            } else if (cmp > 0) {
+                node.right = remove(node.right, score, userId);
+            } else {
+                return merge(node.left, node.right);
+            }
+            update(node);
+            return node;
+        }
+
+        private static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                update(left);
+                return left;
+            }
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+
+        private static Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = node;
+            update(node);
+            return left;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = node;
+            update(node);
+            return right;
+        }
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static void update(Node node) {
+            node.size = size(node.left) + size(node.right) + 1;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package org.example.services;
+
+import org.example.db.Database;
+import org.example.utils.Config;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Write-behind buffer for rating likes. Like and unlike only record the wanted state of the (rating, user)
+// pair in memory and add +1/-1 to a LongAdder of the rating, so a popular rating does not turn every click
+// into an update of its like_count row. A background flush writes all pending pairs in one transaction,
+// every mrp.likes.flushIntervalMs or as soon as mrp.likes.flushThreshold pairs are pending. The flush
+// states the outcome (insert if missing, delete if present) instead of applying deltas, so writing a batch
+// twice, e.g. retried after a failed commit, cannot count a like twice; the triggers on rating_likes count
+// only the rows that really changed. Pending likes are lost if the process dies before the next flush.
+// Reads add the pending delta to the stored like_count and take the user's pending state over the stored one;
+// readCounts() keeps them from seeing a flushed like both in like_count and in the delta. No database work
+// runs under the flush lock: likes and reads run their query first and start over if a flush committed
+// meanwhile, so none of them waits for the lock while it holds a pooled connection.
+// The leaderboard hears of a like or unlike once the flush has written it, so it counts what rating_likes
+// holds, the same as its rebuild. A like whose rating is deleted before the flush is never written and never
+// counted, an unlike of a like the delete cascaded is left to the delete.
+public class LikeBuffer {
+    private static final int FLUSH_THRESHOLD = Config.getInt("mrp.likes.flushThreshold", 1000);
+
+    private static LikeBuffer instance;
+
+    public enum Outcome { CHANGED, UNCHANGED, NOT_FOUND }
+
+    private final LeaderboardService leaderboard;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "like-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ConcurrentHashMap<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, LongAdder> deltas = new ConcurrentHashMap<>();
+    // Likes and unlikes take the read lock to update the pending pairs, the flush takes the write lock to
+    // snapshot them and to rebase them on what it wrote. Neither holds it across a query.
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    // Counts commits and their rebases: odd from right before a flush commits until its rebase is done. A
+    // query that ran while it stayed even and unchanged saw the same flushes as the pending pairs and deltas.
+    private volatile long flushes; // only written inside flush(), which is synchronized
+    private final Object flushesLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Accepted likes and unlikes per media entry of the liked rating, for the validators of its detail
+    private final ConcurrentHashMap<UUID, MediaChanges> mediaChanges = new ConcurrentHashMap<>();
+    // Likes from before a restart are unknown here, so they count as changed at the start
+    private final long startedMillis = System.currentTimeMillis();
+    private Map<Key, Pending> flushing = Map.of(); // guarded by flushLock
+
+    static final class Key {
+        final UUID ratingId;
+        final UUID userId;
+
+        Key(UUID ratingId, UUID userId) {
+            this.ratingId = ratingId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return ratingId.equals(other.ratingId) && userId.equals(other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ratingId, userId);
+        }
+    }
+
+    // Wanted state of a pair against the state stored in rating_likes; likedAt and storedAt are the
+    // created_at of the respective like, authorId the author of the rating. A pair whose wanted state equals
+    // the stored one is dropped, unless it is part of a running flush (see rebase).
+    static final class Pending {
+        final UUID authorId;
+        final boolean liked;
+        final Timestamp likedAt;
+        final boolean stored;
+        final Timestamp storedAt;
+
+        Pending(UUID authorId, boolean liked, Timestamp likedAt, boolean stored, Timestamp storedAt) {
+            this.authorId = authorId;
+            this.liked = liked;
+            this.likedAt = likedAt;
+            this.stored = stored;
+            this.storedAt = storedAt;
+        }
+    }
+
+    // Number of likes and unlikes accepted on the ratings of one media entry, and when the last one was
+    private static final class MediaChanges {
+        private final long version;
+        private final long lastChangeMillis;
+
+        MediaChanges(long version, long lastChangeMillis) {
+            this.version = version;
+            this.lastChangeMillis = lastChangeMillis;
+        }
+    }
+
+    protected LikeBuffer() {
+        this(LeaderboardService.getInstance());
+    }
+
+    LikeBuffer(LeaderboardService leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    public static synchronized LikeBuffer getInstance() {
+        if (instance == null) {
+            instance = new LikeBuffer();
+        }
+        return instance;
+    }
+
+    // Flushes at the given interval from now on (0 leaves flushing to the size threshold and stop())
+    public void start(long flushIntervalMillis) {
+        if (flushIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Writes what is still pending; call after the server stopped taking requests
+    public void stop() {
+        scheduler.shutdownNow();
+        flushQuietly();
+    }
+
+    public Outcome like(UUID ratingId, UUID userId) throws SQLException {
+        return change(ratingId, userId, true);
+    }
+
+    public Outcome unlike(UUID ratingId, UUID userId) throws SQLException {
+        return change(ratingId, userId, false);
+    }
+
+    private Outcome change(UUID ratingId, UUID userId, boolean liked) throws SQLException {
+        Key key = new Key(ratingId, userId);
+        UUID authorId;
+        UUID mediaId;
+        boolean[] changed = new boolean[1];
+
+        while (true) {
+            long flushed = awaitSettled();
+            Object[] stored = lookup(ratingId, userId);
+            if (stored == null) {
+                return Outcome.NOT_FOUND;
+            }
+            UUID author = (UUID) stored[0];
+
+            flushLock.readLock().lock();
+            try {
+                // A flush that committed and rebased since the lookup may have dropped the pair and changed the
+                // stored state the lookup saw
+                if (flushes != flushed) {
+                    continue;
+                }
+
+                pending.compute(key, (k, current) -> {
+                    if (current == null) {
+                        current = new Pending(author, stored[1] != null, (Timestamp) stored[1], stored[1] != null, (Timestamp) stored[1]);
+                    }
+                    if (current.liked == liked) {
+                        return current.liked == current.stored && !flushing.containsKey(k) ? null : current;
+                    }
+                    // Liking again before the unlike was flushed keeps the stored like and its date
+                    Timestamp likedAt = !liked ? null
+                            : current.stored ? current.storedAt : new Timestamp(System.currentTimeMillis());
+                    changed[0] = true;
+                    deltas.computeIfAbsent(ratingId, id -> new LongAdder()).add(liked ? 1 : -1);
+                    Pending next = new Pending(author, liked, likedAt, current.stored, current.storedAt);
+                    return next.liked == next.stored && !flushing.containsKey(k) ? null : next;
+                });
+                authorId = author;
+                mediaId = (UUID) stored[2];
+                break;
+            } finally {
+                flushLock.readLock().unlock();
+            }
+        }
+
+        if (!changed[0]) {
+            return Outcome.UNCHANGED;
+        }
+        long now = System.currentTimeMillis();
+        mediaChanges.merge(mediaId, new MediaChanges(1, now), (previous, first) -> new MediaChanges(previous.version + 1, now));
+        if (pending.size() >= FLUSH_THRESHOLD && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                flushRequested.set(false); // shutting down, stop() flushes
+            }
+        }
+        return Outcome.CHANGED;
+    }
+
+    // The author of the rating, the created_at of the user's stored like (null if there is none) and the
+    // media entry of the rating, or null if the user cannot see the rating. Ratings are only likeable where they are visible: confirmed,
+    // or the user's own.
+    Object[] lookup(UUID ratingId, UUID userId) throws SQLException {
+        Database db = Database.getInstance();
+        return db.query(
+            "SELECT r.user_id, l.created_at, r.media_id FROM ratings r " +
+            "LEFT JOIN rating_likes l ON l.rating_id = r.id AND l.user_id = ? " +
+            "WHERE r.id = ? AND (r.is_confirmed = true OR r.user_id = ?)",
+            rs -> rs.next() ? new Object[]{db.getUUID(rs, 1), rs.getTimestamp(2), db.getUUID(rs, 3)} : null,
+            userId, ratingId, userId
+        );
+    }
+
+    @FunctionalInterface
+    public interface CountRead<T> {
+        T run() throws SQLException;
+    }
+
+    // Runs a read that loads like_count and adds pendingDelta() to it, again if a flush committed while it
+    // ran, so each like is either in like_count or in the delta, never in both or neither
+    public <T> T readCounts(CountRead<T> read) throws SQLException {
+        while (true) {
+            long flushed = awaitSettled();
+            T result = read.run();
+            if (flushes == flushed) {
+                return result;
+            }
+        }
+    }
+
+    // Waits while a flush is between its commit and the end of its rebase; returns the settled flush count
+    private long awaitSettled() throws SQLException {
+        long flushed = flushes;
+        if ((flushed & 1) == 0) {
+            return flushed;
+        }
+        synchronized (flushesLock) {
+            while (((flushed = flushes) & 1) != 0) {
+                try {
+                    flushesLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a like flush", e);
+                }
+            }
+        }
+        return flushed;
+    }
+
+    // Likes of the rating not yet written to like_count; add it to a like_count read inside readCounts()
+    public int pendingDelta(UUID ratingId) {
+        LongAdder delta = deltas.get(ratingId);
+        return delta == null ? 0 : (int) delta.sum();
+    }
+
+    // Whether the user likes the rating, given what rating_likes says
+    public boolean isLiked(UUID ratingId, UUID userId, boolean stored) {
+        Pending state = pending.get(new Key(ratingId, userId));
+        return state == null ? stored : state.liked;
+    }
+
+    // Moves with every like or unlike accepted on a rating of the media entry, for the validators of its detail
+    public long getMediaVersion(UUID mediaId) {
+        MediaChanges changes = mediaChanges.get(mediaId);
+        return changes == null ? 0 : changes.version;
+    }
+
+    // When the last like or unlike on a rating of the media entry was accepted, for Last-Modified of its detail
+    public long getLastChangeMillis(UUID mediaId) {
+        MediaChanges changes = mediaChanges.get(mediaId);
+        return changes == null ? startedMillis : changes.lastChangeMillis;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("Like flush failed: " + e.getMessage());
+        }
+    }
+
+    // Writes all pending pairs in one transaction, then rebases the pairs on what was written
+    public synchronized void flush() throws SQLException {
+        Map<Key, Pending> batch;
+        flushLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pending);
+            flushing = batch;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+
+        Set<Key> written = null;
+        try {
+            written = write(batch);
+        } finally {
+            flushLock.writeLock().lock();
+            try {
+                if (written != null) {
+                    batch.forEach(this::rebase);
+                } else {
+                    // Nothing changed in the database, only drop the pairs that went back to their stored state
+                    pending.values().removeIf(p -> p.liked == p.stored);
+                }
+                flushing = Map.of();
+                deltas.values().removeIf(delta -> delta.sum() == 0); // no change is running to add to them
+            } finally {
+                flushLock.writeLock().unlock();
+                if ((flushes & 1) != 0) {
+                    synchronized (flushesLock) {
+                        flushes++;
+                        flushesLock.notifyAll();
+                    }
+                }
+            }
+        }
+
+        for (Key key : written) {
+            Pending state = batch.get(key);
+            if (state.liked) {
+                leaderboard.likeAdded(state.authorId, state.likedAt);
+            } else {
+                leaderboard.likeRemoved(state.authorId, state.storedAt);
+            }
+        }
+    }
+
+    // Writes the batch and returns the pairs whose rating_likes row it inserted or deleted; pairs whose rating
+    // no longer exists are left out. Calls beforeCommit() right before the commit.
+    @SuppressWarnings("try")
+    Set<Key> write(Map<Key, Pending> batch) throws SQLException {
+        Database db = Database.getInstance();
+        List<UUID> likeRatings = new ArrayList<>();
+        List<UUID> likeUsers = new ArrayList<>();
+        List<Long> likeTimes = new ArrayList<>();
+        List<UUID> unlikeRatings = new ArrayList<>();
+        List<UUID> unlikeUsers = new ArrayList<>();
+        batch.forEach((key, state) -> {
+            if (state.liked && !state.stored) {
+                likeRatings.add(key.ratingId);
+                likeUsers.add(key.userId);
+                likeTimes.add(state.likedAt.getTime());
+            } else if (!state.liked && state.stored) {
+                unlikeRatings.add(key.ratingId);
+                unlikeUsers.add(key.userId);
+            }
+        });
+
+        Set<Key> written = new HashSet<>();
+        Database.ResultSetHandler<Void> collectWritten = rs -> {
+            while (rs.next()) {
+                written.add(new Key(db.getUUID(rs, 1), db.getUUID(rs, 2)));
+            }
+            return null;
+        };
+
+        try (Database.Lease lease = db.lease()) {
+            db.beginTransaction();
+            try {
+                // Likes of ratings deleted in the meantime are left out, they would break the foreign key. Both
+                // statements return the rows they really changed.
+                if (!likeRatings.isEmpty()) {
+                    db.query(
+                        "INSERT INTO rating_likes (rating_id, user_id, created_at) " +
+                        "SELECT u.rating_id, u.user_id, CAST(to_timestamp(u.liked_at / 1000.0) AS TIMESTAMP) " +
+                        "FROM unnest(CAST(? AS UUID[]), CAST(? AS UUID[]), CAST(? AS BIGINT[])) AS u(rating_id, user_id, liked_at) " +
+                        "JOIN ratings r ON r.id = u.rating_id " +
+                        "ON CONFLICT DO NOTHING " +
+                        "RETURNING rating_id, user_id",
+                        collectWritten,
+                        likeRatings.toArray(new UUID[0]), likeUsers.toArray(new UUID[0]),
+                        likeTimes.stream().mapToLong(Long::longValue).toArray()
+                    );
+                }
+                if (!unlikeRatings.isEmpty()) {
+                    db.query(
+                        "DELETE FROM rating_likes l " +
+                        "USING unnest(CAST(? AS UUID[]), CAST(? AS UUID[])) AS u(rating_id, user_id) " +
+                        "WHERE l.rating_id = u.rating_id AND l.user_id = u.user_id " +
+                        "RETURNING l.rating_id, l.user_id",
+                        collectWritten,
+                        unlikeRatings.toArray(new UUID[0]), unlikeUsers.toArray(new UUID[0])
+                    );
+                }
+                beforeCommit();
+                db.commit();
+            } catch (SQLException e) {
+                db.rollback();
+                throw e;
+            }
+        }
+        return written;
+    }
+
+    // From here until the rebase, readers cannot tell whether their query saw the flush
+    void beforeCommit() {
+        flushes++;
+    }
+
+    // The database now holds the flushed state of the pair: it becomes the stored state of whatever is
+    // pending for the pair now (pairs of a running flush are never dropped), and it leaves the pending
+    // delta, since the stored like_count includes it from now on
+    private void rebase(Key key, Pending flushed) {
+        if (flushed.liked != flushed.stored) {
+            deltas.computeIfAbsent(key.ratingId, id -> new LongAdder()).add(flushed.liked ? -1 : 1);
+        }
+        pending.computeIfPresent(key, (k, current) -> {
+            Pending next = new Pending(current.authorId, current.liked, current.likedAt, flushed.liked, flushed.liked ? flushed.likedAt : null);
+            return next.liked == next.stored ? null : next;
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.services;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import org.example.utils.Config;
+import org.example.utils.LatencyHistogram;
+import org.example.utils.RequestTrace;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs BCrypt hashing and verification on a dedicated, CPU-sized thread pool with a bounded queue.
+// Request threads hand the work over and wait for it; when the queue is full the call fails fast
+// with RejectedExecutionException so the caller can answer 503 instead of piling up more CPU work.
+public class PasswordHasher {
+    private static PasswordHasher instance;
+
+    private final int cost;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    // Time waiting in the queue and time spent hashing, per operation
+    private final LatencyHistogram hashQueueWait = newHistogram();
+    private final LatencyHistogram hashTime = newHistogram();
+    private final LatencyHistogram verifyQueueWait = newHistogram();
+    private final LatencyHistogram verifyTime = newHistogram();
+
+    protected PasswordHasher() {
+        cost = Config.getInt("mrp.bcrypt.cost", 12);
+        int threads = Config.getInt("mrp.bcrypt.threads", Runtime.getRuntime().availableProcessors());
+        int queueSize = Config.getInt("mrp.bcrypt.queueSize", threads * 4);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static synchronized PasswordHasher getInstance() {
+        if (instance == null) {
+            instance = new PasswordHasher();
+        }
+        return instance;
+    }
+
+    // Hashes a new password with the configured cost factor (mrp.bcrypt.cost)
+    public String hash(char[] password) throws InterruptedException {
+        return run(() -> BCrypt.withDefaults().hashToString(cost, password), hashQueueWait, hashTime);
+    }
+
+    // Verifies a password against a stored hash; the cost factor is the one encoded in the hash
+    public boolean verify(char[] password, String passwordHash) throws InterruptedException {
+        return run(() -> BCrypt.verifyer().verify(password, passwordHash).verified, verifyQueueWait, verifyTime);
+    }
+
+    private <T> T run(Callable<T> work, LatencyHistogram queueWait, LatencyHistogram workTime) throws InterruptedException {
+        long submittedAt = System.nanoTime();
+        long tracedAt = RequestTrace.mark(); // queue wait and hashing, as seen by the request
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                queueWait.record(startedAt - submittedAt);
+                try {
+                    return work.call();
+                } finally {
+                    workTime.record(System.nanoTime() - startedAt);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } finally {
+            RequestTrace.phase(RequestTrace.Phase.BCRYPT, tracedAt);
+        }
+    }
+
+    private static LatencyHistogram newHistogram() {
+        return new LatencyHistogram(10, 50, 100, 250, 500, 1000, 2500, 5000);
+    }
+
+    public Stats getStats() {
+        return new Stats(cost, executor.getMaximumPoolSize(), executor.getActiveCount(),
+                executor.getQueue().size(), rejected.sum(), hashQueueWait, hashTime, verifyQueueWait, verifyTime);
+    }
+
+    public static class Stats {
+        private final int cost;
+        private final int threads;
+        private final int active;
+        private final int queued;
+        private final long rejected;
+        private final LatencyHistogram hashQueueWait;
+        private final LatencyHistogram hash;
+        private final LatencyHistogram verifyQueueWait;
+        private final LatencyHistogram verify;
+
+        Stats(int cost, int threads, int active, int queued, long rejected,
+              LatencyHistogram hashQueueWait, LatencyHistogram hash,
+              LatencyHistogram verifyQueueWait, LatencyHistogram verify) {
+            this.cost = cost;
+            this.threads = threads;
+            this.active = active;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.hashQueueWait = hashQueueWait;
+            this.hash = hash;
+            this.verifyQueueWait = verifyQueueWait;
+            this.verify = verify;
+        }
+
+        public int getCost() { return cost; }
+        public int getThreads() { return threads; }
+        public int getActive() { return active; }
+        public int getQueued() { return queued; }
+        public long getRejected() { return rejected; }
+        public LatencyHistogram getHashQueueWait() { return hashQueueWait; }
+        public LatencyHistogram getHash() { return hash; }
+        public LatencyHistogram getVerifyQueueWait() { return verifyQueueWait; }
+        public LatencyHistogram getVerify() { return verify; }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.services;
+
+import org.example.db.Database;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Periodically recomputes the rating aggregates of media_entries from the ratings table and repairs
+// rows that drifted (e.g. after manual edits with the triggers disabled).
+// Works through the catalog in batches; each batch locks its media rows first, so a rating written
+// concurrently is either already visible to the recount or applies its delta after the batch commits.
+public class RatingAggregateReconciler {
+    private static final int BATCH_SIZE = 500;
+
+    private final Database db;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rating-aggregate-reconciler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RatingAggregateReconciler(Database db) {
+        this.db = db;
+    }
+
+    public void start(long intervalMillis) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int repaired = reconcile();
+                if (repaired > 0) {
+                    System.out.println("Rating aggregate reconciliation repaired " + repaired + " media entries");
+                }
+            } catch (Exception e) {
+                System.err.println("Rating aggregate reconciliation failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Returns the number of media entries whose aggregates had to be corrected
+    @SuppressWarnings("try")
+    public int reconcile() throws SQLException {
+        int repaired = 0;
+        UUID lastId = new UUID(0, 0); // the nil UUID sorts first and is never used as an id
+
+        try (Database.Lease lease = db.lease()) {
+            while (true) {
+                db.beginTransaction();
+                try {
+                    List<Object> ids = db.getValues(
+                        "SELECT id FROM media_entries WHERE id > ? ORDER BY id LIMIT ? FOR UPDATE",
+                        lastId, BATCH_SIZE
+                    );
+                    if (ids.isEmpty()) {
+                        db.commit();
+                        return repaired;
+                    }
+                    UUID[] batch = ids.toArray(new UUID[0]);
+                    lastId = batch[batch.length - 1];
+
+                    repaired += db.update(
+                        "UPDATE media_entries m " +
+                        "SET rating_sum = a.rating_sum, rating_count = a.rating_count, " +
+                        "stars_1 = a.stars_1, stars_2 = a.stars_2, stars_3 = a.stars_3, " +
+                        "stars_4 = a.stars_4, stars_5 = a.stars_5 " +
+                        "FROM (" +
+                        "  SELECT b.id, COALESCE(SUM(r.stars), 0) AS rating_sum, COUNT(r.id) AS rating_count, " +
+                        "  COUNT(*) FILTER (WHERE r.stars = 1) AS stars_1, " +
+                        "  COUNT(*) FILTER (WHERE r.stars = 2) AS stars_2, " +
+                        "  COUNT(*) FILTER (WHERE r.stars = 3) AS stars_3, " +
+                        "  COUNT(*) FILTER (WHERE r.stars = 4) AS stars_4, " +
+                        "  COUNT(*) FILTER (WHERE r.stars = 5) AS stars_5 " +
+                        "  FROM media_entries b LEFT JOIN ratings r ON r.media_id = b.id " +
+                        "  WHERE b.id = ANY(?) GROUP BY b.id" +
+                        ") a " +
+                        "WHERE m.id = a.id AND (m.rating_sum, m.rating_count, m.stars_1, m.stars_2, m.stars_3, m.stars_4, m.stars_5) " +
+                        "IS DISTINCT FROM (a.rating_sum, a.rating_count, a.stars_1, a.stars_2, a.stars_3, a.stars_4, a.stars_5)",
+                        (Object) batch
+                    );
+                    db.commit();
+                } catch (SQLException e) {
+                    db.rollback();
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.example.services;
+
+import org.example.db.Database;
+import org.example.utils.Config;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Item-to-item recommendations from ratings and favorites. A rating weighs stars - 3 (so 1 star is a
+// negative signal and 3 stars none), a favorite 2. The similarity model (ItemSimilarity) is built at
+// startup; afterwards the handlers report the media whose ratings or favorites changed, and a background
+// refresh reloads just those rows and patches the model. A periodic full build restores the exact top k
+// lists and picks up writes made outside the API. Requests only score the neighbours of the user's items.
+public class RecommendationEngine {
+    private static final int FETCH_SIZE = Config.getInt("mrp.recommendations.fetchSize", 10000);
+    private static final int NEIGHBOURS = Config.getInt("mrp.recommendations.neighbours", 50);
+    private static final float SHRINK = Config.getInt("mrp.recommendations.shrink", 10);
+    private static final int POPULAR = 500;
+    private static final float FAVORITE_WEIGHT = 2;
+
+    private static RecommendationEngine instance;
+
+    private final Database db = Database.getInstance();
+    private final ForkJoinPool pool = new ForkJoinPool(
+            Config.getInt("mrp.recommendations.parallelism", Runtime.getRuntime().availableProcessors()));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recommendations-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Set<UUID> changed = ConcurrentHashMap.newKeySet();
+    private final Object buildLock = new Object(); // builds and refreshes run one at a time
+
+    private volatile Model model;
+
+    public static class Recommendation {
+        private final UUID mediaId;
+        private final float score;
+        private final boolean popular;
+
+        Recommendation(UUID mediaId, float score, boolean popular) {
+            this.mediaId = mediaId;
+            this.score = score;
+            this.popular = popular;
+        }
+
+        public UUID getMediaId() { return mediaId; }
+        public float getScore() { return score; }
+        // True for fill-ins from the most popular media, when there are not enough similar ones
+        public boolean isPopular() { return popular; }
+    }
+
+    // Immutable snapshot of the model; requests read whichever one is current
+    private static class Model {
+        private final UUID[] itemIds;
+        private final Map<UUID, Integer> items;
+        private final Map<UUID, Integer> users;
+        private final ItemSimilarity.Interactions interactions;
+        private final ItemSimilarity similarity;
+        private final int[] popular;
+
+        Model(UUID[] itemIds, Map<UUID, Integer> items, Map<UUID, Integer> users,
+              ItemSimilarity.Interactions interactions, ItemSimilarity similarity) {
+            this.itemIds = itemIds;
+            this.items = items;
+            this.users = users;
+            this.interactions = interactions;
+            this.similarity = similarity;
+            this.popular = interactions.mostPopular(POPULAR);
+        }
+    }
+
+    protected RecommendationEngine() {
+        ItemSimilarity.Interactions empty = new ItemSimilarity.Builder(0, 0).build();
+        model = new Model(new UUID[0], Map.of(), Map.of(), empty, ItemSimilarity.compute(empty, NEIGHBOURS, SHRINK, pool));
+    }
+
+    public static synchronized RecommendationEngine getInstance() {
+        if (instance == null) {
+            instance = new RecommendationEngine();
+        }
+        return instance;
+    }
+
+    // Builds the model, then refreshes changed media and rebuilds it completely at the given intervals (0 disables)
+    public void start(long refreshIntervalMillis, long rebuildIntervalMillis) throws SQLException, IOException {
+        rebuild();
+        if (refreshIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    System.err.println("Recommendation refresh failed: " + e.getMessage());
+                }
+            }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (rebuildIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    System.err.println("Recommendation rebuild failed: " + e.getMessage());
+                }
+            }, rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // Called after a write changed the ratings or favorites of a media entry, or deleted it
+    public void mediaChanged(UUID mediaId) {
+        changed.add(mediaId);
+    }
+
+    @SuppressWarnings("try")
+    public void rebuild() throws SQLException, IOException {
+        synchronized (buildLock) {
+            long startedAt = System.nanoTime();
+            // Changes reported from here on are already part of the load or will be reloaded by the next refresh
+            changed.clear();
+
+            Map<UUID, Integer> items = new HashMap<>();
+            Map<UUID, Integer> users = new HashMap<>();
+            List<UUID> itemIds = new ArrayList<>();
+            ItemSimilarity.Builder builder = new ItemSimilarity.Builder(0, 0);
+            try (Database.Lease lease = db.lease()) {
+                loadRows(builder, items, users, itemIds, null);
+            }
+            ItemSimilarity.Interactions interactions = builder.build();
+            long loadedAt = System.nanoTime();
+            ItemSimilarity similarity = ItemSimilarity.compute(interactions, NEIGHBOURS, SHRINK, pool);
+
+            model = new Model(itemIds.toArray(new UUID[0]), items, users, interactions, similarity);
+            System.out.println("Recommendation model built: " + interactions.getItems() + " media, " +
+                    interactions.getUsers() + " users, " + interactions.getSize() + " interactions, loaded in " +
+                    TimeUnit.NANOSECONDS.toMillis(loadedAt - startedAt) + " ms, computed in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadedAt) + " ms, " +
+                    (estimateBytes() >> 20) + " MB");
+        }
+    }
+
+    // Reloads the rows of the media reported as changed and patches them into the model
+    @SuppressWarnings("try")
+    public void refresh() throws SQLException, IOException {
+        synchronized (buildLock) {
+            if (changed.isEmpty()) {
+                return;
+            }
+            List<UUID> ids = new ArrayList<>(changed);
+            changed.removeAll(ids);
+
+            Model current = model;
+            Map<UUID, Integer> items = new HashMap<>(current.items);
+            Map<UUID, Integer> users = new HashMap<>(current.users);
+            List<UUID> itemIds = new ArrayList<>(Arrays.asList(current.itemIds));
+            ItemSimilarity.Builder rows = new ItemSimilarity.Builder(0, 0);
+            try (Database.Lease lease = db.lease()) {
+                loadRows(rows, items, users, itemIds, ids.toArray(new UUID[0]));
+            }
+
+            // Media without an ordinal had no interactions before and got none now
+            int[] replaced = ids.stream().filter(items::containsKey).mapToInt(items::get).toArray();
+            ItemSimilarity.Interactions interactions = current.interactions.replaceRows(replaced, rows);
+            ItemSimilarity similarity = current.similarity.update(interactions, replaced, SHRINK, pool);
+            model = new Model(itemIds.toArray(new UUID[0]), items, users, interactions, similarity);
+        }
+    }
+
+    // Streams ratings and favorites, of all media or only of mediaIds, into the builder, assigning ordinals
+    private void loadRows(ItemSimilarity.Builder builder, Map<UUID, Integer> items, Map<UUID, Integer> users,
+                          List<UUID> itemIds, UUID[] mediaIds) throws SQLException, IOException {
+        String filter = mediaIds == null ? "" : " WHERE media_id = ANY(?)";
+        Object[] params = mediaIds == null ? new Object[0] : new Object[]{mediaIds};
+        db.stream("SELECT media_id, user_id, stars FROM ratings" + filter, FETCH_SIZE, rs -> {
+            while (rs.next()) {
+                float weight = rs.getInt(3) - 3;
+                if (weight != 0) {
+                    builder.add(ordinal(items, itemIds, db.getUUID(rs, 1)), ordinal(users, null, db.getUUID(rs, 2)), weight);
+                }
+            }
+        }, params);
+        db.stream("SELECT media_id, user_id FROM favorites" + filter, FETCH_SIZE, rs -> {
+            while (rs.next()) {
+                builder.add(ordinal(items, itemIds, db.getUUID(rs, 1)), ordinal(users, null, db.getUUID(rs, 2)), FAVORITE_WEIGHT);
+            }
+        }, params);
+    }
+
+    private static int ordinal(Map<UUID, Integer> ordinals, List<UUID> ids, UUID id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal == null) {
+            ordinal = ordinals.size();
+            ordinals.put(id, ordinal);
+            if (ids != null) {
+                ids.add(id);
+            }
+        }
+        return ordinal;
+    }
+
+    // The best limit media for a user, leaving out everything the user rated or favorited
+    public List<Recommendation> recommend(UUID userId, int limit) throws SQLException {
+        Model current = model;
+
+        // The user's own interactions come from the database, so a rating made a moment ago is excluded
+        List<Object[]> own = db.queryList(
+                "SELECT media_id, stars - 3 FROM ratings WHERE user_id = ? " +
+                "UNION ALL SELECT media_id, " + (int) FAVORITE_WEIGHT + " FROM favorites WHERE user_id = ?",
+                rs -> new Object[]{db.getUUID(rs, 1), rs.getInt(2)}, userId, userId);
+        int[] ordinals = new int[own.size()];
+        float[] weights = new float[own.size()];
+        int size = 0;
+        for (Object[] row : own) {
+            Integer ordinal = current.items.get((UUID) row[0]);
+            if (ordinal != null) {
+                ordinals[size] = ordinal;
+                weights[size] = (Integer) row[1];
+                size++;
+            }
+        }
+        int[] exclude = Arrays.stream(ordinals, 0, size).sorted().distinct().toArray();
+
+        int[] found = new int[limit];
+        float[] scores = new float[limit];
+        int count = current.similarity.recommend(Arrays.copyOf(ordinals, size), Arrays.copyOf(weights, size),
+                exclude, found, scores);
+
+        List<Recommendation> recommendations = new ArrayList<>(limit);
+        for (int i = 0; i < count; i++) {
+            recommendations.add(new Recommendation(current.itemIds[found[i]], scores[i], false));
+        }
+        // Not enough signal (new users, niche tastes): fill up with the most popular media
+        for (int i = 0; i < current.popular.length && recommendations.size() < limit; i++) {
+            int item = current.popular[i];
+            if (Arrays.binarySearch(exclude, item) < 0 && !contains(found, count, item)) {
+                recommendations.add(new Recommendation(current.itemIds[item], 0, true));
+            }
+        }
+        return recommendations;
+    }
+
+    private static boolean contains(int[] items, int count, int item) {
+        for (int i = 0; i < count; i++) {
+            if (items[i] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Approximate heap use of the current model
+    public long estimateBytes() {
+        Model current = model;
+        // Ordinal maps: HashMap node, boxed Integer and UUID per entry
+        long maps = 96L * (current.items.size() + current.users.size());
+        return maps + current.interactions.estimateBytes() + current.similarity.estimateBytes();
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.services;
+
+import org.example.utils.Config;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded, concurrent cache of auth token -> user id lookups.
+// - positive entries live for ttl, unknown tokens are cached as misses for the (shorter) negative ttl
+//   so clients spraying random tokens do not reach the database on every request
+// - once the cache grows past maxSize, expired entries and then arbitrary ones are evicted in a batch
+// - invalidateUser() drops the cached token of a user whose token was replaced at login
+public class TokenCache {
+    private static TokenCache instance;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Reverse index, a user has at most one active token (auth_tokens.user_id is UNIQUE)
+    private final ConcurrentHashMap<UUID, String> tokenByUser = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a lookup that raced with it does not re-insert a stale result
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @FunctionalInterface
+    public interface Loader {
+        UUID load(String token) throws SQLException;
+    }
+
+    protected TokenCache() {
+        this(Config.getInt("mrp.auth.tokenCache.maxSize", 10000),
+            Config.getLong("mrp.auth.tokenCache.ttlMs", 300000),
+            Config.getLong("mrp.auth.tokenCache.negativeTtlMs", 10000));
+    }
+
+    TokenCache(int maxSize, long ttlMs, long negativeTtlMs) {
+        this.maxSize = maxSize;
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+    }
+
+    public static synchronized TokenCache getInstance() {
+        if (instance == null) {
+            instance = new TokenCache();
+        }
+        return instance;
+    }
+
+    // Returns the user id for the token (null for unknown tokens), calling the loader on a cache miss
+    public UUID get(String token, Loader loader) throws SQLException {
+        long now = System.nanoTime();
+        Entry entry = entries.get(token);
+        if (entry != null) {
+            if (entry.expiresAt - now > 0) {
+                (entry.userId == null ? negativeHits : hits).increment();
+                return entry.userId;
+            }
+            remove(token, entry);
+        }
+
+        misses.increment();
+        long invalidationsBefore = invalidations.get();
+        UUID userId = loader.load(token);
+        if (maxSize > 0 && invalidations.get() == invalidationsBefore) {
+            beforePut();
+            Entry inserted = put(token, userId, now);
+            // An invalidation may have run between the check and the put. It bumps the counter before it
+            // removes anything, so either it sees the new entry and drops it, or the counter has moved here.
+            if (invalidations.get() != invalidationsBefore) {
+                remove(token, inserted);
+            }
+        }
+        return userId;
+    }
+
+    // Drops whatever is cached for this token
+    public void invalidate(String token) {
+        invalidations.incrementAndGet();
+        Entry entry = entries.remove(token);
+        if (entry != null && entry.userId != null) {
+            tokenByUser.remove(entry.userId, token);
+        }
+    }
+
+    // Drops the cached token of this user, e.g. because a new login replaced it
+    public void invalidateUser(UUID userId) {
+        invalidations.incrementAndGet();
+        String token = tokenByUser.remove(userId);
+        if (token != null) {
+            entries.remove(token);
+        }
+    }
+
+    // Test seam, runs between the invalidation check and the insert
+    void beforePut() {
+    }
+
+    private Entry put(String token, UUID userId, long now) {
+        Entry entry = new Entry(userId, now + (userId == null ? negativeTtlNanos : ttlNanos));
+        entries.put(token, entry);
+        if (userId != null) {
+            String previous = tokenByUser.put(userId, token);
+            if (previous != null && !previous.equals(token)) {
+                entries.remove(previous);
+            }
+        }
+        if (entries.size() > maxSize) {
+            evict(now);
+        }
+        return entry;
+    }
+
+    private void remove(String token, Entry entry) {
+        if (entries.remove(token, entry) && entry.userId != null) {
+            tokenByUser.remove(entry.userId, token);
+        }
+    }
+
+    // Brings the cache back to 90% of maxSize: expired entries first, then whatever iteration yields.
+    // Only one thread evicts at a time, the others simply carry on.
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = maxSize - maxSize / 10;
+            for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Entry> e = it.next();
+                if (e.getValue().expiresAt - now <= 0) {
+                    evictEntry(it, e);
+                }
+            }
+            for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                 it.hasNext() && entries.size() > target; ) {
+                evictEntry(it, it.next());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictEntry(Iterator<Map.Entry<String, Entry>> it, Map.Entry<String, Entry> e) {
+        it.remove();
+        evictions.increment();
+        if (e.getValue().userId != null) {
+            tokenByUser.remove(e.getValue().userId, e.getKey());
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(entries.size(), maxSize, hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private static class Entry {
+        private final UUID userId; // null marks a token known not to exist
+        private final long expiresAt;
+
+        Entry(UUID userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Stats {
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long negativeHits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(int size, int maxSize, long hits, long negativeHits, long misses, long evictions) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.negativeHits = negativeHits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize() { return size; }
+        public int getMaxSize() { return maxSize; }
+        public long getHits() { return hits; }
+        public long getNegativeHits() { return negativeHits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.utils;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Byte arrays for response bodies, reused instead of allocated per response. Arrays come in size classes
+// (4 KiB up to 1 MiB, each four times the last), every class keeps up to mrp.buffers.bytesPerClass worth
+// of free arrays (at least 2, at most 64) in a fixed slot array. Taking and returning an array is one CAS
+// on a slot, starting at a random one so concurrent requests do not all fight over slot 0; an empty class
+// just allocates. Bodies larger than the biggest class are never pooled.
+// Requests run on virtual threads by default, so a ThreadLocal cache would be empty for every request.
+public final class BufferPool {
+    private static final int[] SIZES = {4 << 10, 16 << 10, 64 << 10, 256 << 10, 1 << 20};
+    private static final long BYTES_PER_CLASS = Config.getLong("mrp.buffers.bytesPerClass", 1 << 20);
+
+    private static final List<AtomicReferenceArray<byte[]>> free = newSlots();
+    private static final LongAdder reused = new LongAdder();
+    private static final LongAdder allocated = new LongAdder();
+
+    private BufferPool() {}
+
+    private static List<AtomicReferenceArray<byte[]>> newSlots() {
+        List<AtomicReferenceArray<byte[]>> slots = new ArrayList<>(SIZES.length);
+        for (int size : SIZES) {
+            slots.add(new AtomicReferenceArray<>((int) Math.max(2, Math.min(64, BYTES_PER_CLASS / size))));
+        }
+        return List.copyOf(slots);
+    }
+
+    // An array of at least minSize bytes, from the pool when one of the fitting class is free
+    public static byte[] acquire(int minSize) {
+        int sizeClass = sizeClass(minSize);
+        if (sizeClass < 0) {
+            allocated.increment();
+            return new byte[minSize];
+        }
+        AtomicReferenceArray<byte[]> slots = free.get(sizeClass);
+        int start = ThreadLocalRandom.current().nextInt(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            int slot = (start + i) % slots.length();
+            if (slots.get(slot) != null) {
+                byte[] buffer = slots.getAndSet(slot, null);
+                if (buffer != null) {
+                    reused.increment();
+                    return buffer;
+                }
+            }
+        }
+        allocated.increment();
+        return new byte[SIZES[sizeClass]];
+    }
+
+    // Hands an array back; arrays that did not come from acquire() or do not fit a free slot are dropped
+    public static void release(byte[] buffer) {
+        int sizeClass = Arrays.binarySearch(SIZES, buffer.length);
+        if (sizeClass < 0) {
+            return;
+        }
+        AtomicReferenceArray<byte[]> slots = free.get(sizeClass);
+        int start = ThreadLocalRandom.current().nextInt(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            int slot = (start + i) % slots.length();
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    private static int sizeClass(int size) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (size <= SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static long getReused() {
+        return reused.sum();
+    }
+
+    public static long getAllocated() {
+        return allocated.sum();
+    }
+
+    // Collects a body in pooled arrays, moving to the next size class when it outgrows the current one.
+    // Not thread-safe; release() once the bytes have been written out, the array is reused right away.
+    public static final class Output extends OutputStream {
+        private byte[] buffer;
+        private int size;
+
+        public Output() {
+            this(SIZES[0]);
+        }
+
+        public Output(int expectedSize) {
+            buffer = acquire(expectedSize);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= buffer.length) {
+                return;
+            }
+            byte[] larger = acquire(Math.max(needed, buffer.length * 2));
+            System.arraycopy(buffer, 0, larger, 0, size);
+            BufferPool.release(buffer);
+            buffer = larger;
+        }
+
+        // The array holding the body; only the first size() bytes belong to it
+        public byte[] buffer() {
+            return buffer;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void release() {
+            if (buffer != null) {
+                BufferPool.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
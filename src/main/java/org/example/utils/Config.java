@@ -0,0 +1,41 @@
+package org.example.utils;
+
+public class Config {
+
+    /**
+     * Look up a setting, first as a JVM system property (-Dmrp.db.pool.maxSize=20),
+     * then as an environment variable (MRP_DB_POOL_MAXSIZE)
+     * @param key dotted setting name
+     * @param defaultValue value used when the setting is absent
+     * @return configured value or the default
+     */
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Conditional GET support: entity tags built from whatever a response depends on (versions, user,
+// query) and the If-None-Match / If-Modified-Since checks that turn a repeated request into a 304.
+public class HttpCache {
+
+    // Builds a strong entity tag from a sequence of parts, e.g. the ids and versions of a page
+    public static class Tag {
+        private final MessageDigest digest;
+
+        public Tag() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        public Tag add(Object part) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0); // separator, so ("ab", "c") and ("a", "bc") differ
+            return this;
+        }
+
+        // Finishes the tag; 128 bits of the digest, quoted as the header requires
+        public String build() {
+            byte[] hash = Arrays.copyOf(digest.digest(), 16);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+        }
+    }
+
+    // Sets the validators of the response and answers 304 Not Modified if the request already has this
+    // representation. Returns true if the 304 was sent. lastModified may be null.
+    // If-None-Match takes precedence; If-Modified-Since is only checked when it is absent (RFC 9110).
+    public static boolean checkNotModified(HttpExchange exchange, String etag, Timestamp lastModified) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        // Responses depend on the caller (likes, own unconfirmed ratings), and must be revalidated.
+        // A 304 repeats the Vary of the full response, which includes the content negotiation.
+        exchange.getResponseHeaders().set("Cache-Control", "private, no-cache");
+        exchange.getResponseHeaders().set("Vary", "Authorization, Accept-Encoding");
+        if (lastModified != null) {
+            exchange.getResponseHeaders().set("Last-Modified",
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.toInstant().atOffset(ZoneOffset.UTC)));
+        }
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            notModified = lastModified != null && ifModifiedSince != null && notModifiedSince(lastModified, ifModifiedSince);
+        }
+
+        if (notModified) {
+            RequestTrace.beforeHeaders(exchange);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+        }
+        return notModified;
+    }
+
+    // If-None-Match uses the weak comparison, so W/"x" matches "x"
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // HTTP dates have whole seconds, so the modification time is compared at that precision
+    private static boolean notModifiedSince(Timestamp lastModified, String ifModifiedSince) {
+        try {
+            Instant since = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifModifiedSince));
+            return lastModified.toInstant().getEpochSecond() <= since.getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false; // invalid dates are ignored
+        }
+    }
+}
@@ -1,27 +1,90 @@
 package org.example.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.sun.net.httpserver.HttpExchange;
+import org.example.models.MediaEntry;
+import org.example.models.Rating;
+import org.example.models.User;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 public class JsonHelper {
-    private static final ObjectMapper mapper = new ObjectMapper();
+    // Jackson keeps its internal read/write buffers in a ThreadLocal by default, which never gets reused
+    // with one virtual thread per request; the shared lock-free pool is reused across threads
+    private static final ObjectMapper mapper = new ObjectMapper(JsonFactory.builder()
+            .recyclerPool(JsonRecyclerPools.sharedLockFreePool())
+            .build());
 
     static {
         mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
     }
 
+    private static final byte[] EMPTY_OBJECT = "{}".getBytes(StandardCharsets.UTF_8);
+
+    // Writers with the serializer of the type resolved up front, for the bodies sent most
+    private static final ObjectWriter anyWriter = mapper.writer();
+    private static final Map<Class<?>, ObjectWriter> writers = Map.of(
+            MediaEntry.class, mapper.writerFor(MediaEntry.class),
+            Rating.class, mapper.writerFor(Rating.class),
+            User.class, mapper.writerFor(User.class),
+            ErrorBody.class, mapper.writerFor(ErrorBody.class),
+            MessageBody.class, mapper.writerFor(MessageBody.class));
+
+    // {"error": ...} and {"message": ...} of the messages sent most, serialized once
+    private static final Map<String, byte[]> errorBodies = serializeAll(ErrorBody::new,
+            "Authentication required", "Method not allowed", "Internal server error",
+            "Server busy, please retry", "Invalid JSON format", "Invalid JSON body", "Invalid limit parameter",
+            "Invalid cursor", "Media not found", "Rating not found", "Invalid username or password",
+            "Username and password are required", "Already liked", "Not liked", "Already in favorites",
+            "Not in favorites");
+    private static final Map<String, byte[]> messageBodies = serializeAll(MessageBody::new,
+            "Rating liked", "Rating unliked", "Added to favorites", "Removed from favorites",
+            "Media deleted successfully");
+
+    // Field names are what clients see, the same as the maps these replaced
+    private static final class ErrorBody {
+        public final String error;
+
+        ErrorBody(String error) {
+            this.error = error;
+        }
+    }
+
+    private static final class MessageBody {
+        public final String message;
+
+        MessageBody(String message) {
+            this.message = message;
+        }
+    }
+
+    // Writes the body of a streamed response
+    @FunctionalInterface
+    public interface JsonStreamWriter {
+        void write(JsonGenerator generator) throws IOException, SQLException;
+    }
+
     // Parse JSON from request body
     public static <T> T parseRequest(HttpExchange exchange, Class<T> clazz) throws IOException {
+        long startedAt = RequestTrace.mark();
         InputStream is = exchange.getRequestBody();
-        return mapper.readValue(is, clazz);
+        try {
+            return mapper.readValue(is, clazz);
+        } finally {
+            RequestTrace.phase(RequestTrace.Phase.PARSE, startedAt);
+        }
     }
 
     // Parse JSON from string
@@ -39,31 +102,104 @@ public class JsonHelper {
         }
     }
 
-    // Send JSON response
+    // Convert object to UTF-8 encoded JSON, without the intermediate String
+    private static byte[] toJsonBytes(Object object) {
+        try {
+            return mapper.writeValueAsBytes(object);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return EMPTY_OBJECT.clone();
+        }
+    }
+
+    // Send JSON response (compressed when the client accepts it and the body is large enough)
+    // The body is serialized into a pooled buffer, which goes back to the pool once it is sent
     public static void sendResponse(HttpExchange exchange, int statusCode, Object response) throws IOException {
-        String jsonResponse = toJson(response);
-        byte[] responseBytes = jsonResponse.getBytes(StandardCharsets.UTF_8);
+        long startedAt = RequestTrace.mark();
+        BufferPool.Output body = new BufferPool.Output();
+        try {
+            try {
+                writers.getOrDefault(response.getClass(), anyWriter).writeValue(body, response);
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+                body.release();
+                body = new BufferPool.Output();
+                body.write(EMPTY_OBJECT, 0, EMPTY_OBJECT.length);
+            }
+            RequestTrace.phase(RequestTrace.Phase.SERIALIZE, startedAt);
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            ResponseCompression.send(exchange, statusCode, body.buffer(), body.size());
+        } finally {
+            body.release();
+        }
+    }
+
+    // Sends a body that is already serialized JSON
+    private static void sendJson(HttpExchange exchange, int statusCode, byte[] json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        ResponseCompression.send(exchange, statusCode, json);
+    }
 
+    // Send JSON response that is serialized while it is being written (chunked transfer encoding)
+    // Memory use does not depend on the size of the response, and the first bytes go out right away
+    public static void sendStream(HttpExchange exchange, int statusCode, JsonStreamWriter writer) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        ResponseCompression.Body body = ResponseCompression.open(exchange, statusCode);
 
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
+        // Open arrays and objects must not be closed automatically: a response cut short by an error
+        // has to arrive as invalid JSON, not as a valid but incomplete list
+        JsonGenerator generator = mapper.getFactory().createGenerator(body)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        // Rows are read while the body is written, so this phase includes their statements
+        long startedAt = RequestTrace.mark();
+        try {
+            writer.write(generator);
+            generator.close();
+            RequestTrace.phase(RequestTrace.Phase.STREAM, startedAt);
+            body.close();
+        } catch (SQLException e) {
+            System.err.println("Streaming response aborted: " + e.getMessage());
+            e.printStackTrace();
+            if (body.isCommitted()) {
+                // The status line is already out, all we can do is cut the body short
+                generator.close();
+                body.close();
+            } else {
+                body.discard();
+                generator.close();
+                sendError(exchange, 500, "Internal server error");
+            }
         }
     }
 
     // Send error response
     public static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
-        Map<String, String> error = new HashMap<>();
-        error.put("error", message);
-        sendResponse(exchange, statusCode, error);
+        byte[] body = errorBodies.get(message);
+        if (body != null) {
+            sendJson(exchange, statusCode, body);
+        } else {
+            sendResponse(exchange, statusCode, new ErrorBody(message));
+        }
     }
 
     // Send success response with message
     public static void sendSuccess(HttpExchange exchange, String message) throws IOException {
-        Map<String, String> success = new HashMap<>();
-        success.put("message", message);
-        sendResponse(exchange, 200, success);
+        byte[] body = messageBodies.get(message);
+        if (body != null) {
+            sendJson(exchange, 200, body);
+        } else {
+            sendResponse(exchange, 200, new MessageBody(message));
+        }
+    }
+
+    private static Map<String, byte[]> serializeAll(Function<String, Object> body, String... messages) {
+        Map<String, byte[]> bodies = new HashMap<>();
+        for (String message : messages) {
+            bodies.put(message, toJsonBytes(body.apply(message)));
+        }
+        return Map.copyOf(bodies);
     }
 
     // Parse query parameters from URL
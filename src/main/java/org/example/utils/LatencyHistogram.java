@@ -0,0 +1,65 @@
+package org.example.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-bucket latency histogram that can be recorded into from any thread without locking
+public class LatencyHistogram {
+    private final long[] boundsMicros; // upper bound of each bucket, the last bucket is open-ended
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram(long... boundsMillis) {
+        boundsMicros = new long[boundsMillis.length];
+        for (int i = 0; i < boundsMillis.length; i++) {
+            boundsMicros[i] = TimeUnit.MILLISECONDS.toMicros(boundsMillis[i]);
+        }
+        buckets = new AtomicLongArray(boundsMillis.length + 1);
+    }
+
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 0;
+        while (bucket < boundsMicros.length && micros > boundsMicros[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+    }
+
+    public double getMaxMillis() { return maxMicros.get() / 1000.0; }
+
+    public double getTotalMillis() { return totalMicros.sum() / 1000.0; }
+
+    // Bucket upper bounds in ms, matching getBuckets() index by index (the last bucket is "+Inf")
+    public double[] getBoundsMillis() {
+        double[] bounds = new double[boundsMicros.length];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = boundsMicros[i] / 1000.0;
+        }
+        return bounds;
+    }
+
+    public long[] getBuckets() {
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+}
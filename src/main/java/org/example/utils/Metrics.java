@@ -0,0 +1,265 @@
+package org.example.utils;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Process-wide metrics: requests per route template and status, request latency, in-flight requests and
+// time spent per SQL statement. Routes and statements get their counters once, the first time they are
+// seen; after that recording only increments atomic counters (no locks, no allocation), and everything
+// is turned into Prometheus text only when /api/metrics is scraped.
+// SQL built at runtime can produce many distinct statements, so only the first mrp.metrics.maxStatements
+// are tracked on their own and the rest are counted together as "other".
+public class Metrics {
+    private static final int MAX_STATEMENTS = Config.getInt("mrp.metrics.maxStatements", 500);
+    private static final int SQL_LABEL_LENGTH = Config.getInt("mrp.metrics.sqlLabelLength", 200);
+    private static final long[] REQUEST_BUCKETS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private static final long[] STATEMENT_BUCKETS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+
+    private static Metrics instance;
+
+    private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final RouteMetrics unmatched = new RouteMetrics("", "unmatched");
+    private final ConcurrentHashMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+    private final StatementMetrics otherStatements = new StatementMetrics("other", "other");
+    private final LatencyHistogram statementLatency = new LatencyHistogram(STATEMENT_BUCKETS_MS);
+    private final LongAdder inFlight = new LongAdder();
+
+    // Requests of one route template, by status code (one counter per possible code, 100-599)
+    public static class RouteMetrics {
+        private final String method;
+        private final String route;
+        private final AtomicLongArray statuses = new AtomicLongArray(600);
+        private final LatencyHistogram latency = new LatencyHistogram(REQUEST_BUCKETS_MS);
+
+        RouteMetrics(String method, String route) {
+            this.method = method;
+            this.route = route;
+        }
+
+        public void record(int status, long nanos) {
+            statuses.incrementAndGet(status >= 100 && status < 600 ? status : 0);
+            latency.record(nanos);
+        }
+    }
+
+    public static class StatementMetrics {
+        private final String id;
+        private final String sql;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        StatementMetrics(String id, String sql) {
+            this.id = id;
+            this.sql = sql;
+        }
+    }
+
+    protected Metrics() {}
+
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+
+    // Counters of a route template, e.g. GET /api/media/{id}; called once when the route is registered
+    public RouteMetrics route(String method, String pattern) {
+        return routes.computeIfAbsent(method + " " + pattern, key -> new RouteMetrics(method, pattern));
+    }
+
+    // Counters for requests that matched no route (404, 405)
+    public RouteMetrics unmatched() {
+        return unmatched;
+    }
+
+    public void requestStarted() {
+        inFlight.increment();
+    }
+
+    public void requestFinished() {
+        inFlight.decrement();
+    }
+
+    // Records one execution of a statement, from binding the parameters until its result was read
+    public void recordStatement(String sql, long nanos, boolean failed) {
+        StatementMetrics statement = statements.get(sql);
+        if (statement == null) {
+            statement = statements.size() < MAX_STATEMENTS
+                    ? statements.computeIfAbsent(sql, s -> new StatementMetrics(String.format("%08x", s.hashCode()), label(s)))
+                    : otherStatements;
+        }
+        statement.calls.increment();
+        statement.nanos.add(nanos);
+        if (failed) {
+            statement.errors.increment();
+        }
+        statementLatency.record(nanos);
+    }
+
+    // SQL with whitespace collapsed, cut to a length that still fits a dashboard legend
+    private static String label(String sql) {
+        String collapsed = sql.trim().replaceAll("\\s+", " ");
+        return collapsed.length() > SQL_LABEL_LENGTH ? collapsed.substring(0, SQL_LABEL_LENGTH) + "..." : collapsed;
+    }
+
+    // Writes the metrics recorded here plus the JVM gauges in Prometheus text format
+    public void writeTo(Writer out) {
+        out.help("mrp_http_requests_total", "counter", "HTTP requests by route template and status");
+        for (RouteMetrics route : routes.values()) {
+            writeStatuses(out, route);
+        }
+        writeStatuses(out, unmatched);
+
+        out.help("mrp_http_request_duration_seconds", "histogram", "Time from routing a request until its handler returned");
+        for (RouteMetrics route : routes.values()) {
+            if (route.latency.getCount() > 0) {
+                out.histogram("mrp_http_request_duration_seconds", route.latency, "method", route.method, "route", route.route);
+            }
+        }
+        if (unmatched.latency.getCount() > 0) {
+            out.histogram("mrp_http_request_duration_seconds", unmatched.latency, "method", "", "route", "unmatched");
+        }
+
+        out.help("mrp_http_requests_in_flight", "gauge", "Requests being handled right now");
+        out.sample("mrp_http_requests_in_flight", inFlight.sum());
+
+        // Each metric family has to be written in one piece
+        out.help("mrp_db_statement_calls_total", "counter", "Executions per SQL statement");
+        forEachStatement(statement -> out.sample("mrp_db_statement_calls_total", statement.calls.sum(),
+                "statement", statement.id, "sql", statement.sql));
+        out.help("mrp_db_statement_errors_total", "counter", "Failed executions per SQL statement");
+        forEachStatement(statement -> out.sample("mrp_db_statement_errors_total", statement.errors.sum(),
+                "statement", statement.id, "sql", statement.sql));
+        out.help("mrp_db_statement_seconds_total", "counter", "Time spent per SQL statement, including reading its result");
+        forEachStatement(statement -> out.sample("mrp_db_statement_seconds_total", statement.nanos.sum() / 1e9,
+                "statement", statement.id, "sql", statement.sql));
+        out.help("mrp_db_statement_duration_seconds", "histogram", "Duration of all SQL statements");
+        out.histogram("mrp_db_statement_duration_seconds", statementLatency);
+
+        writeJvm(out);
+    }
+
+    private static void writeStatuses(Writer out, RouteMetrics route) {
+        for (int status = 0; status < route.statuses.length(); status++) {
+            long count = route.statuses.get(status);
+            if (count > 0) {
+                out.sample("mrp_http_requests_total", count, "method", route.method, "route", route.route,
+                        "status", status == 0 ? "none" : Integer.toString(status));
+            }
+        }
+    }
+
+    private void forEachStatement(Consumer<StatementMetrics> action) {
+        statements.values().forEach(action);
+        if (otherStatements.calls.sum() > 0) {
+            action.accept(otherStatements);
+        }
+    }
+
+    private static void writeJvm(Writer out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        out.help("jvm_memory_bytes_used", "gauge", "Used memory");
+        out.sample("jvm_memory_bytes_used", heap.getUsed(), "area", "heap");
+        out.sample("jvm_memory_bytes_used", nonHeap.getUsed(), "area", "nonheap");
+        out.help("jvm_memory_bytes_committed", "gauge", "Memory committed by the JVM");
+        out.sample("jvm_memory_bytes_committed", heap.getCommitted(), "area", "heap");
+        out.sample("jvm_memory_bytes_committed", nonHeap.getCommitted(), "area", "nonheap");
+        out.help("jvm_memory_bytes_max", "gauge", "Maximum memory (-1 if undefined)");
+        out.sample("jvm_memory_bytes_max", heap.getMax(), "area", "heap");
+
+        out.help("jvm_gc_collection_seconds", "summary", "Time spent in garbage collections, per collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.sample("jvm_gc_collection_seconds_count", gc.getCollectionCount(), "gc", gc.getName());
+            out.sample("jvm_gc_collection_seconds_sum", gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+
+        out.help("jvm_threads_current", "gauge", "Live platform threads");
+        out.sample("jvm_threads_current", ManagementFactory.getThreadMXBean().getThreadCount());
+        out.help("process_uptime_seconds", "gauge", "Time since the JVM started");
+        out.sample("process_uptime_seconds", ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public static class Writer {
+        public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+        private final StringBuilder text = new StringBuilder(16384);
+
+        public void help(String name, String type, String help) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+
+        // labels are name/value pairs
+        public void sample(String name, double value, String... labels) {
+            text.append(name);
+            if (labels.length > 0) {
+                text.append('{');
+                for (int i = 0; i < labels.length; i += 2) {
+                    if (i > 0) {
+                        text.append(',');
+                    }
+                    text.append(labels[i]).append("=\"");
+                    escape(labels[i + 1]);
+                    text.append('"');
+                }
+                text.append('}');
+            }
+            text.append(' ');
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                text.append((long) value);
+            } else {
+                text.append(String.format(Locale.ROOT, "%.6f", value));
+            }
+            text.append('\n');
+        }
+
+        // Cumulative le buckets in seconds, _sum and _count of a LatencyHistogram
+        public void histogram(String name, LatencyHistogram histogram, String... labels) {
+            histogram(name, histogram.getBoundsMillis(), histogram.getBuckets(), histogram.getTotalMillis() / 1000, labels);
+        }
+
+        // Same for plain bucket counts: buckets has one more entry than boundsMillis, for the overflow
+        public void histogram(String name, double[] boundsMillis, long[] buckets, double sumSeconds, String... labels) {
+            String[] bucketLabels = new String[labels.length + 2];
+            System.arraycopy(labels, 0, bucketLabels, 0, labels.length);
+            bucketLabels[labels.length] = "le";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i];
+                bucketLabels[labels.length + 1] = i < boundsMillis.length
+                        ? String.format(Locale.ROOT, "%s", boundsMillis[i] / 1000) : "+Inf";
+                sample(name + "_bucket", cumulative, bucketLabels);
+            }
+            sample(name + "_sum", sumSeconds, labels);
+            sample(name + "_count", cumulative, labels);
+        }
+
+        private void escape(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    text.append('\\').append(c);
+                } else if (c == '\n') {
+                    text.append("\\n");
+                } else {
+                    text.append(c);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
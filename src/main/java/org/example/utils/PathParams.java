@@ -0,0 +1,35 @@
+package org.example.utils;
+
+import java.util.UUID;
+
+// Path variables of a matched route, already converted to the type declared in the pattern
+public class PathParams {
+    static final PathParams NONE = new PathParams(new String[0], new Object[0]);
+
+    private final String[] names;
+    private final Object[] values;
+
+    PathParams(String[] names, Object[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    // Value of a {name} variable
+    public String get(String name) {
+        return (String) value(name);
+    }
+
+    // Value of a {name:uuid} variable
+    public UUID getUUID(String name) {
+        return (UUID) value(name);
+    }
+
+    private Object value(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        throw new IllegalArgumentException("No path variable '" + name + "'");
+    }
+}
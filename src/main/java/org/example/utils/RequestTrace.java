@@ -0,0 +1,233 @@
+package org.example.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Timeline of one request: how long it spent in each phase (token check, body parsing, SQL, bcrypt,
+// serialization) and every statement it ran with its duration and row count. Two consumers, both off by
+// default:
+//  - mrp.trace.serverTiming=true adds a Server-Timing header to every response (shown by browser dev tools)
+//  - mrp.trace.slowRequestMs=N logs requests that took N ms or longer, one JSON object per line
+// While both are off no trace is created: every hook returns after checking a static final flag.
+// A trace belongs to the thread handling the request, the hooks find it through a ThreadLocal.
+public final class RequestTrace {
+    private static final boolean SERVER_TIMING = Config.getBoolean("mrp.trace.serverTiming", false);
+    private static final long SLOW_REQUEST_NANOS = Config.getLong("mrp.trace.slowRequestMs", 0) * 1_000_000;
+    private static final int MAX_STATEMENTS = Config.getInt("mrp.trace.maxStatements", 100);
+    private static final boolean ENABLED = SERVER_TIMING || SLOW_REQUEST_NANOS > 0;
+
+    private static final ThreadLocal<RequestTrace> current = new ThreadLocal<>();
+
+    public enum Phase {
+        AUTH("auth"), PARSE("parse"), DB("db"), BCRYPT("bcrypt"), SERIALIZE("serialize"), STREAM("stream");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private final String method;
+    private final String path;
+    private final long startedAt = System.nanoTime();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final int[] phaseCounts = new int[Phase.values().length];
+    private final List<Statement> statements = new ArrayList<>();
+    private int droppedStatements;
+    private String route;
+
+    // One SQL statement of the request; rows are those the caller read (queries) or changed (updates)
+    public static final class Statement {
+        private final RequestTrace trace;
+        private final String sql;
+        private long nanos;
+        private long rows = -1;
+        private boolean failed;
+
+        private Statement(RequestTrace trace, String sql) {
+            this.trace = trace;
+            this.sql = sql;
+        }
+
+        // Wraps the ResultSet so the rows the caller reads are counted
+        public ResultSet count(ResultSet rs) {
+            rows = 0;
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        try {
+                            Object result = method.invoke(rs, args);
+                            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                                rows++;
+                            }
+                            return result;
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        public void setRows(long rows) {
+            this.rows = rows;
+        }
+
+        public void finish(long nanos, boolean failed) {
+            this.nanos = nanos;
+            this.failed = failed;
+            trace.add(Phase.DB, nanos);
+        }
+    }
+
+    private RequestTrace(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    // Starts tracing the request on this thread; null (and nothing else happens) while tracing is off
+    public static RequestTrace start(HttpExchange exchange) {
+        if (!ENABLED) {
+            return null;
+        }
+        RequestTrace trace = new RequestTrace(exchange.getRequestMethod(), exchange.getRequestURI().toString());
+        current.set(trace);
+        return trace;
+    }
+
+    // Start time for phase(), 0 while the thread has no trace
+    public static long mark() {
+        return ENABLED && current.get() != null ? System.nanoTime() : 0;
+    }
+
+    // Adds the time since mark() to a phase of the current trace
+    public static void phase(Phase phase, long markedAt) {
+        if (!ENABLED || markedAt == 0) {
+            return;
+        }
+        RequestTrace trace = current.get();
+        if (trace != null) {
+            trace.add(phase, System.nanoTime() - markedAt);
+        }
+    }
+
+    // A statement about to run in the current trace, null while the thread has no trace
+    public static Statement statement(String sql) {
+        if (!ENABLED) {
+            return null;
+        }
+        RequestTrace trace = current.get();
+        if (trace == null) {
+            return null;
+        }
+        Statement statement = new Statement(trace, sql);
+        if (trace.statements.size() < MAX_STATEMENTS) {
+            trace.statements.add(statement);
+        } else {
+            trace.droppedStatements++;
+        }
+        return statement;
+    }
+
+    // Called right before the status line is sent, the last moment a header can still be added.
+    // Streamed responses send their headers early, so their timings stop there.
+    public static void beforeHeaders(HttpExchange exchange) {
+        if (!SERVER_TIMING) {
+            return;
+        }
+        RequestTrace trace = current.get();
+        if (trace != null) {
+            exchange.getResponseHeaders().set("Server-Timing", trace.serverTiming());
+        }
+    }
+
+    public void setRoute(String route) {
+        this.route = route;
+    }
+
+    // Ends the trace and logs it if the request was slow
+    public void finish(int status) {
+        current.remove();
+        long totalNanos = System.nanoTime() - startedAt;
+        if (SLOW_REQUEST_NANOS > 0 && totalNanos >= SLOW_REQUEST_NANOS) {
+            System.out.println(JsonHelper.toJson(slowRequest(status, totalNanos)));
+        }
+    }
+
+    private void add(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseCounts[phase.ordinal()]++;
+    }
+
+    // auth;dur=0.412, db;desc="3 statements";dur=2.870, serialize;dur=0.153, total;dur=4.021
+    private String serverTiming() {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (phaseCounts[i] == 0) {
+                continue;
+            }
+            header.append(phase.metric);
+            if (phase == Phase.DB) {
+                header.append(";desc=\"").append(phaseCounts[i]).append(phaseCounts[i] == 1 ? " statement\"" : " statements\"");
+            }
+            header.append(";dur=").append(format(phaseNanos[i])).append(", ");
+        }
+        return header.append("total;dur=").append(format(System.nanoTime() - startedAt)).toString();
+    }
+
+    private Map<String, Object> slowRequest(int status, long totalNanos) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("type", "slow_request");
+        entry.put("time", Instant.now().toString());
+        entry.put("method", method);
+        entry.put("path", path);
+        entry.put("route", route);
+        entry.put("status", status);
+        entry.put("totalMs", millis(totalNanos));
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (phaseCounts[i] > 0) {
+                phases.put(phase.metric, Map.of("ms", millis(phaseNanos[i]), "count", phaseCounts[i]));
+            }
+        }
+        entry.put("phases", phases);
+
+        List<Map<String, Object>> sql = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("sql", statement.sql.trim().replaceAll("\\s+", " "));
+            row.put("ms", millis(statement.nanos));
+            if (statement.rows >= 0) {
+                row.put("rows", statement.rows);
+            }
+            if (statement.failed) {
+                row.put("failed", true);
+            }
+            sql.add(row);
+        }
+        entry.put("statements", sql);
+        if (droppedStatements > 0) {
+            entry.put("statementsNotListed", droppedStatements);
+        }
+        return entry;
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    // Milliseconds with microsecond precision
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
@@ -0,0 +1,237 @@
+package org.example.utils;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Content-Encoding negotiation for response bodies: gzip, or deflate for clients that only accept that.
+// Bodies below mrp.http.compression.minSize are sent as they are, the framing and compression overhead
+// would eat most of the gain. mrp.http.compression.level trades CPU for size (1 = fastest, 9 = smallest).
+public class ResponseCompression {
+    private static final boolean ENABLED = Config.getBoolean("mrp.http.compression.enabled", true);
+    private static final int MIN_SIZE = Config.getInt("mrp.http.compression.minSize", 1024);
+    private static final int LEVEL = Config.getInt("mrp.http.compression.level", 6);
+
+    // Sends a complete body with a fixed Content-Length, compressed if negotiated and large enough
+    public static void send(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        send(exchange, statusCode, body, body.length);
+    }
+
+    // Same for the first length bytes of body, which the caller may reuse once this returns
+    public static void send(HttpExchange exchange, int statusCode, byte[] body, int length) throws IOException {
+        String encoding = negotiate(exchange);
+        if (encoding == null || length < MIN_SIZE) {
+            sendBytes(exchange, statusCode, body, length);
+            return;
+        }
+
+        BufferPool.Output compressed = new BufferPool.Output(length / 4);
+        try {
+            try (OutputStream os = encode(compressed, encoding)) {
+                os.write(body, 0, length);
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            sendBytes(exchange, statusCode, compressed.buffer(), compressed.size());
+        } finally {
+            compressed.release();
+        }
+    }
+
+    private static void sendBytes(HttpExchange exchange, int statusCode, byte[] body, int length) throws IOException {
+        RequestTrace.beforeHeaders(exchange);
+        exchange.sendResponseHeaders(statusCode, length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body, 0, length);
+        }
+    }
+
+    // Opens a body whose length is not known up front. The first minSize bytes are held back: if the
+    // body ends before that, it goes out uncompressed with a Content-Length, otherwise the headers are
+    // sent at that point and the rest is streamed (chunked), compressed if negotiated.
+    public static Body open(HttpExchange exchange, int statusCode) {
+        return new Body(exchange, statusCode, negotiate(exchange));
+    }
+
+    public static class Body extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private final String encoding;
+        private BufferPool.Output pending = new BufferPool.Output(MIN_SIZE);
+        private OutputStream out; // set once the headers are sent
+        private boolean closed;
+
+        Body(HttpExchange exchange, int statusCode, String encoding) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+            this.encoding = encoding;
+        }
+
+        // True once the status line and headers are on the wire and can no longer be changed
+        public boolean isCommitted() {
+            return out != null;
+        }
+
+        // Drops everything written so far and sends nothing, so the caller can still send an error instead.
+        // Only possible before the body is committed.
+        public void discard() {
+            if (isCommitted()) {
+                throw new IllegalStateException("Response already committed");
+            }
+            pending.release();
+            pending = null;
+            closed = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                return;
+            }
+            if (out != null) {
+                out.write(b, off, len);
+                return;
+            }
+            pending.write(b, off, len);
+            if (pending.size() >= MIN_SIZE) {
+                commit();
+            }
+        }
+
+        // Flushes are only passed on once committed, holding back the start is the point
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (out == null) {
+                try {
+                    RequestTrace.beforeHeaders(exchange);
+                    exchange.sendResponseHeaders(statusCode, pending.size() == 0 ? -1 : pending.size());
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(pending.buffer(), 0, pending.size());
+                    }
+                } finally {
+                    pending.release();
+                    pending = null;
+                }
+            } else {
+                out.close();
+            }
+        }
+
+        private void commit() throws IOException {
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            RequestTrace.beforeHeaders(exchange);
+            exchange.sendResponseHeaders(statusCode, 0);
+            out = encoding != null ? encode(exchange.getResponseBody(), encoding) : exchange.getResponseBody();
+            try {
+                out.write(pending.buffer(), 0, pending.size());
+            } finally {
+                pending.release();
+                pending = null;
+            }
+        }
+    }
+
+    // Picks the encoding for the request's Accept-Encoding, null for identity.
+    // Honours q-values (q=0 rules an encoding out) and "*"; gzip wins a tie.
+    static String negotiate(HttpExchange exchange) {
+        if (!ENABLED) {
+            return null;
+        }
+        addVary(exchange.getResponseHeaders());
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("deflate")) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        return deflate > 0 ? "deflate" : null;
+    }
+
+    private static void addVary(Headers headers) {
+        String vary = headers.getFirst("Vary");
+        if (vary == null) {
+            headers.set("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            headers.set("Vary", vary + ", Accept-Encoding");
+        }
+    }
+
+    private static OutputStream encode(OutputStream out, String encoding) throws IOException {
+        if (encoding.equals("gzip")) {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(LEVEL);
+                }
+            };
+        }
+        // HTTP "deflate" is the zlib format, which is what Deflater writes by default
+        Deflater deflater = new Deflater(LEVEL);
+        return new DeflaterOutputStream(out, deflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
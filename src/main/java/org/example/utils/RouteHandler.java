@@ -0,0 +1,11 @@
+package org.example.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.util.UUID;
+
+// Handles one route of the RouteTable. userId is the authenticated caller, null on public routes.
+@FunctionalInterface
+public interface RouteHandler {
+    void handle(HttpExchange exchange, PathParams params, UUID userId) throws Exception;
+}
@@ -0,0 +1,243 @@
+package org.example.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+// Route registry of the API, compiled into a trie of path segments as routes are added at startup.
+// Patterns are literal segments and variables, {name} for any segment or {name:uuid} for one that
+// is converted to a UUID once here, so handlers get typed values. Literal segments win over variables.
+// Resolving a request walks the path once, comparing segments in place; every node keeps the method
+// table of the routes ending there, which tells an unknown path (404) from an unsupported method (405).
+public class RouteTable {
+    private static final Match NOT_FOUND = new Match(404, null, null, null, null);
+
+    private final Node root = new Node();
+    private int maxVariables;
+
+    public static class Route {
+        private final String method;
+        private final String pattern;
+        private final boolean authenticated;
+        private final RouteHandler handler;
+        private final String[] names;
+        private final boolean[] uuids;
+        private final Match match; // shared match for routes without variables
+        private final Metrics.RouteMetrics metrics;
+        private boolean readOnly;
+
+        Route(String method, String pattern, boolean authenticated, RouteHandler handler, String[] names, boolean[] uuids) {
+            this.method = method;
+            this.pattern = pattern;
+            this.authenticated = authenticated;
+            this.handler = handler;
+            this.names = names;
+            this.uuids = uuids;
+            this.match = names.length == 0 ? new Match(200, this, PathParams.NONE, null, null) : null;
+            this.metrics = Metrics.getInstance().route(method, pattern);
+        }
+
+        public String getMethod() { return method; }
+        public String getPattern() { return pattern; }
+        public boolean isAuthenticated() { return authenticated; }
+        public RouteHandler getHandler() { return handler; }
+        public Metrics.RouteMetrics getMetrics() { return metrics; }
+        public boolean isReadOnly() { return readOnly; }
+
+        // Marks a route whose handler only reads, so its queries may be served by a read replica
+        public Route readOnly() {
+            this.readOnly = true;
+            return this;
+        }
+    }
+
+    // Outcome of resolving a request: 200 with the route and its parameters, 404, 405 with the methods
+    // the path does allow, or 400 when a path variable does not convert to its declared type
+    public static class Match {
+        private final int status;
+        private final Route route;
+        private final PathParams params;
+        private final String allow;
+        private final String error;
+
+        Match(int status, Route route, PathParams params, String allow, String error) {
+            this.status = status;
+            this.route = route;
+            this.params = params;
+            this.allow = allow;
+            this.error = error;
+        }
+
+        public int getStatus() { return status; }
+        public Route getRoute() { return route; }
+        public PathParams getParams() { return params; }
+        public String getAllow() { return allow; }
+        public String getError() { return error; }
+    }
+
+    private static class Node {
+        private String[] literals = new String[0];
+        private Node[] literalNodes = new Node[0];
+        private Node variable;
+        private final Map<String, Route> methods = new LinkedHashMap<>();
+        private Match methodNotAllowed;
+    }
+
+    // Adds a route that requires a valid token
+    public Route add(String method, String pattern, RouteHandler handler) {
+        return add(method, pattern, true, handler);
+    }
+
+    // Adds a route that is open to anonymous callers
+    public Route addPublic(String method, String pattern, RouteHandler handler) {
+        return add(method, pattern, false, handler);
+    }
+
+    private Route add(String method, String pattern, boolean authenticated, RouteHandler handler) {
+        String[] segments = Arrays.stream(pattern.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+        String[] names = new String[segments.length];
+        boolean[] uuids = new boolean[segments.length];
+        int variables = 0;
+
+        Node node = root;
+        for (String segment : segments) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String[] variable = segment.substring(1, segment.length() - 1).split(":", 2);
+                String type = variable.length > 1 ? variable[1].toLowerCase(Locale.ROOT) : "string";
+                if (!type.equals("string") && !type.equals("uuid")) {
+                    throw new IllegalArgumentException("Unknown path variable type '" + type + "' in " + pattern);
+                }
+                names[variables] = variable[0];
+                uuids[variables] = type.equals("uuid");
+                variables++;
+                if (node.variable == null) {
+                    node.variable = new Node();
+                }
+                node = node.variable;
+            } else {
+                node = literalChild(node, segment);
+            }
+        }
+
+        if (node.methods.containsKey(method)) {
+            throw new IllegalStateException("Duplicate route " + method + " " + pattern);
+        }
+        Route route = new Route(method, pattern, authenticated, handler,
+                Arrays.copyOf(names, variables), Arrays.copyOf(uuids, variables));
+        node.methods.put(method, route);
+        node.methodNotAllowed = new Match(405, null, null, String.join(", ", node.methods.keySet()), null);
+        maxVariables = Math.max(maxVariables, variables);
+        return route;
+    }
+
+    private Node literalChild(Node node, String segment) {
+        for (int i = 0; i < node.literals.length; i++) {
+            if (node.literals[i].equals(segment)) {
+                return node.literalNodes[i];
+            }
+        }
+        Node child = new Node();
+        node.literals = Arrays.copyOf(node.literals, node.literals.length + 1);
+        node.literalNodes = Arrays.copyOf(node.literalNodes, node.literalNodes.length + 1);
+        node.literals[node.literals.length - 1] = segment;
+        node.literalNodes[node.literalNodes.length - 1] = child;
+        return child;
+    }
+
+    // Finds the route for a request path (decoded, without query string). Empty segments are ignored,
+    // so a trailing slash or a doubled one resolves like the plain path.
+    public Match resolve(String method, String path) {
+        int[] bounds = maxVariables == 0 ? null : new int[maxVariables * 2];
+        Node node = find(root, path, 0, bounds, 0);
+        if (node == null) {
+            return NOT_FOUND;
+        }
+        Route route = node.methods.get(method);
+        if (route == null) {
+            return node.methodNotAllowed;
+        }
+        if (route.match != null) {
+            return route.match;
+        }
+
+        Object[] values = new Object[route.names.length];
+        for (int i = 0; i < values.length; i++) {
+            if (route.uuids[i]) {
+                values[i] = parseUUID(path, bounds[i * 2], bounds[i * 2 + 1]);
+                if (values[i] == null) {
+                    return new Match(400, route, null, null, "Invalid UUID format");
+                }
+            } else {
+                values[i] = path.substring(bounds[i * 2], bounds[i * 2 + 1]);
+            }
+        }
+        return new Match(200, route, new PathParams(route.names, values), null, null);
+    }
+
+    // Matches the rest of the path from pos below node, trying the literal child before the variable one;
+    // bounds collects start and end of the segments taken by variables
+    private Node find(Node node, String path, int pos, int[] bounds, int variables) {
+        int length = path.length();
+        while (pos < length && path.charAt(pos) == '/') {
+            pos++;
+        }
+        if (pos == length) {
+            return node.methods.isEmpty() ? null : node;
+        }
+
+        int end = path.indexOf('/', pos);
+        if (end < 0) {
+            end = length;
+        }
+        int segmentLength = end - pos;
+        for (int i = 0; i < node.literals.length; i++) {
+            String literal = node.literals[i];
+            if (literal.length() == segmentLength && path.regionMatches(pos, literal, 0, segmentLength)) {
+                Node found = find(node.literalNodes[i], path, end, bounds, variables);
+                if (found != null) {
+                    return found;
+                }
+                break;
+            }
+        }
+        if (node.variable != null) {
+            bounds[variables * 2] = pos;
+            bounds[variables * 2 + 1] = end;
+            return find(node.variable, path, end, bounds, variables + 1);
+        }
+        return null;
+    }
+
+    // Parses the canonical 8-4-4-4-12 hex form straight from the path, null if the segment is not one.
+    // Unlike UUID.fromString this neither copies the segment nor throws for malformed input.
+    static UUID parseUUID(String path, int start, int end) {
+        if (end - start != 36) {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            int offset = i - start;
+            if (offset == 8 || offset == 13 || offset == 18 || offset == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int digit = c < 128 ? Character.digit(c, 16) : -1; // ASCII only, digit() also takes other scripts
+            if (digit < 0) {
+                return null;
+            }
+            if (digits++ < 16) {
+                high = (high << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        return new UUID(high, low);
+    }
+}
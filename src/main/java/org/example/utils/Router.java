@@ -2,48 +2,217 @@ package org.example.utils;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import org.example.db.Database;
 import org.example.handlers.*;
+import org.example.db.ConnectionPool;
+import org.example.db.ReplicaSet;
+import org.example.services.LikeBuffer;
+import org.example.services.PasswordHasher;
+import org.example.services.TokenCache;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Router implements HttpHandler {
+    private final Database db = Database.getInstance();
+    private final Metrics metrics = Metrics.getInstance();
     private final AuthHandler authHandler = new AuthHandler();
     private final MediaHandler mediaHandler = new MediaHandler();
     private final RatingHandler ratingHandler = new RatingHandler();
     private final UserHandler userHandler = new UserHandler();
+    private final RouteTable routes = new RouteTable();
+
+    public Router() {
+        // Health check endpoint
+        routes.addPublic("GET", "/", this::handleHealth);
+        routes.addPublic("GET", "/api", this::handleHealth);
+        // Prometheus scrape endpoint
+        routes.addPublic("GET", "/api/metrics", this::handleMetrics);
+
+        authHandler.registerRoutes(routes);
+        mediaHandler.registerRoutes(routes);
+        ratingHandler.registerRoutes(routes);
+        userHandler.registerRoutes(routes);
+    }
+
+    public RouteTable getRoutes() {
+        return routes;
+    }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         String path = exchange.getRequestURI().getPath(); // zb "/login/
+        long startedAt = System.nanoTime();
+        metrics.requestStarted();
+        RequestTrace trace = RequestTrace.start(exchange); // null unless tracing is configured
+        RouteTable.Route route = null;
+
+        // One lease per request: every query of this request runs on the same pooled connection,
+        // which is returned to the pool as soon as the response has been handled
+        try (Database.Lease lease = db.lease()) {
+            RouteTable.Match match = routes.resolve(exchange.getRequestMethod(), path);
+            if (match.getStatus() == 404) {
+                JsonHelper.sendError(exchange, 404, "Endpoint not found: " + path);
+                return;
+            }
+            if (match.getStatus() == 405) {
+                exchange.getResponseHeaders().set("Allow", match.getAllow());
+                JsonHelper.sendError(exchange, 405, "Method not allowed");
+                return;
+            }
 
-        try {
-            // Route to appropriate handler based on path
-            if (path.startsWith("/api/auth/") || path.startsWith("/api/users/login")) {
-                authHandler.handle(exchange);
+            route = match.getRoute();
+            if (trace != null) {
+                trace.setRoute(route.getMethod() + " " + route.getPattern());
             }
-            else if (path.startsWith("/api/media")) {
-                // Could be /api/media or /api/media/{id}/ratings
-                if (path.contains("/ratings")) {
-                    ratingHandler.handle(exchange);
-                } else {
-                    mediaHandler.handle(exchange);
+            UUID userId = null;
+            if (route.isAuthenticated()) {
+                long authStartedAt = RequestTrace.mark();
+                userId = authHandler.validateToken(exchange);
+                RequestTrace.phase(RequestTrace.Phase.AUTH, authStartedAt);
+                if (userId == null) {
+                    JsonHelper.sendError(exchange, 401, "Authentication required");
+                    return;
                 }
             }
-            else if (path.equals("/") || path.equals("/api") || path.equals("/api/")) {
-                // Health check endpoint
-                JsonHelper.sendResponse(exchange, 200,
-                        java.util.Map.of(
-                                "status", "ok",
-                                "service", "Media Ratings Platform"
-                        )
-                );
+            if (match.getStatus() == 400) {
+                JsonHelper.sendError(exchange, 400, match.getError());
+                return;
             }
-            else {
-                JsonHelper.sendError(exchange, 404, "Endpoint not found: " + path);
+
+            if (route.isReadOnly()) {
+                // Token lookups above stay on the primary, a token issued a moment ago may not be on a replica yet
+                lease.preferReplica(userId);
+                route.getHandler().handle(exchange, match.getParams(), userId);
+            } else if (userId != null && !route.getMethod().equals("GET")) {
+                // Read-your-writes: the window starts with the write and again once it has finished
+                db.pinToPrimary(userId);
+                try {
+                    route.getHandler().handle(exchange, match.getParams(), userId);
+                } finally {
+                    db.pinToPrimary(userId);
+                }
+            } else {
+                route.getHandler().handle(exchange, match.getParams(), userId);
             }
+        } catch (RejectedExecutionException e) {
+            // Password hashing pool is saturated, ask the client to come back instead of queueing more work
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            JsonHelper.sendError(exchange, 503, "Server busy, please retry");
         } catch (Exception e) {
             e.printStackTrace();
-            JsonHelper.sendError(exchange, 500, "Internal server error: " + e.getMessage());
+            JsonHelper.sendError(exchange, 500, "Internal server error");
+        } finally {
+            Metrics.RouteMetrics routeMetrics = route != null ? route.getMetrics() : metrics.unmatched();
+            routeMetrics.record(exchange.getResponseCode(), System.nanoTime() - startedAt);
+            metrics.requestFinished();
+            if (trace != null) {
+                trace.finish(exchange.getResponseCode());
+            }
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange, PathParams params, UUID userId) throws IOException {
+        JsonHelper.sendResponse(exchange, 200,
+                Map.of(
+                        "status", "ok",
+                        "service", "Media Ratings Platform",
+                        "dbPool", db.getPoolStats(),
+                        "dbReplicas", db.getReplicas() != null ? db.getReplicas().getStats() : List.of(),
+                        "tokenCache", TokenCache.getInstance().getStats(),
+                        "passwordHasher", PasswordHasher.getInstance().getStats()
+                )
+        );
+    }
+
+    private void handleMetrics(HttpExchange exchange, PathParams params, UUID userId) throws IOException {
+        Metrics.Writer out = new Metrics.Writer();
+        metrics.writeTo(out);
+
+        List<ConnectionPool.Stats> pools = new ArrayList<>();
+        pools.add(db.getPoolStats());
+        ReplicaSet replicas = db.getReplicas();
+        if (replicas != null) {
+            replicas.getStats().forEach(replica -> pools.add(replica.getPool()));
+        }
+        out.help("mrp_db_pool_connections", "gauge", "Pooled connections by state");
+        for (ConnectionPool.Stats pool : pools) {
+            out.sample("mrp_db_pool_connections", pool.getActive(), "pool", pool.getName(), "state", "active");
+            out.sample("mrp_db_pool_connections", pool.getIdle(), "pool", pool.getName(), "state", "idle");
+        }
+        out.help("mrp_db_pool_max_connections", "gauge", "Upper limit of the pool");
+        pools.forEach(pool -> out.sample("mrp_db_pool_max_connections", pool.getMaxSize(), "pool", pool.getName()));
+        out.help("mrp_db_pool_waiters", "gauge", "Threads waiting for a connection");
+        pools.forEach(pool -> out.sample("mrp_db_pool_waiters", pool.getWaiters(), "pool", pool.getName()));
+        out.help("mrp_db_pool_acquired_total", "counter", "Connections handed out");
+        pools.forEach(pool -> out.sample("mrp_db_pool_acquired_total", pool.getAcquired(), "pool", pool.getName()));
+        out.help("mrp_db_pool_timeouts_total", "counter", "Borrows that gave up waiting for a connection");
+        pools.forEach(pool -> out.sample("mrp_db_pool_timeouts_total", pool.getTimeouts(), "pool", pool.getName()));
+        out.help("mrp_db_pool_created_total", "counter", "Connections opened");
+        pools.forEach(pool -> out.sample("mrp_db_pool_created_total", pool.getCreated(), "pool", pool.getName()));
+        out.help("mrp_db_pool_destroyed_total", "counter", "Connections closed");
+        pools.forEach(pool -> out.sample("mrp_db_pool_destroyed_total", pool.getDestroyed(), "pool", pool.getName()));
+        out.help("mrp_db_pool_wait_seconds", "histogram", "Time spent waiting for a connection");
+        pools.forEach(pool -> out.histogram("mrp_db_pool_wait_seconds",
+                Arrays.stream(pool.getWaitHistogramBoundsMs()).asDoubleStream().toArray(),
+                pool.getWaitHistogram(), pool.getWaitTimeTotalMicros() / 1e6, "pool", pool.getName()));
+        out.help("mrp_db_statement_cache_total", "counter", "Prepared statement cache lookups");
+        for (ConnectionPool.Stats pool : pools) {
+            out.sample("mrp_db_statement_cache_total", pool.getStatementCacheHits(), "pool", pool.getName(), "result", "hit");
+            out.sample("mrp_db_statement_cache_total", pool.getStatementCacheMisses(), "pool", pool.getName(), "result", "miss");
         }
+
+        if (replicas != null) {
+            out.help("mrp_db_replica_healthy", "gauge", "1 while the replica is in rotation");
+            replicas.getStats().forEach(replica -> out.sample("mrp_db_replica_healthy", replica.isHealthy() ? 1 : 0,
+                    "pool", replica.getPool().getName()));
+            out.help("mrp_db_replica_lag_seconds", "gauge", "Replication lag at the last health check");
+            replicas.getStats().forEach(replica -> out.sample("mrp_db_replica_lag_seconds", replica.getLagMillis() / 1000.0,
+                    "pool", replica.getPool().getName()));
+            out.help("mrp_db_read_routing_total", "counter", "Requests of read-only routes by where their reads went");
+            out.sample("mrp_db_read_routing_total", replicas.getReplicaReads(), "target", "replica");
+            out.sample("mrp_db_read_routing_total", replicas.getPinnedReads(), "target", "primary_pinned");
+            out.sample("mrp_db_read_routing_total", replicas.getFallbackReads(), "target", "primary_fallback");
+        }
+
+        TokenCache.Stats tokens = TokenCache.getInstance().getStats();
+        out.help("mrp_token_cache_entries", "gauge", "Cached tokens");
+        out.sample("mrp_token_cache_entries", tokens.getSize());
+        out.help("mrp_token_cache_lookups_total", "counter", "Token lookups by result");
+        out.sample("mrp_token_cache_lookups_total", tokens.getHits(), "result", "hit");
+        out.sample("mrp_token_cache_lookups_total", tokens.getNegativeHits(), "result", "negative_hit");
+        out.sample("mrp_token_cache_lookups_total", tokens.getMisses(), "result", "miss");
+        out.help("mrp_token_cache_evictions_total", "counter", "Tokens evicted to stay within the size limit");
+        out.sample("mrp_token_cache_evictions_total", tokens.getEvictions());
+
+        PasswordHasher.Stats hasher = PasswordHasher.getInstance().getStats();
+        out.help("mrp_password_hasher_tasks", "gauge", "bcrypt tasks by state");
+        out.sample("mrp_password_hasher_tasks", hasher.getActive(), "state", "active");
+        out.sample("mrp_password_hasher_tasks", hasher.getQueued(), "state", "queued");
+        out.help("mrp_password_hasher_rejected_total", "counter", "bcrypt tasks turned away because the queue was full");
+        out.sample("mrp_password_hasher_rejected_total", hasher.getRejected());
+        out.help("mrp_password_hasher_queue_seconds", "histogram", "Time a bcrypt task waited for a thread");
+        out.histogram("mrp_password_hasher_queue_seconds", hasher.getHashQueueWait(), "operation", "hash");
+        out.histogram("mrp_password_hasher_queue_seconds", hasher.getVerifyQueueWait(), "operation", "verify");
+        out.help("mrp_password_hasher_seconds", "histogram", "Time spent computing bcrypt");
+        out.histogram("mrp_password_hasher_seconds", hasher.getHash(), "operation", "hash");
+        out.histogram("mrp_password_hasher_seconds", hasher.getVerify(), "operation", "verify");
+
+        out.help("mrp_response_buffers_total", "counter", "Response body buffers taken from the pool or allocated");
+        out.sample("mrp_response_buffers_total", BufferPool.getReused(), "source", "pool");
+        out.sample("mrp_response_buffers_total", BufferPool.getAllocated(), "source", "allocated");
+
+        out.help("mrp_like_buffer_pending", "gauge", "Like changes not yet written to the database");
+        out.sample("mrp_like_buffer_pending", LikeBuffer.getInstance().getPendingCount());
+
+        exchange.getResponseHeaders().set("Content-Type", Metrics.Writer.CONTENT_TYPE);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        ResponseCompression.send(exchange, 200, out.toString().getBytes(StandardCharsets.UTF_8));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package org.example.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+    private ConnectionPool pool;
+
+    // Tests pass a validateAfterIdle of one hour unless they are about validation, so borrow() never checks
+    private ConnectionPool pool(String name, int minSize, int maxSize, long acquireTimeoutMillis,
+                                long idleTimeoutMillis, long validateAfterIdleMillis) {
+        pool = new ConnectionPool(name, StubDriver.url(name), new Properties(), minSize, maxSize,
+                acquireTimeoutMillis, idleTimeoutMillis, validateAfterIdleMillis, 8);
+        return pool;
+    }
+
+    @AfterEach
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void startOpensMinimumSize() throws Exception {
+        pool("start", 2, 4, 100, 60000, 3600000).start();
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.getTotal());
+        assertEquals(2, stats.getIdle());
+        assertEquals(2, StubDriver.connections("start").size());
+    }
+
+    @Test
+    void releasedConnectionIsReused() throws Exception {
+        pool("reuse", 0, 2, 100, 60000, 3600000);
+
+        PooledConnection first = pool.borrow();
+        pool.release(first);
+        PooledConnection second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, StubDriver.connections("reuse").size());
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.getAcquired());
+        assertEquals(1, stats.getActive());
+        pool.release(second);
+        assertEquals(0, pool.getStats().getActive());
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() throws Exception {
+        pool("exhausted", 0, 1, 50, 60000, 3600000);
+
+        PooledConnection held = pool.borrow();
+        assertThrows(SQLTimeoutException.class, pool::borrow);
+        assertEquals(1, pool.getStats().getTimeouts());
+
+        pool.release(held);
+        pool.release(pool.borrow());
+        assertEquals(1, pool.getStats().getTotal());
+    }
+
+    @Test
+    void waiterGetsReleasedConnection() throws Exception {
+        pool("waiter", 0, 1, 5000, 60000, 3600000);
+
+        PooledConnection held = pool.borrow();
+        CompletableFuture<PooledConnection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (pool.getStats().getWaiters() == 0) {
+            Thread.sleep(1);
+        }
+        pool.release(held);
+
+        assertSame(held, waiting.get(5, TimeUnit.SECONDS));
+        pool.release(held);
+    }
+
+    @Test
+    void releaseDiscardsClosedConnection() throws Exception {
+        pool("closed", 0, 2, 100, 60000, 3600000);
+
+        PooledConnection broken = pool.borrow();
+        broken.connection().close();
+        pool.release(broken);
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(0, stats.getTotal());
+        assertEquals(0, stats.getIdle());
+        assertEquals(1, stats.getDestroyed());
+        assertNotSame(broken, pool.borrow());
+    }
+
+    @Test
+    void releaseRollsBackOpenTransaction() throws Exception {
+        pool("transaction", 0, 1, 100, 60000, 3600000);
+
+        PooledConnection pooled = pool.borrow();
+        pooled.connection().setAutoCommit(false);
+        pooled.connection().setReadOnly(true);
+        pool.release(pooled);
+
+        StubDriver.StubConnection stub = StubDriver.connections("transaction").get(0);
+        assertTrue(stub.autoCommit);
+        assertFalse(stub.readOnly);
+    }
+
+    @Test
+    void connectionIdleLongerThanValidateAfterIdleIsCheckedAndReplacedWhenInvalid() throws Exception {
+        pool("validate", 0, 2, 100, 60000, 0);
+
+        PooledConnection first = pool.borrow();
+        pool.release(first);
+        StubDriver.StubConnection stub = StubDriver.connections("validate").get(0);
+        stub.valid = false;
+
+        PooledConnection second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(1, stub.validations);
+        assertTrue(stub.closed);
+        assertEquals(1, pool.getStats().getDestroyed());
+    }
+
+    @Test
+    void evictIdleClosesLeastRecentlyUsedDownToMinimum() throws Exception {
+        pool("evict", 1, 3, 100, 20, 3600000);
+
+        PooledConnection a = pool.borrow();
+        PooledConnection b = pool.borrow();
+        PooledConnection c = pool.borrow();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        Thread.sleep(40);
+        pool.evictIdle();
+
+        List<StubDriver.StubConnection> stubs = StubDriver.connections("evict");
+        assertEquals(3, stubs.size());
+        assertTrue(stubs.get(0).closed);
+        assertTrue(stubs.get(1).closed);
+        assertFalse(stubs.get(2).closed, "the most recently used connection stays");
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.getTotal());
+        assertEquals(2, stats.getDestroyed());
+        assertSame(c, pool.borrow());
+    }
+
+    @Test
+    void evictIdleKeepsConnectionsUsedWithinIdleTimeout() throws Exception {
+        pool("recent", 0, 2, 100, 60000, 3600000);
+
+        pool.release(pool.borrow());
+        pool.evictIdle();
+
+        assertEquals(1, pool.getStats().getIdle());
+        assertEquals(0, pool.getStats().getDestroyed());
+    }
+
+    @Test
+    void evictIdleRefillsToMinimum() throws Exception {
+        pool("refill", 2, 2, 100, 60000, 3600000).start();
+
+        PooledConnection broken = pool.borrow();
+        broken.connection().close();
+        pool.release(broken);
+        assertEquals(1, pool.getStats().getTotal());
+
+        pool.evictIdle();
+        assertEquals(2, pool.getStats().getTotal());
+    }
+
+    @Test
+    void immediateBorrowCountsInFirstWaitBucket() throws Exception {
+        pool("histogram", 1, 1, 100, 60000, 3600000).start();
+
+        pool.release(pool.borrow());
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.getWaitHistogramBoundsMs()[0]);
+        assertEquals(1, stats.getWaitHistogram()[0]);
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeakDetectorTest {
+
+    @Test
+    void enabledForTestRuns() {
+        assertTrue(LeakDetector.ENABLED, "surefire sets mrp.db.leakDetection=true");
+    }
+
+    @Test
+    void reportsAndClosesUnclosedStatement() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        Connection connection = detector.wrap(DriverManager.getConnection(StubDriver.url("leak")));
+
+        PreparedStatement leaked = connection.prepareStatement("SELECT 1");
+        Statement closed = connection.createStatement();
+        closed.close();
+
+        assertEquals(1, detector.check());
+        assertTrue(leaked.isClosed(), "check() closes what it reports");
+        assertEquals(0, detector.check(), "a statement is reported once");
+    }
+
+    @Test
+    void closedStatementsAreNotReported() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        Connection connection = detector.wrap(DriverManager.getConnection(StubDriver.url("no-leak")));
+
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT 1")) {
+            assertFalse(stmt.isClosed());
+        }
+
+        assertEquals(0, detector.check());
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledConnectionTest {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private StubDriver.StubConnection stub;
+    private PooledConnection pooled;
+
+    @BeforeEach
+    void open() throws Exception {
+        DriverManager.getConnection(StubDriver.url("statements"));
+        stub = StubDriver.connections("statements").get(0);
+        pooled = new PooledConnection(stub.proxy, 2, hits, misses);
+    }
+
+    @Test
+    void releasedStatementIsReusedWithClearedParameters() throws Exception {
+        PreparedStatement first = pooled.prepare("SELECT 1");
+        pooled.release("SELECT 1", first);
+        PreparedStatement second = pooled.prepare("SELECT 1");
+
+        assertSame(first, second);
+        assertFalse(first.isClosed());
+        assertEquals(1, stub.statements.get(0).clears);
+        assertEquals(1, hits.sum());
+        assertEquals(1, misses.sum());
+    }
+
+    @Test
+    void statementInUseIsNotHandedOutTwice() throws Exception {
+        PreparedStatement outer = pooled.prepare("SELECT 1");
+        PreparedStatement inner = pooled.prepare("SELECT 1");
+
+        assertNotSame(outer, inner);
+        pooled.release("SELECT 1", inner);
+        assertTrue(inner.isClosed(), "the extra statement is not cached");
+        pooled.release("SELECT 1", outer);
+        assertFalse(outer.isClosed());
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsClosedBeyondCacheSize() throws Exception {
+        for (String sql : new String[]{"SELECT 1", "SELECT 2", "SELECT 3"}) {
+            pooled.release(sql, pooled.prepare(sql));
+        }
+
+        assertTrue(stub.statements.get(0).closed);
+        assertFalse(stub.statements.get(1).closed);
+        assertFalse(stub.statements.get(2).closed);
+    }
+
+    @Test
+    void resetClosesStatementsStillInUse() throws Exception {
+        PreparedStatement forgotten = pooled.prepare("SELECT 1");
+        pooled.reset();
+
+        assertTrue(forgotten.isClosed());
+        PreparedStatement fresh = pooled.prepare("SELECT 1");
+        assertNotSame(forgotten, fresh);
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+// JDBC driver for jdbc:stub:<name> URLs. Connections and statements are in-memory stand-ins that only keep
+// the state the pool looks at (closed, valid, auto-commit, read-only), so pool and statement handling can
+// be tested without a database. Every connection opened for a name is recorded for the test to inspect.
+final class StubDriver implements Driver {
+    private static final Map<String, List<StubConnection>> opened = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new StubDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // A URL of its own per test keeps the recorded connections apart
+    static String url(String name) {
+        opened.put(name, new CopyOnWriteArrayList<>());
+        return "jdbc:stub:" + name;
+    }
+
+    static List<StubConnection> connections(String name) {
+        return opened.get(name);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        StubConnection connection = new StubConnection();
+        opened.computeIfAbsent(url.substring("jdbc:stub:".length()), name -> new CopyOnWriteArrayList<>()).add(connection);
+        return connection.proxy;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith("jdbc:stub:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    static final class StubConnection {
+        final Connection proxy;
+        final List<StubStatement> statements = new CopyOnWriteArrayList<>();
+        volatile boolean closed;
+        volatile boolean valid = true;
+        volatile int validations;
+        boolean autoCommit = true;
+        boolean readOnly;
+
+        StubConnection() {
+            proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "close": closed = true; return null;
+                            case "isClosed": return closed;
+                            case "isValid": validations++; return valid && !closed;
+                            case "getAutoCommit": return autoCommit;
+                            case "setAutoCommit": autoCommit = (Boolean) args[0]; return null;
+                            case "isReadOnly": return readOnly;
+                            case "setReadOnly": readOnly = (Boolean) args[0]; return null;
+                            case "prepareStatement":
+                            case "createStatement":
+                                StubStatement statement = new StubStatement(method.getName().equals("prepareStatement") ? (String) args[0] : null);
+                                statements.add(statement);
+                                return statement.proxy;
+                            case "hashCode": return System.identityHashCode(p);
+                            case "equals": return p == args[0];
+                            default: return defaultValue(method.getReturnType());
+                        }
+                    });
+        }
+    }
+
+    static final class StubStatement {
+        final Statement proxy;
+        final String sql;
+        boolean closed;
+        int clears;
+
+        StubStatement(String sql) {
+            this.sql = sql;
+            Class<?> type = sql != null ? PreparedStatement.class : Statement.class;
+            proxy = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                    (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "close": closed = true; return null;
+                            case "isClosed": return closed;
+                            case "clearParameters": clears++; return null;
+                            case "hashCode": return System.identityHashCode(p);
+                            case "equals": return p == args[0];
+                            default: return defaultValue(method.getReturnType());
+                        }
+                    });
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
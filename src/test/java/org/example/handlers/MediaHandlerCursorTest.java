@@ -0,0 +1,83 @@
+package org.example.handlers;
+
+import org.example.models.Rating;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MediaHandlerCursorTest {
+    private final UUID id = UUID.fromString("0b6f1c7e-3a52-4c7e-9d0e-5f2a8c1b4d67");
+
+    @Test
+    void cursorRoundTripsForEverySortMode() {
+        assertRoundTrip(MediaHandler.ListSort.TITLE, "The Matrix");
+        assertRoundTrip(MediaHandler.ListSort.YEAR, 1999);
+        assertRoundTrip(MediaHandler.ListSort.YEAR, -1);
+        assertRoundTrip(MediaHandler.ListSort.RATING, 4.25);
+        assertRoundTrip(MediaHandler.ListSort.RELEVANCE, 0.0607927106320858);
+    }
+
+    @Test
+    void titleKeepsSeparatorsAndNonAsciiCharacters() {
+        assertRoundTrip(MediaHandler.ListSort.TITLE, "Amélie\nLe fabuleux destin");
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = MediaHandler.encodeCursor(MediaHandler.ListSort.TITLE, "??>>~~", id);
+        assertEquals(-1, cursor.indexOf('+'));
+        assertEquals(-1, cursor.indexOf('/'));
+        assertEquals(-1, cursor.indexOf('='));
+    }
+
+    @Test
+    void cursorFromAnotherSortModeIsRejected() {
+        String cursor = MediaHandler.encodeCursor(MediaHandler.ListSort.YEAR, 1999, id);
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.RATING, cursor));
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.TITLE, cursor));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.TITLE, "not base64!"));
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.TITLE, encode("title\n" + id)));
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.TITLE, encode("title\nnot-a-uuid\nThe Matrix")));
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.YEAR, encode("year\n" + id + "\nlast year")));
+        assertNull(MediaHandler.decodeCursor(MediaHandler.ListSort.RATING, encode("rating\n" + id + "\n")));
+    }
+
+    @Test
+    void ratingsCursorRoundTripsWithSubMillisecondPrecision() {
+        Timestamp createdAt = Timestamp.valueOf("2026-03-14 15:09:26.535897");
+        Rating rating = new Rating();
+        rating.setId(id);
+        rating.setCreatedAt(createdAt);
+
+        String cursor = MediaHandler.encodeRatingsCursor(rating);
+        assertArrayEquals(new Object[]{createdAt, id}, MediaHandler.decodeRatingsCursor(cursor));
+    }
+
+    @Test
+    void malformedRatingsCursorIsRejected() {
+        assertNull(MediaHandler.decodeRatingsCursor("%%%"));
+        assertNull(MediaHandler.decodeRatingsCursor(encode("2026-03-14 15:09:26.5")));
+        assertNull(MediaHandler.decodeRatingsCursor(encode("yesterday\n" + id)));
+        assertNull(MediaHandler.decodeRatingsCursor(encode("2026-03-14 15:09:26.5\nnot-a-uuid")));
+    }
+
+    private void assertRoundTrip(MediaHandler.ListSort sort, Object sortKey) {
+        String cursor = MediaHandler.encodeCursor(sort, sortKey, id);
+        assertArrayEquals(new Object[]{sortKey, id}, MediaHandler.decodeCursor(sort, cursor));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
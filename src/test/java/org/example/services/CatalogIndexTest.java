@@ -0,0 +1,130 @@
+package org.example.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CatalogIndexTest {
+    private final UUID matrix = UUID.randomUUID();
+    private final UUID alien = UUID.randomUUID();
+    private final UUID up = UUID.randomUUID();
+    private final UUID doom = UUID.randomUUID();
+
+    private CatalogIndex catalog() {
+        CatalogIndex index = new CatalogIndex();
+        index.put(matrix, "movie", "16", "Action, Sci-Fi");
+        index.put(alien, "movie", "18", "Horror,Sci-Fi");
+        index.put(up, "movie", "0", "Animation, Comedy");
+        index.put(doom, "game", "18", "action,horror");
+        return index;
+    }
+
+    @Test
+    void allGenresMatchesEntriesHavingEveryGenre() {
+        assertIds(catalog().match(List.of("sci-fi", "horror"), true, null, null, 100), alien);
+    }
+
+    @Test
+    void anyGenreMatchesEntriesHavingOneOfThem() {
+        assertIds(catalog().match(List.of("comedy", "horror"), false, null, null, 100), alien, up, doom);
+    }
+
+    @Test
+    void typeAndAgeNarrowGenreMatch() {
+        CatalogIndex index = catalog();
+        assertIds(index.match(List.of("action"), true, "game", null, 100), doom);
+        assertIds(index.match(List.of("horror", "action"), false, "movie", "18", 100), alien);
+        assertIds(index.match(null, true, null, "18", 100), alien, doom);
+        assertIds(index.match(List.of(), true, null, null, 100), matrix, alien, up, doom);
+    }
+
+    @Test
+    void unknownValuesMatchNothing() {
+        CatalogIndex index = catalog();
+        assertIds(index.match(List.of("western"), false, null, null, 100));
+        assertIds(index.match(List.of("action", "western"), true, null, null, 100));
+        assertIds(index.match(null, true, "series", null, 100));
+    }
+
+    @Test
+    void putReplacesPreviousAttributes() {
+        CatalogIndex index = catalog();
+        index.put(matrix, "series", "12", "Drama");
+
+        assertIds(index.match(List.of("action"), true, null, null, 100), doom);
+        assertIds(index.match(List.of("drama"), true, "series", "12", 100), matrix);
+    }
+
+    @Test
+    void removedEntryNoLongerMatches() {
+        CatalogIndex index = catalog();
+        index.remove(alien);
+        index.remove(UUID.randomUUID());
+
+        assertIds(index.match(List.of("horror"), true, null, null, 100), doom);
+        assertEquals(3, index.match(null, true, null, null, 100).getCount());
+    }
+
+    @Test
+    void idsAreOmittedAboveMaximum() {
+        CatalogIndex.Match match = catalog().match(null, true, "movie", null, 2);
+        assertEquals(3, match.getCount());
+        assertNull(match.getIds());
+    }
+
+    @Test
+    void parseGenresTrimsLowercasesAndDropsEmptyNames() {
+        assertEquals(List.of("action", "sci-fi"), List.copyOf(CatalogIndex.parseGenres(" Action,, SCI-FI ,action")));
+        assertEquals(Set.of(), CatalogIndex.parseGenres(null));
+    }
+
+    @Test
+    void rebuildReplacesStateAndReplaysWritesMadeDuringLoad() throws Exception {
+        UUID added = UUID.randomUUID();
+        CatalogIndex index = new CatalogIndex() {
+            @Override
+            void load(State loaded) {
+                loaded.put(new Entry(matrix, "movie", "16", Set.of("action")));
+                loaded.put(new Entry(alien, "movie", "18", Set.of("horror")));
+                // Written through the API while the load is reading rows it has already passed
+                put(added, "movie", "12", "Action");
+                remove(alien);
+                put(matrix, "movie", "16", "Drama");
+            }
+        };
+        index.put(up, "movie", "0", "Comedy");
+
+        index.rebuild();
+
+        assertIds(index.match(null, true, null, null, 100), matrix, added);
+        assertIds(index.match(List.of("action"), true, null, null, 100), added);
+        assertIds(index.match(List.of("drama"), true, null, null, 100), matrix);
+    }
+
+    @Test
+    void failedRebuildKeepsCurrentState() {
+        CatalogIndex index = new CatalogIndex() {
+            @Override
+            void load(State loaded) {
+                throw new IllegalStateException("load failed");
+            }
+        };
+        index.put(up, "movie", "0", "Comedy");
+
+        assertThrows(IllegalStateException.class, index::rebuild);
+        index.put(matrix, "movie", "16", "Action");
+        assertIds(index.match(null, true, null, null, 100), up, matrix);
+    }
+
+    private static void assertIds(CatalogIndex.Match match, UUID... expected) {
+        assertEquals(expected.length, match.getCount());
+        assertEquals(Set.of(expected), Set.copyOf(Arrays.asList(match.getIds())));
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LeaderboardServiceTest {
+    private final LeaderboardService leaderboard = new LeaderboardService();
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final UUID carol = UUID.randomUUID();
+    private final UUID dave = UUID.randomUUID();
+
+    @Test
+    void topListsUsersByScoreWithRatingsAndLikes() {
+        rate(alice, 3);
+        rate(bob, 1);
+        like(bob, 4);
+        rate(carol, 2);
+
+        LeaderboardService.Board board = leaderboard.top(LeaderboardService.ALL_TIME, 10, null);
+        assertEquals(List.of(bob, alice, carol), ids(board.getTop()));
+        LeaderboardService.Standing first = board.getTop().get(0);
+        assertEquals(1, first.getRatings());
+        assertEquals(4, first.getLikesReceived());
+        assertEquals(5, first.getScore());
+        assertEquals(3, board.getRankedUsers());
+        assertNull(board.getUser());
+    }
+
+    @Test
+    void topIsLimitedButUserStandingIsNot() {
+        rate(alice, 3);
+        rate(bob, 2);
+        rate(carol, 1);
+
+        LeaderboardService.Board board = leaderboard.top(LeaderboardService.ALL_TIME, 2, carol);
+        assertEquals(List.of(alice, bob), ids(board.getTop()));
+        assertEquals(3, board.getUser().getRank());
+        assertEquals(1, board.getUser().getScore());
+        assertEquals(3, board.getRankedUsers());
+    }
+
+    @Test
+    void equalScoresShareRank() {
+        rate(alice, 3);
+        rate(bob, 2);
+        like(carol, 2);
+        rate(dave, 1);
+
+        LeaderboardService.Board board = leaderboard.top(LeaderboardService.ALL_TIME, 10, carol);
+        assertEquals(List.of(1, 2, 2, 4), ranks(board.getTop()));
+        assertEquals(2, board.getUser().getRank());
+    }
+
+    @Test
+    void removedActivityLowersScoreAndDropsInactiveUsers() {
+        rate(alice, 2);
+        like(alice, 1);
+        rate(bob, 2);
+        leaderboard.ratingRemoved(alice, null);
+        leaderboard.likeRemoved(alice, null);
+
+        LeaderboardService.Board board = leaderboard.top(LeaderboardService.ALL_TIME, 10, alice);
+        assertEquals(List.of(bob, alice), ids(board.getTop()));
+        assertEquals(1, board.getUser().getScore());
+
+        leaderboard.ratingRemoved(alice, null);
+        board = leaderboard.top(LeaderboardService.ALL_TIME, 10, alice);
+        assertEquals(List.of(bob), ids(board.getTop()));
+        assertNull(board.getUser());
+        assertEquals(1, board.getRankedUsers());
+    }
+
+    @Test
+    void dayWindowsCountOnlyRecentActivity() {
+        leaderboard.ratingAdded(alice, daysAgo(0));
+        leaderboard.ratingAdded(alice, daysAgo(6));
+        leaderboard.likeAdded(alice, daysAgo(2));
+        leaderboard.ratingAdded(bob, daysAgo(7));
+        leaderboard.likeAdded(bob, daysAgo(29));
+        leaderboard.ratingAdded(carol, daysAgo(30));
+        leaderboard.ratingAdded(dave, daysAgo(400));
+
+        assertEquals(List.of("all", "7d", "30d"), leaderboard.getWindows());
+        assertEquals(List.of(alice), ids(leaderboard.top("7d", 10, null).getTop()));
+        assertEquals(List.of(alice, bob), ids(leaderboard.top("30d", 10, null).getTop()));
+        assertEquals(4, leaderboard.top(LeaderboardService.ALL_TIME, 10, null).getRankedUsers());
+        assertNull(leaderboard.top("1d", 10, null));
+    }
+
+    @Test
+    void ranksMatchSortedScoresUnderRandomUpdates() {
+        Random random = new Random(42);
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            users.add(UUID.randomUUID());
+        }
+        Map<UUID, Long> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            UUID user = users.get(random.nextInt(users.size()));
+            long score = expected.getOrDefault(user, 0L);
+            if (score > 0 && random.nextInt(3) == 0) {
+                leaderboard.likeRemoved(user, null);
+                score--;
+            } else {
+                leaderboard.likeAdded(user, null);
+                score++;
+            }
+            if (score == 0) {
+                expected.remove(user);
+            } else {
+                expected.put(user, score);
+            }
+        }
+
+        LeaderboardService.Board board = leaderboard.top(LeaderboardService.ALL_TIME, users.size(), null);
+        List<Long> sorted = new ArrayList<>(expected.values());
+        sorted.sort(Comparator.reverseOrder());
+        assertEquals(expected.size(), board.getRankedUsers());
+        for (int i = 0; i < board.getTop().size(); i++) {
+            LeaderboardService.Standing standing = board.getTop().get(i);
+            assertEquals(sorted.get(i), standing.getScore());
+            assertEquals(sorted.indexOf(standing.getScore()) + 1, standing.getRank());
+            assertEquals(expected.get(standing.getUserId()), standing.getScore());
+        }
+        for (UUID user : expected.keySet()) {
+            LeaderboardService.Standing own = leaderboard.top(LeaderboardService.ALL_TIME, 0, user).getUser();
+            assertEquals(sorted.indexOf(expected.get(user)) + 1, own.getRank());
+        }
+    }
+
+    @Test
+    void rebuildReplacesStateAndReplaysEventsDuringLoad() throws Exception {
+        LeaderboardService rebuilt = new LeaderboardService() {
+            @Override
+            void load(State loaded) {
+                long today = LocalDate.now().toEpochDay();
+                loaded.apply(alice, today, 1, 0);
+                loaded.apply(bob, today - 10, 2, 3);
+                // Reported by a handler while the load is running
+                ratingAdded(alice, null);
+                likeAdded(carol, null);
+            }
+        };
+        rebuilt.ratingAdded(dave, null);
+
+        rebuilt.rebuild();
+
+        assertEquals(List.of(bob, alice, carol), ids(rebuilt.top(LeaderboardService.ALL_TIME, 10, null).getTop()));
+        assertEquals(List.of(alice, carol), ids(rebuilt.top("7d", 10, null).getTop()));
+        assertEquals(2, rebuilt.top("7d", 10, alice).getUser().getScore());
+    }
+
+    @Test
+    void failedRebuildKeepsCurrentState() {
+        LeaderboardService failing = new LeaderboardService() {
+            @Override
+            void load(State loaded) {
+                throw new IllegalStateException("load failed");
+            }
+        };
+        failing.ratingAdded(alice, null);
+
+        assertThrows(IllegalStateException.class, failing::rebuild);
+        failing.ratingAdded(bob, null);
+        assertEquals(2, failing.top(LeaderboardService.ALL_TIME, 10, null).getRankedUsers());
+    }
+
+    private void rate(UUID user, int times) {
+        for (int i = 0; i < times; i++) {
+            leaderboard.ratingAdded(user, null);
+        }
+    }
+
+    private void like(UUID author, int times) {
+        for (int i = 0; i < times; i++) {
+            leaderboard.likeAdded(author, null);
+        }
+    }
+
+    private static Timestamp daysAgo(int days) {
+        return Timestamp.valueOf(LocalDateTime.now().minusDays(days));
+    }
+
+    private static List<UUID> ids(List<LeaderboardService.Standing> standings) {
+        List<UUID> ids = new ArrayList<>();
+        for (LeaderboardService.Standing standing : standings) {
+            ids.add(standing.getUserId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> ranks(List<LeaderboardService.Standing> standings) {
+        List<Integer> ranks = new ArrayList<>();
+        for (LeaderboardService.Standing standing : standings) {
+            ranks.add(standing.getRank());
+        }
+        return ranks;
+    }
+}
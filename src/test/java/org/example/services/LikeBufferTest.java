@@ -0,0 +1,431 @@
+package org.example.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LikeBufferTest {
+    private final LeaderboardService leaderboard = new LeaderboardService();
+    private final FakeLikeBuffer likes = new FakeLikeBuffer(leaderboard);
+    private final UUID author = UUID.randomUUID();
+    private final UUID media = UUID.randomUUID();
+    private final UUID rating = UUID.randomUUID();
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    // rating_likes and ratings as the buffer sees them through lookup() and write()
+    private static class FakeLikeBuffer extends LikeBuffer {
+        private final Map<UUID, UUID> authors = new HashMap<>();
+        private final Map<UUID, UUID> mediaIds = new HashMap<>();
+        private Map<Key, Timestamp> stored = new HashMap<>();
+        private Action afterLookup;
+        private Action duringWrite;
+        private boolean failBeforeCommit;
+        private boolean failAtCommit;
+        private int writes;
+
+        interface Action {
+            void run() throws SQLException;
+        }
+
+        FakeLikeBuffer(LeaderboardService leaderboard) {
+            super(leaderboard);
+        }
+
+        @Override
+        Object[] lookup(UUID ratingId, UUID userId) throws SQLException {
+            UUID authorId = authors.get(ratingId);
+            Object[] found = authorId == null ? null : new Object[]{authorId, stored.get(new Key(ratingId, userId)), mediaIds.get(ratingId)};
+            if (afterLookup != null) {
+                Action action = afterLookup;
+                afterLookup = null;
+                action.run();
+            }
+            return found;
+        }
+
+        @Override
+        Set<Key> write(Map<Key, Pending> batch) throws SQLException {
+            writes++;
+            if (duringWrite != null) {
+                Action action = duringWrite;
+                duringWrite = null;
+                action.run();
+            }
+            if (failBeforeCommit) {
+                throw new SQLException("connection lost");
+            }
+            Set<Key> changed = new HashSet<>();
+            Map<Key, Timestamp> written = new HashMap<>(stored);
+            batch.forEach((key, state) -> {
+                if (!authors.containsKey(key.ratingId)) {
+                    return;
+                }
+                if (state.liked && !state.stored && written.putIfAbsent(key, state.likedAt) == null) {
+                    changed.add(key);
+                } else if (!state.liked && state.stored && written.remove(key) != null) {
+                    changed.add(key);
+                }
+            });
+            beforeCommit();
+            if (failAtCommit) {
+                throw new SQLException("commit failed");
+            }
+            stored = written;
+            return changed;
+        }
+
+        long likeCount(UUID ratingId) {
+            return stored.keySet().stream().filter(key -> key.ratingId.equals(ratingId)).count();
+        }
+
+        boolean isStored(UUID ratingId, UUID userId) {
+            return stored.containsKey(new Key(ratingId, userId));
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        likes.stop();
+    }
+
+    @Test
+    void unknownRatingIsNotFound() throws Exception {
+        assertSame(LikeBuffer.Outcome.NOT_FOUND, likes.like(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.getMediaVersion(media));
+    }
+
+    @Test
+    void likeIsPendingUntilFlushedThenStored() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+
+        assertSame(LikeBuffer.Outcome.CHANGED, likes.like(rating, alice));
+        assertSame(LikeBuffer.Outcome.UNCHANGED, likes.like(rating, alice));
+        assertEquals(1, likes.pendingDelta(rating));
+        assertTrue(likes.isLiked(rating, alice, false));
+        assertEquals(1, likes.getPendingCount());
+        assertEquals(1, likes.getMediaVersion(media));
+        assertEquals(0, likesReceived(author), "the leaderboard counts written likes");
+
+        likes.flush();
+
+        assertTrue(likes.isStored(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(1, likes.likeCount(rating) + likes.pendingDelta(rating));
+        assertTrue(likes.isLiked(rating, alice, true));
+        assertEquals(1, likesReceived(author));
+    }
+
+    @Test
+    void changesMoveOnlyTheirMediaValidators() throws Exception {
+        UUID otherMedia = UUID.randomUUID();
+        UUID otherRating = UUID.randomUUID();
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.authors.put(otherRating, author);
+        likes.mediaIds.put(otherRating, otherMedia);
+        long before = System.currentTimeMillis();
+        long started = likes.getLastChangeMillis(media);
+        assertTrue(started <= before);
+
+        likes.like(otherRating, alice);
+        likes.unlike(otherRating, alice);
+
+        assertEquals(0, likes.getMediaVersion(media));
+        assertEquals(started, likes.getLastChangeMillis(media));
+        assertEquals(2, likes.getMediaVersion(otherMedia));
+        assertTrue(likes.getLastChangeMillis(otherMedia) >= before);
+
+        likes.like(rating, alice);
+        assertEquals(1, likes.getMediaVersion(media));
+        assertTrue(likes.getLastChangeMillis(media) >= before);
+        assertEquals(2, likes.getMediaVersion(otherMedia));
+    }
+
+    @Test
+    void likeAndUnlikeBeforeFlushCancelOut() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+
+        likes.like(rating, alice);
+        likes.unlike(rating, alice);
+
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(2, likes.getMediaVersion(media));
+        assertEquals(0, likesReceived(author));
+        likes.flush();
+        assertEquals(0, likes.writes);
+    }
+
+    @Test
+    void unlikeOfStoredLikeIsFlushedAsDelete() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        likes.like(rating, bob);
+        likes.flush();
+
+        assertSame(LikeBuffer.Outcome.CHANGED, likes.unlike(rating, alice));
+        assertEquals(-1, likes.pendingDelta(rating));
+        assertFalse(likes.isLiked(rating, alice, true));
+        assertEquals(1, likes.likeCount(rating) + likes.pendingDelta(rating));
+        likes.flush();
+
+        assertFalse(likes.isStored(rating, alice));
+        assertTrue(likes.isStored(rating, bob));
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(1, likesReceived(author));
+    }
+
+    @Test
+    void changeDuringFlushStaysPendingAgainstFlushedState() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        likes.duringWrite = () -> likes.unlike(rating, alice);
+
+        likes.flush();
+
+        // The flush stored the like; the unlike that came in meanwhile is pending against it
+        assertTrue(likes.isStored(rating, alice));
+        assertEquals(1, likes.getPendingCount());
+        assertFalse(likes.isLiked(rating, alice, true));
+        assertEquals(-1, likes.pendingDelta(rating));
+        assertEquals(0, likes.likeCount(rating) + likes.pendingDelta(rating));
+
+        likes.flush();
+
+        assertFalse(likes.isStored(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(0, likesReceived(author));
+    }
+
+    @Test
+    void repeatedChangeDuringFlushEndsAtFlushedState() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        likes.duringWrite = () -> {
+            likes.unlike(rating, alice);
+            likes.like(rating, alice);
+        };
+
+        likes.flush();
+
+        assertTrue(likes.isStored(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(1, likesReceived(author));
+    }
+
+    @Test
+    void failedWriteKeepsPendingPairs() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        likes.failBeforeCommit = true;
+
+        assertThrows(SQLException.class, likes::flush);
+
+        assertEquals(1, likes.getPendingCount());
+        assertEquals(1, likes.pendingDelta(rating));
+        assertTrue(likes.isLiked(rating, alice, false));
+
+        likes.failBeforeCommit = false;
+        likes.flush();
+        assertTrue(likes.isStored(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+    }
+
+    @Test
+    void failedCommitKeepsPendingPairsAndLetsReadsThrough() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        likes.failAtCommit = true;
+
+        assertThrows(SQLException.class, likes::flush);
+
+        assertEquals(1, likes.readCounts(() -> likes.pendingDelta(rating)));
+        assertSame(LikeBuffer.Outcome.CHANGED, likes.like(rating, bob));
+        likes.failAtCommit = false;
+        likes.flush();
+        assertEquals(2, likes.likeCount(rating));
+        assertEquals(0, likes.pendingDelta(rating));
+    }
+
+    @Test
+    void likeOfDeletedRatingIsNeverCounted() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+
+        likes.authors.remove(rating);
+        likes.flush();
+
+        assertFalse(likes.isStored(rating, alice));
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likes.pendingDelta(rating));
+        assertEquals(0, likesReceived(author));
+    }
+
+    @Test
+    void unlikeOfDeletedRatingIsLeftToTheDelete() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        leaderboard.ratingAdded(author, null);
+        leaderboard.ratingAdded(author, null);
+        likes.like(rating, alice);
+        likes.like(rating, bob);
+        likes.flush();
+        likes.unlike(rating, alice);
+        assertEquals(2, likesReceived(author));
+
+        // Deleting the rating cascades to its stored likes, which the delete reports to the leaderboard
+        likes.authors.remove(rating);
+        leaderboard.ratingRemoved(author, null);
+        leaderboard.likeRemoved(author, null);
+        leaderboard.likeRemoved(author, null);
+        likes.flush();
+
+        assertEquals(0, likes.getPendingCount());
+        assertEquals(0, likesReceived(author));
+        assertEquals(1, leaderboard.top(LeaderboardService.ALL_TIME, 0, author).getUser().getRatings());
+    }
+
+    @Test
+    void lookupIsRepeatedWhenFlushCompletesMeanwhile() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        // The lookup sees no stored like, then the flush stores it and drops the pair before the unlike applies
+        likes.afterLookup = likes::flush;
+
+        assertSame(LikeBuffer.Outcome.CHANGED, likes.unlike(rating, alice));
+
+        assertFalse(likes.isLiked(rating, alice, true));
+        assertEquals(-1, likes.pendingDelta(rating));
+        likes.flush();
+        assertFalse(likes.isStored(rating, alice));
+        assertEquals(0, likesReceived(author));
+    }
+
+    @Test
+    void readCountsRepeatsReadOverlappingFlush() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        AtomicInteger reads = new AtomicInteger();
+
+        long count = likes.readCounts(() -> {
+            long likeCount = likes.likeCount(rating);
+            if (reads.incrementAndGet() == 1) {
+                likes.flush(); // commits after like_count was read, before the delta is
+            }
+            return likeCount + likes.pendingDelta(rating);
+        });
+
+        assertEquals(2, reads.get());
+        assertEquals(1, count);
+    }
+
+    @Test
+    void likesAndReadsDoNotWaitForFlushWrite() throws Exception {
+        likes.authors.put(rating, author);
+        likes.mediaIds.put(rating, media);
+        likes.like(rating, alice);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        likes.duringWrite = () -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(() -> {
+            try {
+                likes.flush();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        assertSame(LikeBuffer.Outcome.CHANGED, likes.like(rating, bob));
+        assertEquals(2, (int) likes.readCounts(() -> likes.pendingDelta(rating)));
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        assertTrue(likes.isStored(rating, alice));
+        assertEquals(1, likes.pendingDelta(rating));
+        likes.flush();
+        assertEquals(2, likes.likeCount(rating));
+        assertEquals(0, likes.pendingDelta(rating));
+    }
+
+    @Test
+    void leaderboardRebuildAgreesWithLaterFlush() throws Exception {
+        UUID carol = UUID.randomUUID();
+        FakeLikeBuffer[] buffer = new FakeLikeBuffer[1];
+        LeaderboardService rebuilt = new LeaderboardService() {
+            @Override
+            void load(State loaded) {
+                loaded.apply(author, LocalDate.now().toEpochDay(), 1, buffer[0].likeCount(rating));
+            }
+        };
+        buffer[0] = new FakeLikeBuffer(rebuilt);
+        buffer[0].authors.put(rating, author);
+        buffer[0].mediaIds.put(rating, media);
+        buffer[0].like(rating, alice);
+        buffer[0].flush();
+        buffer[0].unlike(rating, alice);
+        buffer[0].like(rating, bob);
+        buffer[0].like(rating, carol);
+
+        // Rebuilt from rating_likes while the unlike and the two likes are still pending
+        rebuilt.rebuild();
+        assertEquals(1, rebuilt.top(LeaderboardService.ALL_TIME, 0, author).getUser().getLikesReceived());
+        buffer[0].flush();
+
+        assertEquals(2, rebuilt.top(LeaderboardService.ALL_TIME, 0, author).getUser().getLikesReceived());
+        buffer[0].stop();
+    }
+
+    @Test
+    void readCountsReturnsTheRead() throws Exception {
+        assertNull(likes.readCounts(() -> null));
+        assertEquals(0, (int) likes.readCounts(() -> likes.pendingDelta(rating)));
+    }
+
+    private long likesReceived(UUID userId) {
+        LeaderboardService.Standing standing = leaderboard.top(LeaderboardService.ALL_TIME, 0, userId).getUser();
+        return standing == null ? 0 : standing.getLikesReceived();
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TokenCacheTest {
+    private final UUID user = UUID.randomUUID();
+
+    @Test
+    void repeatedLookupIsServedFromCache() throws Exception {
+        TokenCache cache = new TokenCache(100, 60000, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(user, cache.get("t1", t -> { loads.incrementAndGet(); return user; }));
+        assertEquals(user, cache.get("t1", t -> { loads.incrementAndGet(); return user; }));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    void unknownTokenIsCachedAsMiss() throws Exception {
+        TokenCache cache = new TokenCache(100, 60000, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get("nope", t -> { loads.incrementAndGet(); return null; }));
+        assertNull(cache.get("nope", t -> { loads.incrementAndGet(); return null; }));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().getNegativeHits());
+    }
+
+    @Test
+    void invalidateUserDropsTheirToken() throws Exception {
+        TokenCache cache = new TokenCache(100, 60000, 60000);
+        cache.get("old", t -> user);
+        cache.invalidateUser(user);
+        assertNull(cache.get("old", t -> null));
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotUndone() throws Exception {
+        TokenCache cache = new TokenCache(100, 60000, 60000);
+        cache.get("old", t -> {
+            cache.invalidateUser(user);
+            return user;
+        });
+        assertNull(cache.get("old", t -> null));
+    }
+
+    @Test
+    void invalidationBetweenCheckAndInsertIsNotUndone() throws Exception {
+        // The login's invalidation runs after the lookup saw an unchanged counter but before its insert,
+        // so it finds nothing to remove; the lookup must notice and drop its own entry
+        TokenCache cache = new TokenCache(100, 60000, 60000) {
+            @Override
+            void beforePut() {
+                invalidateUser(user);
+                invalidate("new");
+            }
+        };
+        assertEquals(user, cache.get("old", t -> user));
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get("old", t -> { loads.incrementAndGet(); return null; }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void evictsDownToNinetyPercentWhenFull() throws Exception {
+        TokenCache cache = new TokenCache(10, 60000, 60000);
+        for (int i = 0; i < 11; i++) {
+            UUID id = UUID.randomUUID();
+            cache.get("t" + i, t -> id);
+        }
+        assertEquals(9, cache.getStats().getSize());
+        assertEquals(2, cache.getStats().getEvictions());
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteTableTest {
+    private static final RouteHandler NONE = (exchange, params, userId) -> { };
+
+    private final RouteTable routes = new RouteTable();
+    private final RouteTable.Route list = routes.add("GET", "/api/media", NONE);
+    private final RouteTable.Route create = routes.add("POST", "/api/media", NONE);
+    private final RouteTable.Route detail = routes.add("GET", "/api/media/{id:uuid}", NONE);
+    private final RouteTable.Route update = routes.add("PUT", "/api/media/{id:uuid}", NONE);
+    private final RouteTable.Route favorites = routes.add("GET", "/api/media/favorites", NONE);
+    private final RouteTable.Route rate = routes.add("POST", "/api/media/{mediaId:uuid}/rate", NONE);
+    private final RouteTable.Route profile = routes.add("GET", "/api/users/{username}/profile", NONE);
+    private final RouteTable.Route login = routes.addPublic("POST", "/api/users/login", NONE);
+
+    @Test
+    void unknownPathIsNotFound() {
+        assertEquals(404, routes.resolve("GET", "/api/unknown").getStatus());
+        assertEquals(404, routes.resolve("GET", "/api/media/" + UUID.randomUUID() + "/ratings").getStatus());
+        assertEquals(404, routes.resolve("GET", "/api/users").getStatus());
+        assertEquals(404, routes.resolve("GET", "/").getStatus());
+    }
+
+    @Test
+    void unsupportedMethodIsNotAllowedWithAllowHeader() {
+        RouteTable.Match match = routes.resolve("DELETE", "/api/media");
+        assertEquals(405, match.getStatus());
+        assertNull(match.getRoute());
+        assertEquals("GET, POST", match.getAllow());
+
+        match = routes.resolve("POST", "/api/media/" + UUID.randomUUID());
+        assertEquals(405, match.getStatus());
+        assertEquals("GET, PUT", match.getAllow());
+    }
+
+    @Test
+    void uuidVariableIsParsed() {
+        UUID id = UUID.randomUUID();
+        RouteTable.Match match = routes.resolve("POST", "/api/media/" + id + "/rate");
+
+        assertEquals(200, match.getStatus());
+        assertSame(rate, match.getRoute());
+        assertEquals(id, match.getParams().getUUID("mediaId"));
+    }
+
+    @Test
+    void uppercaseUuidIsAccepted() {
+        UUID id = UUID.randomUUID();
+        RouteTable.Match match = routes.resolve("GET", "/api/media/" + id.toString().toUpperCase());
+        assertEquals(id, match.getParams().getUUID("id"));
+    }
+
+    @Test
+    void malformedUuidIsBadRequest() {
+        for (String segment : new String[]{"42", "not-a-uuid", "0b6f1c7e-3a52-4c7e-9d0e-5f2a8c1b4d6g",
+                "0b6f1c7e03a52-4c7e-9d0e-5f2a8c1b4d67", "0b6f1c7e-3a52-4c7e-9d0e-5f2a8c1b4d6١"}) {
+            RouteTable.Match match = routes.resolve("GET", "/api/media/" + segment);
+            assertEquals(400, match.getStatus(), segment);
+            assertSame(detail, match.getRoute());
+            assertEquals("Invalid UUID format", match.getError());
+        }
+    }
+
+    @Test
+    void stringVariableKeepsSegment() {
+        RouteTable.Match match = routes.resolve("GET", "/api/users/testuser1/profile");
+        assertSame(profile, match.getRoute());
+        assertEquals("testuser1", match.getParams().get("username"));
+    }
+
+    @Test
+    void literalSegmentWinsOverVariable() {
+        assertSame(favorites, routes.resolve("GET", "/api/media/favorites").getRoute());
+        assertEquals(400, routes.resolve("GET", "/api/media/favourites").getStatus());
+    }
+
+    @Test
+    void literalWithoutRouteFallsBackToVariable() {
+        RouteTable users = new RouteTable();
+        RouteTable.Route byName = users.add("GET", "/api/users/{username}", NONE);
+        users.add("GET", "/api/users/me/settings", NONE);
+
+        RouteTable.Match match = users.resolve("GET", "/api/users/me");
+        assertSame(byName, match.getRoute());
+        assertEquals("me", match.getParams().get("username"));
+    }
+
+    @Test
+    void emptySegmentsAreIgnored() {
+        assertSame(list, routes.resolve("GET", "/api/media/").getRoute());
+        assertSame(list, routes.resolve("GET", "//api//media").getRoute());
+        assertSame(update, routes.resolve("PUT", "/api/media/" + UUID.randomUUID() + "/").getRoute());
+    }
+
+    @Test
+    void routesWithoutVariablesShareOneMatch() {
+        assertSame(routes.resolve("POST", "/api/media"), routes.resolve("POST", "/api/media/"));
+        assertSame(create, routes.resolve("POST", "/api/media").getRoute());
+    }
+
+    @Test
+    void publicRoutesAreNotAuthenticated() {
+        assertFalse(routes.resolve("POST", "/api/users/login").getRoute().isAuthenticated());
+        assertSame(login, routes.resolve("POST", "/api/users/login").getRoute());
+        assertTrue(routes.resolve("GET", "/api/media").getRoute().isAuthenticated());
+    }
+
+    @Test
+    void duplicateRouteIsRejected() {
+        assertThrows(IllegalStateException.class, () -> routes.add("GET", "/api/media/{mediaId:uuid}", NONE));
+    }
+
+    @Test
+    void unknownVariableTypeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> routes.add("GET", "/api/items/{id:int}", NONE));
+    }
+
+    @Test
+    void parseUuidReadsSegmentInPlace() {
+        UUID id = UUID.randomUUID();
+        String path = "/x/" + id + "/y";
+        assertEquals(id, RouteTable.parseUUID(path, 3, 39));
+        assertNull(RouteTable.parseUUID(path, 2, 38));
+        assertNull(RouteTable.parseUUID(path, 3, 38));
+    }
+}